@@ -145,6 +145,8 @@ CREATE TABLE `chat_session`
     `chat_session_id` varchar(255) NOT NULL COMMENT '会话唯一标识',
     `member_id`       bigint(20)   NOT NULL COMMENT '关联用户ID',
     `title`           varchar(255)          DEFAULT NULL COMMENT '标题',
+    `token_count`     int(11)      NOT NULL DEFAULT 0 COMMENT '最后一次压缩以来的累计 token 数（含压缩摘要）',
+    `last_compress_id` bigint(20)           DEFAULT NULL COMMENT '最后一条 COMPRESS 消息ID',
     `created_at`      timestamp    NULL     DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `updated_at`      timestamp    NULL     DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     PRIMARY KEY (`id`),
@@ -244,6 +246,10 @@ CREATE TABLE `direct_model_invoke_log`
     `response_text`  mediumtext            DEFAULT NULL COMMENT '模型返回文本',
     `success`        tinyint(1)   NOT NULL COMMENT '是否成功',
     `error_message`  text                  DEFAULT NULL COMMENT '失败信息',
+    `outcome`        varchar(32)           DEFAULT NULL COMMENT '结果：SUCCESS/CLIENT_ERROR/CIRCUIT_OPEN/FAILED',
+    `attempts`       int(11)      NOT NULL DEFAULT 1 COMMENT '实际调用次数（含重试与降级）',
+    `prompt_tokens`  int(11)               DEFAULT NULL COMMENT '提示词 token 数',
+    `response_tokens` int(11)              DEFAULT NULL COMMENT '返回 token 数',
     `duration_ms`    bigint(20)   NOT NULL COMMENT '耗时毫秒',
     `created_at`     timestamp    NULL     DEFAULT CURRENT_TIMESTAMP COMMENT '记录时间',
     PRIMARY KEY (`id`),
@@ -327,7 +333,11 @@ CREATE TABLE `document_info`
     `cleaned_char_count`  int(11)               DEFAULT NULL COMMENT '清洗后字符数',
     `total_chunks`        int(11)               DEFAULT NULL COMMENT '分块总数',
     `processed_chunks`    int(11)               DEFAULT 0 COMMENT '已向量化分块数',
+    `embedding_rate`      double                DEFAULT NULL COMMENT '向量化吞吐（分块/秒）',
     `error_message`       text                  DEFAULT NULL COMMENT '最近一次失败的错误原因',
+    `lease_owner`         varchar(128)          DEFAULT NULL COMMENT '持有处理租约的实例',
+    `lease_expires_at`    timestamp    NULL     DEFAULT NULL COMMENT '处理租约到期时间',
+    `resume_attempts`     int(11)      NOT NULL DEFAULT 0 COMMENT '中断后被接管恢复的次数',
     `deleted`             tinyint(1)            DEFAULT 0 COMMENT '逻辑删除: 0-未删除 1-已删除',
     `created_at`          timestamp    NULL     DEFAULT CURRENT_TIMESTAMP COMMENT '上传时间',
     `updated_at`          timestamp    NULL     DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '最后更新时间',
@@ -336,7 +346,24 @@ CREATE TABLE `document_info`
     KEY `idx_kb_id` (`kb_id`),
     KEY `idx_task_id` (`task_id`),
     KEY `idx_kb_original` (`kb_id`, `original_name`, `deleted`),
-    KEY `idx_member_status` (`member_id`, `status`, `deleted`)
+    KEY `idx_member_status` (`member_id`, `status`, `deleted`),
+    KEY `idx_status_lease` (`status`, `deleted`, `lease_expires_at`)
 ) ENGINE = InnoDB
   DEFAULT CHARSET = utf8mb4
   COLLATE = utf8mb4_0900_ai_ci COMMENT ='文档基础信息表';
+
+-- ----------------------------
+-- Table structure for image_caption
+-- ----------------------------
+DROP TABLE IF EXISTS `image_caption`;
+CREATE TABLE `image_caption`
+(
+    `image_hash`      char(64)  NOT NULL COMMENT '图片内容 SHA-256（十六进制）',
+    `caption_version` char(64)  NOT NULL COMMENT '生成描述的模型与提示词摘要，更换模型或修改提示词后旧描述不再命中',
+    `caption`         text      NOT NULL COMMENT '图生文模型生成的描述',
+    `created_at`      timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`image_hash`, `caption_version`),
+    KEY `idx_created_at` (`created_at`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4
+  COLLATE = utf8mb4_0900_ai_ci COMMENT ='文档图片描述缓存，可随时清空：DELETE FROM image_caption 或按 created_at 删除旧描述';
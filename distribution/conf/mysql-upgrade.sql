@@ -0,0 +1,77 @@
+-- 已有部署的升级脚本：在旧版本库表上补齐新增的列、索引与表，只需执行一次
+-- 新部署直接执行 mysql-schema.sql，无需执行本脚本
+USE `dialoger_ai`;
+
+SET NAMES utf8mb4;
+
+-- ----------------------------
+-- chat_session：累计 token 数与压缩水位
+-- ----------------------------
+ALTER TABLE `chat_session`
+    ADD COLUMN `token_count`      int(11)    NOT NULL DEFAULT 0 COMMENT '最后一次压缩以来的累计 token 数（含压缩摘要）' AFTER `title`,
+    ADD COLUMN `last_compress_id` bigint(20)          DEFAULT NULL COMMENT '最后一条 COMPRESS 消息ID' AFTER `token_count`;
+
+-- 压缩水位取会话中最新的 COMPRESS 消息
+UPDATE `chat_session` s
+    JOIN (SELECT `session_id`, MAX(`id`) AS `compress_id`
+          FROM `chat_messages`
+          WHERE `role` = 'COMPRESS'
+          GROUP BY `session_id`) c ON c.`session_id` = s.`chat_session_id`
+SET s.`last_compress_id` = c.`compress_id`;
+
+-- 累计 token 数按水位之后的消息字符数粗略估算（约 2 字符 1 token），之后由程序逐条累加
+UPDATE `chat_session` s
+    JOIN (SELECT m.`session_id`, CEIL(SUM(CHAR_LENGTH(m.`content`)) / 2) AS `tokens`
+          FROM `chat_messages` m
+                   LEFT JOIN (SELECT `session_id`, MAX(`id`) AS `compress_id`
+                              FROM `chat_messages`
+                              WHERE `role` = 'COMPRESS'
+                              GROUP BY `session_id`) c ON c.`session_id` = m.`session_id`
+          WHERE m.`id` >= IFNULL(c.`compress_id`, 0)
+          GROUP BY m.`session_id`) t ON t.`session_id` = s.`chat_session_id`
+SET s.`token_count` = t.`tokens`;
+
+-- ----------------------------
+-- document_info：向量化吞吐
+-- ----------------------------
+ALTER TABLE `document_info`
+    ADD COLUMN `embedding_rate` double DEFAULT NULL COMMENT '向量化吞吐（分块/秒）' AFTER `processed_chunks`;
+
+-- ----------------------------
+-- image_caption：文档图片描述缓存
+-- ----------------------------
+-- 表中只有可重新生成的缓存，旧结构（只按图片哈希为键）直接重建
+DROP TABLE IF EXISTS `image_caption`;
+CREATE TABLE `image_caption`
+(
+    `image_hash`      char(64)  NOT NULL COMMENT '图片内容 SHA-256（十六进制）',
+    `caption_version` char(64)  NOT NULL COMMENT '生成描述的模型与提示词摘要，更换模型或修改提示词后旧描述不再命中',
+    `caption`         text      NOT NULL COMMENT '图生文模型生成的描述',
+    `created_at`      timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`image_hash`, `caption_version`),
+    KEY `idx_created_at` (`created_at`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4
+  COLLATE = utf8mb4_0900_ai_ci COMMENT ='文档图片描述缓存，可随时清空：DELETE FROM image_caption 或按 created_at 删除旧描述';
+
+-- ----------------------------
+-- document_info：中断恢复租约
+-- ----------------------------
+ALTER TABLE `document_info`
+    ADD COLUMN `lease_owner`      varchar(128) DEFAULT NULL COMMENT '持有处理租约的实例' AFTER `error_message`,
+    ADD COLUMN `lease_expires_at` timestamp    NULL DEFAULT NULL COMMENT '处理租约到期时间' AFTER `lease_owner`,
+    ADD COLUMN `resume_attempts`  int(11)      NOT NULL DEFAULT 0 COMMENT '中断后被接管恢复的次数' AFTER `lease_expires_at`,
+    ADD KEY `idx_status_lease` (`status`, `deleted`, `lease_expires_at`);
+
+-- ----------------------------
+-- direct_model_invoke_log：调用结果、尝试次数与 token 用量
+-- ----------------------------
+ALTER TABLE `direct_model_invoke_log`
+    ADD COLUMN `outcome`         varchar(32) DEFAULT NULL COMMENT '结果：SUCCESS/CLIENT_ERROR/CIRCUIT_OPEN/FAILED' AFTER `error_message`,
+    ADD COLUMN `attempts`        int(11)     NOT NULL DEFAULT 1 COMMENT '实际调用次数（含重试与降级）' AFTER `outcome`,
+    ADD COLUMN `prompt_tokens`   int(11)     DEFAULT NULL COMMENT '提示词 token 数' AFTER `attempts`,
+    ADD COLUMN `response_tokens` int(11)     DEFAULT NULL COMMENT '返回 token 数' AFTER `prompt_tokens`;
+
+UPDATE `direct_model_invoke_log`
+SET `outcome` = IF(`success` = 1, 'SUCCESS', 'FAILED')
+WHERE `outcome` IS NULL;
@@ -12,6 +12,30 @@ public class ElasticsearchProperties {
     private String username;
     private String password;
 
+    /**
+     * 连接池最大连接数
+     */
+    private int maxConnTotal = 100;
+
+    /**
+     * 单个路由（ES 节点）最大连接数
+     */
+    private int maxConnPerRoute = 50;
+
+    /**
+     * 空闲连接保活时间（毫秒）
+     */
+    private long keepAliveMillis = 60_000L;
+
+    /**
+     * I/O 线程数，默认与 CPU 核数一致
+     */
+    private int ioThreadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 对话检索时单个索引的检索期限（毫秒），超时的索引不返回结果
+     */
+    private long searchTimeoutMillis = 3_000L;
 
     /**
      * 可选：手动指定要管理的索引列表
@@ -29,4 +53,43 @@ public class ElasticsearchProperties {
      * 仅注册匹配此模式的索引，默认为 null（不过滤）
      */
     private String indexNamePattern;
-}
\ No newline at end of file
+
+    /**
+     * 文档入库批量写入配置
+     */
+    private Bulk bulk = new Bulk();
+
+    @Data
+    public static class Bulk {
+
+        /**
+         * 单个 bulk 请求的最大字节数（按文档估算）
+         */
+        private long maxBytes = 5L * 1024 * 1024;
+
+        /**
+         * 单个 bulk 请求的最大文档数
+         */
+        private int maxActions = 1000;
+
+        /**
+         * 单个文档同时进行中的 bulk 请求数
+         */
+        private int concurrency = 2;
+
+        /**
+         * 单个分块写入失败后的最大重试次数
+         */
+        private int maxRetries = 3;
+
+        /**
+         * 首次重试的等待时间（毫秒），之后逐次翻倍
+         */
+        private long retryBackoffMillis = 500L;
+
+        /**
+         * 写入期间是否关闭索引刷新；每个文档写完时刷新一次，索引的最后一个写入结束后恢复原刷新间隔
+         */
+        private boolean disableRefresh = true;
+    }
+}
@@ -3,8 +3,13 @@ package info.mengnan.dialogerai.kb.core;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch.cat.IndicesResponse;
 import co.elastic.clients.elasticsearch.cat.indices.IndicesRecord;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.ScrollResponse;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
 import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.JsonData;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
 import dev.langchain4j.data.segment.TextSegment;
@@ -17,30 +22,56 @@ import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.elasticsearch.client.RestClient;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
  * 动态 Elasticsearch 索引管理器,提供动态创建 EmbeddingStore 的能力
+ * 所有操作共享同一个带连接池的 RestClient，EmbeddingStore 按索引缓存复用
  */
 @Slf4j
-public class DynamicEmbeddingStoreRegistry {
+public class DynamicEmbeddingStoreRegistry implements Closeable {
+
+    /**
+     * 单个 bulk 请求的操作数
+     */
+    private static final int BULK_SIZE = 500;
 
     /**
      * Elasticsearch 配置属性
      */
     private final ElasticsearchProperties properties;
 
+    /**
+     * 共享的底层 RestClient，生命周期与 Registry 一致
+     */
+    private final RestClient restClient;
+
+    private final RestClientTransport transport;
+
+    private final ElasticsearchClient client;
+
+    /**
+     * 索引名 -> EmbeddingStore
+     */
+    private final Map<String, EmbeddingStore<TextSegment>> embeddingStores = new ConcurrentHashMap<>();
+
     public DynamicEmbeddingStoreRegistry(ElasticsearchProperties properties) {
         this.properties = properties;
-
+        this.restClient = createRestClient(properties);
+        this.transport = new RestClientTransport(restClient, new JacksonJsonpMapper());
+        this.client = new ElasticsearchClient(transport);
     }
 
     /**
@@ -51,10 +82,8 @@ public class DynamicEmbeddingStoreRegistry {
      */
     public List<String> queryAllIndexNames(Long memberId) {
         try {
-            RestClient restClient = createRestClient(this.properties);
-            List<String> indexNames = queryAllIndices(restClient, properties, memberId);
+            List<String> indexNames = queryAllIndices(properties, memberId);
             log.info("Found {} indices for member {}: {}", indexNames.size(), memberId, indexNames);
-            restClient.close();
             return indexNames;
         } catch (Exception e) {
             throw new ElasticsearchRequestFailedException("Failed to query Elasticsearch indices", e);
@@ -62,27 +91,21 @@ public class DynamicEmbeddingStoreRegistry {
     }
 
     /**
-     * 为指定索引动态创建 EmbeddingStore
-     * 每次调用都会创建新的实例
+     * 获取指定索引的 EmbeddingStore
+     * 同一索引复用同一实例，底层共享 RestClient
      *
      * @param indexName Elasticsearch 索引名称
      * @return EmbeddingStore 实例
      */
     public EmbeddingStore<TextSegment> createEmbeddingStore(String indexName) {
         try {
-            log.debug("Creating EmbeddingStore for index: {}", indexName);
-
-            // 为每个索引创建独立的 RestClient
-            RestClient restClient = createRestClient(properties);
-
-            // 创建 EmbeddingStore
-            EmbeddingStore<TextSegment> embeddingStore = ElasticsearchEmbeddingStore.builder()
-                    .restClient(restClient)
-                    .indexName(indexName)
-                    .build();
-
-            log.debug("Successfully created EmbeddingStore for index: {}", indexName);
-            return embeddingStore;
+            return embeddingStores.computeIfAbsent(indexName, name -> {
+                log.debug("Creating EmbeddingStore for index: {}", name);
+                return ElasticsearchEmbeddingStore.builder()
+                        .restClient(restClient)
+                        .indexName(name)
+                        .build();
+            });
         } catch (Exception e) {
             log.error("Failed to create EmbeddingStore for index: {}", indexName, e);
             throw new RuntimeException("Failed to create EmbeddingStore for index: " + indexName, e);
@@ -90,9 +113,30 @@ public class DynamicEmbeddingStoreRegistry {
     }
 
     /**
-     * 创建 RestClient
+     * 共享的 ES 客户端，供同包的批量写入使用
+     */
+    ElasticsearchClient client() {
+        return client;
+    }
+
+    /**
+     * 共享的底层 RestClient，供同包中类型化客户端无法表达的请求使用
+     */
+    RestClient restClient() {
+        return restClient;
+    }
+
+    /**
+     * 对话检索时单个索引的检索期限（毫秒）
      */
-    private RestClient createRestClient(ElasticsearchProperties properties) {
+    public long searchTimeoutMillis() {
+        return properties.getSearchTimeoutMillis();
+    }
+
+    /**
+     * 创建带连接池配置的 RestClient
+     */
+    private static RestClient createRestClient(ElasticsearchProperties properties) {
         BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
         if (properties.getUsername() != null && properties.getPassword() != null) {
             credentialsProvider.setCredentials(
@@ -101,23 +145,53 @@ public class DynamicEmbeddingStoreRegistry {
             );
         }
 
+        long keepAliveMillis = properties.getKeepAliveMillis();
         return RestClient.builder(
                         new HttpHost(properties.getHost(), properties.getPort(), "http"))
-                .setHttpClientConfigCallback(httpClientBuilder ->
-                        httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider)
+                .setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder
+                        .setDefaultCredentialsProvider(credentialsProvider)
+                        .setMaxConnTotal(properties.getMaxConnTotal())
+                        .setMaxConnPerRoute(properties.getMaxConnPerRoute())
+                        .setKeepAliveStrategy((response, context) -> keepAliveMillis)
+                        .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                                .setIoThreadCount(properties.getIoThreadCount())
+                                .setSoKeepAlive(true)
+                                .build())
                 ).build();
     }
 
+    /**
+     * 关闭共享的 RestClient，由 Spring 销毁回调触发
+     */
+    @Override
+    public void close() throws IOException {
+        embeddingStores.clear();
+        transport.close();
+        log.info("Elasticsearch client closed");
+    }
+
+    /**
+     * 立即刷新索引，使已写入的文档可被检索，索引不存在时忽略
+     *
+     * @param indexName 索引名称
+     */
+    public void refresh(String indexName) {
+        try {
+            client.indices().refresh(builder -> builder.index(indexName).ignoreUnavailable(true));
+        } catch (Exception e) {
+            log.error("Failed to refresh index: {}", indexName, e);
+            throw new RuntimeException("Failed to refresh index: " + indexName, e);
+        }
+    }
+
     /**
      * 删除指定的 Elasticsearch 索引
      *
      * @param indexName 索引名称
      */
-    @SuppressWarnings("resource")
     public void deleteIndex(String indexName) {
-        try (RestClient restClient = createRestClient(this.properties);
-             RestClientTransport transport = new RestClientTransport(restClient, new JacksonJsonpMapper())) {
-            ElasticsearchClient client = new ElasticsearchClient(transport);
+        embeddingStores.remove(indexName);
+        try {
             client.indices().delete(builder -> builder.index(indexName));
             log.info("Successfully deleted index: {}", indexName);
         } catch (Exception e) {
@@ -129,15 +203,13 @@ public class DynamicEmbeddingStoreRegistry {
     /**
      * 读取指定文档在知识库索引中的文本分块，按 segment_index 升序返回。
      */
-    @SuppressWarnings({"resource", "rawtypes"})
+    @SuppressWarnings("rawtypes")
     public List<String> fetchDocumentSegments(String indexName, Long documentId, int maxSegments) {
         if (maxSegments <= 0) {
             return Collections.emptyList();
         }
         String docIdStr = String.valueOf(documentId);
-        try (RestClient restClient = createRestClient(this.properties);
-             RestClientTransport transport = new RestClientTransport(restClient, new JacksonJsonpMapper())) {
-            ElasticsearchClient client = new ElasticsearchClient(transport);
+        try {
             SearchResponse<Map> response = client.search(builder -> builder
                             .index(indexName)
                             .query(query -> query.term(term -> term
@@ -161,12 +233,9 @@ public class DynamicEmbeddingStoreRegistry {
     /**
      * 删除知识库索引中指定文档的全部向量分块（不删除整个索引）。
      */
-    @SuppressWarnings("resource")
     public void deleteDocumentSegments(String indexName, Long documentId) {
         String docIdStr = String.valueOf(documentId);
-        try (RestClient restClient = createRestClient(this.properties);
-             RestClientTransport transport = new RestClientTransport(restClient, new JacksonJsonpMapper())) {
-            ElasticsearchClient client = new ElasticsearchClient(transport);
+        try {
             client.deleteByQuery(builder -> builder
                     .index(indexName)
                     .query(query -> query.term(term -> term
@@ -179,11 +248,118 @@ public class DynamicEmbeddingStoreRegistry {
         }
     }
 
+    /**
+     * 读取指定文档已有分块的内容哈希，返回 内容哈希 -> ES 文档 ID 列表。
+     * 未记录哈希的分块归入空字符串键；索引不存在时返回空。
+     */
+    @SuppressWarnings("rawtypes")
+    public Map<String, List<String>> fetchSegmentHashes(String indexName, Long documentId, String hashField) {
+        String docIdStr = String.valueOf(documentId);
+        String sourceField = "metadata." + hashField;
+        Map<String, List<String>> hashes = new HashMap<>();
+        String scrollId = null;
+        try {
+            SearchResponse<Map> response = client.search(builder -> builder
+                            .index(indexName)
+                            .ignoreUnavailable(true)
+                            .query(query -> query.term(term -> term
+                                    .field("metadata.document_id")
+                                    .value(docIdStr)))
+                            .source(source -> source.filter(filter -> filter.includes(sourceField)))
+                            .size(BULK_SIZE)
+                            .scroll(time -> time.time("1m")),
+                    Map.class);
+            scrollId = response.scrollId();
+            List<Hit<Map>> hits = response.hits().hits();
+            while (!hits.isEmpty()) {
+                for (Hit<Map> hit : hits) {
+                    hashes.computeIfAbsent(extractMetadata(hit.source(), hashField), k -> new ArrayList<>())
+                            .add(hit.id());
+                }
+                if (scrollId == null || hits.size() < BULK_SIZE) {
+                    break;
+                }
+                String currentScrollId = scrollId;
+                ScrollResponse<Map> next = client.scroll(builder -> builder
+                                .scrollId(currentScrollId)
+                                .scroll(time -> time.time("1m")),
+                        Map.class);
+                scrollId = next.scrollId();
+                hits = next.hits().hits();
+            }
+            return hashes;
+        } catch (Exception e) {
+            log.error("Failed to fetch segment hashes from index: {}, documentId={}", indexName, documentId, e);
+            throw new RuntimeException("Failed to fetch segment hashes from index: " + indexName, e);
+        } finally {
+            clearScroll(scrollId);
+        }
+    }
+
+    /**
+     * 按 ES 文档 ID 整体替换分块的元数据，不改动文本与向量。
+     */
+    public void replaceSegmentMetadata(String indexName, Map<String, Map<String, Object>> metadataById) {
+        List<Map.Entry<String, Map<String, Object>>> entries = new ArrayList<>(metadataById.entrySet());
+        for (int from = 0; from < entries.size(); from += BULK_SIZE) {
+            BulkRequest.Builder bulk = new BulkRequest.Builder().index(indexName);
+            for (Map.Entry<String, Map<String, Object>> entry : entries.subList(from, Math.min(entries.size(), from + BULK_SIZE))) {
+                bulk.operations(op -> op.update(update -> update
+                        .id(entry.getKey())
+                        .action(action -> action.script(script -> script
+                                .source("ctx._source.metadata = params.metadata")
+                                .params("metadata", JsonData.of(entry.getValue()))))));
+            }
+            executeBulk(indexName, bulk.build());
+        }
+    }
+
+    /**
+     * 按 ES 文档 ID 删除分块。
+     */
+    public void deleteSegments(String indexName, List<String> ids) {
+        for (int from = 0; from < ids.size(); from += BULK_SIZE) {
+            BulkRequest.Builder bulk = new BulkRequest.Builder().index(indexName);
+            for (String id : ids.subList(from, Math.min(ids.size(), from + BULK_SIZE))) {
+                bulk.operations(op -> op.delete(delete -> delete.id(id)));
+            }
+            executeBulk(indexName, bulk.build());
+        }
+    }
+
+    private void executeBulk(String indexName, BulkRequest request) {
+        try {
+            BulkResponse response = client.bulk(request);
+            if (response.errors()) {
+                String reason = response.items().stream()
+                        .map(BulkResponseItem::error)
+                        .filter(error -> error != null)
+                        .map(error -> error.type() + ": " + error.reason())
+                        .findFirst()
+                        .orElse("unknown");
+                throw new RuntimeException("Bulk request partially failed: " + reason);
+            }
+        } catch (IOException e) {
+            log.error("Bulk request failed for index: {}", indexName, e);
+            throw new RuntimeException("Bulk request failed for index: " + indexName, e);
+        }
+    }
+
+    private void clearScroll(String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+        try {
+            client.clearScroll(builder -> builder.scrollId(scrollId));
+        } catch (Exception e) {
+            log.debug("Failed to clear scroll: {}", e.getMessage());
+        }
+    }
+
     /**
      * 查询指定用户的 ES 索引
      */
-    @SuppressWarnings("resource")
-    private List<String> queryAllIndices(RestClient restClient, ElasticsearchProperties properties, Long memberId) throws IOException {
+    private List<String> queryAllIndices(ElasticsearchProperties properties, Long memberId) throws IOException {
         List<String> indexNames = new ArrayList<>();
 
         // 如果配置了手动指定的索引列表，按用户前缀过滤后返回
@@ -199,21 +375,18 @@ public class DynamicEmbeddingStoreRegistry {
         // 如果启用了自动发现，从 ES 查询索引并按用户前缀过滤
         if (properties.isAutoDiscoverIndices()) {
             String userPrefix = memberId + "_";
-            try (RestClientTransport transport = new RestClientTransport(restClient, new JacksonJsonpMapper())) {
-                ElasticsearchClient client = new ElasticsearchClient(transport);
-                IndicesResponse response = client.cat().indices();
-
-                for (IndicesRecord record : response.valueBody()) {
-                    String indexName = record.index();
-                    if (indexName == null || !indexName.startsWith(userPrefix)) continue;
-                    // 如果配置了索引名称过滤模式，进行额外过滤
-                    if (properties.getIndexNamePattern() != null && !properties.getIndexNamePattern().isEmpty()) {
-                        if (indexName.matches(properties.getIndexNamePattern())) {
-                            indexNames.add(indexName);
-                        }
-                    } else {
+            IndicesResponse response = client.cat().indices();
+
+            for (IndicesRecord record : response.valueBody()) {
+                String indexName = record.index();
+                if (indexName == null || !indexName.startsWith(userPrefix)) continue;
+                // 如果配置了索引名称过滤模式，进行额外过滤
+                if (properties.getIndexNamePattern() != null && !properties.getIndexNamePattern().isEmpty()) {
+                    if (indexName.matches(properties.getIndexNamePattern())) {
                         indexNames.add(indexName);
                     }
+                } else {
+                    indexNames.add(indexName);
                 }
             }
         }
@@ -242,6 +415,14 @@ public class DynamicEmbeddingStoreRegistry {
         }
     }
 
+    private String extractMetadata(Map<?, ?> source, String field) {
+        if (source == null || !(source.get("metadata") instanceof Map<?, ?> metadata)) {
+            return "";
+        }
+        Object value = metadata.get(field);
+        return value != null ? value.toString() : "";
+    }
+
     private String extractSegmentText(Map<?, ?> source) {
         if (source == null) {
             return null;
@@ -0,0 +1,477 @@
+package info.mengnan.dialogerai.kb.core;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.indices.GetIndicesSettingsResponse;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import info.mengnan.dialogerai.kb.config.ElasticsearchProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.client.Request;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 文档入库的 Elasticsearch 批量写入
+ * 分块按估算字节数与文档数攒批，经 _bulk 接口写入，同一文档同时进行的请求数受限；
+ * 单个分块写入失败时只重试失败的分块，重试耗尽后在 {@link Session#finish()} 时报告。
+ * 同一索引存在写入会话期间关闭 refresh_interval（关闭前读取原值），最后一个会话结束时恢复原值；
+ * 每个会话写入完成时单独刷新一次索引，文档写完即可检索，不必等待同一索引的其他文档。
+ * 写入器的锁只保护索引表与会话计数；读写索引设置等 ES 调用在各索引自己的 {@link IndexState} 上串行，
+ * 一个索引的慢请求不会阻塞其他索引打开会话。
+ * <p>
+ * 索引不存在时，首批分块经 {@link DynamicEmbeddingStoreRegistry#createEmbeddingStore} 写入，
+ * 由其按向量维度创建索引映射，文档结构与 EmbeddingStore 写入的一致（text、vector、metadata）
+ */
+@Slf4j
+public class ElasticsearchBulkWriter {
+
+    private final DynamicEmbeddingStoreRegistry registry;
+    private final ElasticsearchProperties.Bulk properties;
+    private final Executor executor;
+
+    /**
+     * 索引名 -> 写入状态，只在有会话（或恢复检查）时存在，由 this 保护
+     */
+    private final Map<String, IndexState> indices = new HashMap<>();
+
+    /**
+     * @param registry   索引管理器，提供共享的 ES 客户端
+     * @param properties 批量写入配置
+     * @param executor   执行 bulk 请求的线程池，不应与调用方共用
+     */
+    public ElasticsearchBulkWriter(DynamicEmbeddingStoreRegistry registry,
+                                   ElasticsearchProperties.Bulk properties,
+                                   Executor executor) {
+        this.registry = registry;
+        this.properties = properties;
+        this.executor = executor;
+    }
+
+    /**
+     * 打开一个文档的写入会话，使用后必须 {@link Session#close()}
+     *
+     * @param indexName 知识库索引名
+     */
+    public synchronized Session open(String indexName) {
+        IndexState state = indices.computeIfAbsent(indexName, k -> new IndexState());
+        state.sessions++;
+        return new Session(indexName, state);
+    }
+
+    /**
+     * 会话结束：最后一个会话结束时在索引自己的锁上恢复刷新，期间又有新会话打开时保持关闭
+     */
+    private void release(String indexName, IndexState state) {
+        synchronized (this) {
+            if (--state.sessions > 0) {
+                return;
+            }
+        }
+        synchronized (state) {
+            synchronized (this) {
+                if (state.sessions > 0) {
+                    return;
+                }
+                // 在计数锁内清除，之后打开的会话在 ensureIndex 中等待恢复完成后重新关闭刷新
+                state.ready = false;
+            }
+            if (state.refreshDisabled) {
+                restoreRefresh(indexName, state.originalRefreshInterval);
+                state.refreshDisabled = false;
+            }
+        }
+        synchronized (this) {
+            if (state.sessions == 0) {
+                indices.remove(indexName, state);
+            }
+        }
+    }
+
+    /**
+     * 进程在写入过程中退出时，索引会停留在关闭刷新的状态，已写入的分块也不可检索。
+     * 恢复中断的文档前调用：本进程没有该索引的写入会话时把停留在 -1 的刷新间隔重置为默认值。
+     * 检查期间占用该索引的状态，同时打开的会话等待检查结束后再关闭刷新。
+     * 中断前写入的分块由 {@link IncrementalSegmentIndex#open} 比对前的显式刷新变为可检索
+     *
+     * @param indexName 知识库索引名
+     */
+    public void recover(String indexName) {
+        if (!properties.isDisableRefresh()) {
+            return;
+        }
+        IndexState state = new IndexState();
+        synchronized (this) {
+            if (indices.containsKey(indexName)) {
+                return;
+            }
+            state.sessions = 1;
+            indices.put(indexName, state);
+        }
+        try {
+            synchronized (state) {
+                if (indexExists(indexName) && "-1".equals(readRefreshInterval(indexName))) {
+                    restoreRefresh(indexName, null);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to check refresh interval of index: {}, {}", indexName, e.getMessage());
+        } finally {
+            release(indexName, state);
+        }
+    }
+
+    private void disableRefresh(String indexName, IndexState state) {
+        if (!properties.isDisableRefresh() || state.refreshDisabled) {
+            return;
+        }
+        try {
+            String original = readRefreshInterval(indexName);
+            client().indices().putSettings(builder -> builder
+                    .index(indexName)
+                    .settings(settings -> settings.refreshInterval(time -> time.time("-1"))));
+            // 上次进程在写入中退出时原值停留在 -1，此时按未设置处理，恢复为默认值
+            state.originalRefreshInterval = "-1".equals(original) ? null : original;
+            state.refreshDisabled = true;
+            log.debug("Disabled refresh for index: {}", indexName);
+        } catch (Exception e) {
+            // 关闭刷新只影响写入效率，失败时按默认刷新继续写入
+            log.warn("Failed to disable refresh for index: {}, {}", indexName, e.getMessage());
+        }
+    }
+
+    /**
+     * 恢复刷新间隔并立即刷新一次
+     *
+     * @param interval 原刷新间隔，null 表示原来未设置，重置为 Elasticsearch 默认值
+     */
+    private void restoreRefresh(String indexName, String interval) {
+        try {
+            if (interval != null) {
+                client().indices().putSettings(builder -> builder
+                        .index(indexName)
+                        .settings(settings -> settings.refreshInterval(time -> time.time(interval))));
+            } else {
+                // 类型化客户端无法写出 null，经底层客户端删除该设置
+                Request request = new Request("PUT", "/" + indexName + "/_settings");
+                request.setJsonEntity("{\"index\":{\"refresh_interval\":null}}");
+                registry.restClient().performRequest(request);
+            }
+            refresh(indexName);
+            log.debug("Restored refresh interval {} for index: {}", interval != null ? interval : "(default)", indexName);
+        } catch (Exception e) {
+            log.error("Failed to restore refresh for index: {}", indexName, e);
+        }
+    }
+
+    /**
+     * 读取索引显式设置的 refresh_interval，未设置时返回 null
+     */
+    private String readRefreshInterval(String indexName) throws IOException {
+        GetIndicesSettingsResponse response = client().indices().getSettings(builder -> builder
+                .index(indexName)
+                .name("index.refresh_interval"));
+        co.elastic.clients.elasticsearch.indices.IndexState index = response.get(indexName);
+        IndexSettings settings = index != null ? index.settings() : null;
+        if (settings != null && settings.index() != null) {
+            settings = settings.index();
+        }
+        Time interval = settings != null ? settings.refreshInterval() : null;
+        return interval != null && interval.isTime() ? interval.time() : null;
+    }
+
+    private void refresh(String indexName) throws IOException {
+        client().indices().refresh(builder -> builder.index(indexName));
+    }
+
+    private boolean indexExists(String indexName) {
+        try {
+            return client().indices().exists(builder -> builder.index(indexName)).value();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to check index: " + indexName, e);
+        }
+    }
+
+    private ElasticsearchClient client() {
+        return registry.client();
+    }
+
+    /**
+     * 单个索引的写入状态：sessions 由写入器的锁保护，其余字段与 ES 设置调用由本对象的锁保护
+     */
+    private static final class IndexState {
+        private int sessions;
+        private boolean exists;
+        private boolean refreshDisabled;
+        private String originalRefreshInterval;
+
+        /**
+         * 索引已存在且刷新已按配置处理，写入时无需再加锁检查
+         */
+        private volatile boolean ready;
+    }
+
+    private record BulkItem(String id, Map<String, Object> document, long bytes) {
+    }
+
+    /**
+     * 单个文档的写入会话，只提供按固定 ID 批量写入，可由多个线程同时写入
+     */
+    public final class Session implements AutoCloseable {
+
+        private final String indexName;
+        private final IndexState state;
+        private final Semaphore inFlight = new Semaphore(Math.max(1, properties.getConcurrency()));
+
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        private final AtomicInteger documents = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger retriedItems = new AtomicInteger();
+        private final AtomicInteger failedItems = new AtomicInteger();
+        private final AtomicReference<String> failure = new AtomicReference<>();
+
+        private List<BulkItem> buffer = new ArrayList<>();
+        private long bufferBytes;
+        private boolean closed;
+
+        private Session(String indexName, IndexState state) {
+            this.indexName = indexName;
+            this.state = state;
+        }
+
+        /**
+         * 写入一批分块，攒满一批后提交 bulk 请求；已有分块重试失败时抛出异常
+         *
+         * @param segments 分块，为 null 时只写入向量
+         */
+        public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+            checkFailure();
+            documents.addAndGet(ids.size());
+            if (ensureIndex(ids, embeddings, segments)) {
+                return;
+            }
+            List<List<BulkItem>> ready = new ArrayList<>();
+            synchronized (this) {
+                for (int i = 0; i < ids.size(); i++) {
+                    BulkItem item = toItem(ids.get(i), embeddings.get(i), segments != null ? segments.get(i) : null);
+                    buffer.add(item);
+                    bufferBytes += item.bytes();
+                    if (bufferBytes >= properties.getMaxBytes() || buffer.size() >= properties.getMaxActions()) {
+                        ready.add(buffer);
+                        buffer = new ArrayList<>();
+                        bufferBytes = 0;
+                    }
+                }
+            }
+            ready.forEach(this::submit);
+        }
+
+        /**
+         * 写入剩余分块并等待全部请求完成，有分块重试后仍未写入时抛出异常
+         */
+        public Result finish() {
+            List<BulkItem> rest;
+            synchronized (this) {
+                rest = buffer;
+                buffer = new ArrayList<>();
+                bufferBytes = 0;
+            }
+            if (!rest.isEmpty()) {
+                submit(rest);
+            }
+            List<CompletableFuture<Void>> pending;
+            synchronized (futures) {
+                pending = new ArrayList<>(futures);
+            }
+            pending.forEach(CompletableFuture::join);
+            checkFailure();
+            refreshIfDisabled();
+            return new Result(documents.get(), requests.get(), retriedItems.get());
+        }
+
+        /**
+         * 索引关闭了自动刷新时，写入完成后立即刷新，调用方随后标记文档完成时分块已可检索
+         */
+        private void refreshIfDisabled() {
+            synchronized (state) {
+                if (!state.refreshDisabled) {
+                    return;
+                }
+            }
+            try {
+                refresh(indexName);
+            } catch (Exception e) {
+                throw new IllegalStateException("ES 索引刷新失败: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * 结束会话，同一索引的最后一个会话结束时恢复刷新
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            release(indexName, state);
+        }
+
+        /**
+         * 确保索引存在并关闭刷新；索引不存在时经 EmbeddingStore 写入本批以创建索引
+         *
+         * @return true 表示本批已写入
+         */
+        private boolean ensureIndex(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+            if (state.ready) {
+                return false;
+            }
+            synchronized (state) {
+                boolean written = false;
+                if (!state.exists) {
+                    if (!indexExists(indexName)) {
+                        registry.createEmbeddingStore(indexName).addAll(ids, embeddings, segments);
+                        written = true;
+                    }
+                    state.exists = true;
+                }
+                disableRefresh(indexName, state);
+                state.ready = true;
+                return written;
+            }
+        }
+
+        private void submit(List<BulkItem> batch) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("批量写入被中断", e);
+            }
+            CompletableFuture<Void> future;
+            try {
+                future = CompletableFuture.runAsync(() -> {
+                    try {
+                        write(batch);
+                    } finally {
+                        inFlight.release();
+                    }
+                }, executor);
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+            synchronized (futures) {
+                futures.add(future);
+            }
+        }
+
+        private void write(List<BulkItem> batch) {
+            List<BulkItem> pending = batch;
+            for (int attempt = 0; ; attempt++) {
+                requests.incrementAndGet();
+                List<BulkItem> failed = new ArrayList<>();
+                String reason = null;
+                try {
+                    BulkResponse response = client().bulk(toRequest(pending));
+                    if (!response.errors()) {
+                        return;
+                    }
+                    List<BulkResponseItem> items = response.items();
+                    for (int i = 0; i < items.size(); i++) {
+                        if (items.get(i).error() != null) {
+                            failed.add(pending.get(i));
+                            reason = items.get(i).error().type() + ": " + items.get(i).error().reason();
+                        }
+                    }
+                } catch (Exception e) {
+                    failed = pending;
+                    reason = e.getMessage();
+                }
+                if (failed.isEmpty()) {
+                    return;
+                }
+                if (attempt >= properties.getMaxRetries()) {
+                    failedItems.addAndGet(failed.size());
+                    failure.compareAndSet(null, reason);
+                    log.error("Bulk write gave up on {} segments in index {}: {}", failed.size(), indexName, reason);
+                    return;
+                }
+                retriedItems.addAndGet(failed.size());
+                long backoff = properties.getRetryBackoffMillis() << attempt;
+                log.warn("Bulk write failed for {}/{} segments in index {}, retrying in {}ms: {}",
+                        failed.size(), pending.size(), indexName, backoff, reason);
+                if (!sleep(backoff)) {
+                    failedItems.addAndGet(failed.size());
+                    failure.compareAndSet(null, "批量写入被中断");
+                    return;
+                }
+                pending = failed;
+            }
+        }
+
+        private BulkRequest toRequest(List<BulkItem> items) {
+            BulkRequest.Builder builder = new BulkRequest.Builder().index(indexName);
+            for (BulkItem item : items) {
+                builder.operations(op -> op.index(index -> index.id(item.id()).document(item.document())));
+            }
+            return builder.build();
+        }
+
+        private void checkFailure() {
+            String reason = failure.get();
+            if (reason != null) {
+                throw new IllegalStateException("ES 批量写入失败，" + failedItems.get() + " 个分块重试后仍未写入: " + reason);
+            }
+        }
+    }
+
+    private static BulkItem toItem(String id, Embedding embedding, TextSegment segment) {
+        Map<String, Object> document = new HashMap<>();
+        document.put("vector", embedding.vector());
+        long bytes = 64L + embedding.dimension() * 12L;
+        if (segment != null) {
+            Map<String, Object> metadata = segment.metadata().toMap();
+            document.put("text", segment.text());
+            document.put("metadata", metadata);
+            bytes += segment.text().length() * 3L;
+            for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+                bytes += entry.getKey().length() + String.valueOf(entry.getValue()).length() * 3L + 8;
+            }
+        }
+        return new BulkItem(id, document, bytes);
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @param documents    写入的分块数
+     * @param requests     发出的 bulk 请求数，含重试
+     * @param retriedItems 重试的分块次数
+     */
+    public record Result(int documents, int requests, int retriedItems) {
+    }
+}
@@ -0,0 +1,36 @@
+package info.mengnan.dialogerai.kb.core;
+
+/**
+ * 图片描述缓存，按图片内容的 SHA-256 与描述版本存取，同一图片重复上传时不再调用图生文模型
+ * 描述版本由 {@link ImageTextGenerator#captionVersion} 给出，模型或提示词变化后旧描述不再命中
+ */
+public interface ImageCaptionCache {
+
+    /**
+     * 不缓存
+     */
+    ImageCaptionCache NONE = new ImageCaptionCache() {
+        @Override
+        public String get(String imageHash, String captionVersion) {
+            return null;
+        }
+
+        @Override
+        public void put(String imageHash, String captionVersion, String caption) {
+        }
+    };
+
+    /**
+     * @param imageHash      图片内容的 SHA-256（十六进制）
+     * @param captionVersion 描述版本
+     * @return 已缓存的描述，不存在时返回 null
+     */
+    String get(String imageHash, String captionVersion);
+
+    /**
+     * @param imageHash      图片内容的 SHA-256（十六进制）
+     * @param captionVersion 描述版本
+     * @param caption        图片描述
+     */
+    void put(String imageHash, String captionVersion, String caption);
+}
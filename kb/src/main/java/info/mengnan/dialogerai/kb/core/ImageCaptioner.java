@@ -0,0 +1,199 @@
+package info.mengnan.dialogerai.kb.core;
+
+import info.mengnan.dialogerai.kb.param.DocumentImage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 批量生成文档图片描述
+ * 文档遍历时只收集图片，遍历结束后统一识别：按内容哈希去重，按 (内容哈希, 描述版本) 先查 {@link ImageCaptionCache}，
+ * 未命中的图片每 imagesPerRequest 张合成一次批量识别，以不超过 maxConcurrency 的并发调用图生文模型，
+ * 结果写回每个 {@link DocumentImage}，图片在内容元素列表中的顺序不受影响。
+ * 只有单张识别得到的描述写入缓存；多图合并请求的描述只用于当前文档，避免模型标错顺序时污染全局缓存
+ */
+@Slf4j
+public class ImageCaptioner {
+
+    private static final String PROMPT_TEMPLATE = "identify_picture";
+
+    private final ImageTextGenerator imageTextGenerator;
+    private final ImageCaptionCache captionCache;
+    private final Executor executor;
+    private final int maxConcurrency;
+    private final int imagesPerRequest;
+
+    public ImageCaptioner(ImageTextGenerator imageTextGenerator,
+                          ImageCaptionCache captionCache,
+                          Executor executor,
+                          int maxConcurrency) {
+        this(imageTextGenerator, captionCache, executor, maxConcurrency, 1);
+    }
+
+    /**
+     * @param imageTextGenerator 图生文模型
+     * @param captionCache       图片描述缓存
+     * @param executor           执行识别请求的线程池，不应与调用方共用
+     * @param maxConcurrency     单个文档同时进行的识别请求数
+     * @param imagesPerRequest   每次批量识别的图片数
+     */
+    public ImageCaptioner(ImageTextGenerator imageTextGenerator,
+                          ImageCaptionCache captionCache,
+                          Executor executor,
+                          int maxConcurrency,
+                          int imagesPerRequest) {
+        this.imageTextGenerator = imageTextGenerator;
+        this.captionCache = captionCache;
+        this.executor = executor;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.imagesPerRequest = Math.max(1, imagesPerRequest);
+    }
+
+    /**
+     * 待识别的图片
+     *
+     * @param image    识别结果写入的图片对象
+     * @param data     图片数据
+     * @param mimeType 图片 MIME 类型
+     */
+    public record PendingImage(DocumentImage image, byte[] data, String mimeType) {
+    }
+
+    /**
+     * 为全部图片生成描述，返回时描述已写入；单张图片识别失败时描述为 null
+     */
+    public void captionAll(List<PendingImage> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, List<PendingImage>> byHash = new LinkedHashMap<>();
+        for (PendingImage p : pending) {
+            byHash.computeIfAbsent(sha256(p.data()), k -> new ArrayList<>()).add(p);
+        }
+
+        String version = captionVersion();
+        List<Map.Entry<String, List<PendingImage>>> uncached = new ArrayList<>();
+        int cached = 0;
+        for (Map.Entry<String, List<PendingImage>> entry : byHash.entrySet()) {
+            String caption = version != null ? cachedCaption(entry.getKey(), version) : null;
+            if (caption != null) {
+                apply(entry.getValue(), caption);
+                cached++;
+            } else {
+                uncached.add(entry);
+            }
+        }
+
+        Semaphore permits = new Semaphore(maxConcurrency);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int from = 0; from < uncached.size(); from += imagesPerRequest) {
+            List<Map.Entry<String, List<PendingImage>>> batch =
+                    uncached.subList(from, Math.min(from + imagesPerRequest, uncached.size()));
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("图片识别被中断", e);
+            }
+            try {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        caption(batch, version);
+                    } finally {
+                        permits.release();
+                    }
+                }, executor));
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+        futures.forEach(CompletableFuture::join);
+
+        log.info("Captioned {} images: {} unique, {} from cache, {} model requests",
+                pending.size(), byHash.size(), cached, futures.size());
+    }
+
+    /**
+     * 批量识别一组去重后的图片，识别结果写回，单张识别的结果写入缓存
+     */
+    private void caption(List<Map.Entry<String, List<PendingImage>>> batch, String version) {
+        List<ImageTextGenerator.ImageInput> inputs = new ArrayList<>(batch.size());
+        for (Map.Entry<String, List<PendingImage>> entry : batch) {
+            PendingImage image = entry.getValue().get(0);
+            inputs.add(new ImageTextGenerator.ImageInput(image.data(), image.mimeType()));
+        }
+
+        List<ImageTextGenerator.Caption> captions;
+        try {
+            captions = imageTextGenerator.imageToText(inputs, PROMPT_TEMPLATE);
+        } catch (RuntimeException e) {
+            log.warn("Failed to caption {} image(s): {}", batch.size(), e.getMessage());
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            String hash = batch.get(i).getKey();
+            List<PendingImage> group = batch.get(i).getValue();
+            ImageTextGenerator.Caption result = i < captions.size() ? captions.get(i) : null;
+            String caption = result != null ? result.text() : null;
+            if (caption == null || caption.isBlank()) {
+                log.warn("Failed to caption image {}", group.get(0).image().getFilename());
+                continue;
+            }
+            apply(group, caption);
+            if (result.packed() || version == null) {
+                continue;
+            }
+            try {
+                captionCache.put(hash, version, caption);
+            } catch (RuntimeException e) {
+                log.warn("Failed to cache image caption: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 当前模型与提示词对应的描述版本，取不到时本次不读写缓存
+     */
+    private String captionVersion() {
+        try {
+            return imageTextGenerator.captionVersion(PROMPT_TEMPLATE);
+        } catch (RuntimeException e) {
+            log.warn("Failed to resolve image caption version, cache disabled for this document: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private String cachedCaption(String hash, String version) {
+        try {
+            return captionCache.get(hash, version);
+        } catch (RuntimeException e) {
+            log.warn("Failed to read image caption cache: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static void apply(List<PendingImage> group, String caption) {
+        for (PendingImage p : group) {
+            p.image().setImageDescription(caption);
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
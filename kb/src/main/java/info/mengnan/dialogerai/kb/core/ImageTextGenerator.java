@@ -1,5 +1,8 @@
 package info.mengnan.dialogerai.kb.core;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface ImageTextGenerator {
 
     /**
@@ -11,4 +14,49 @@ public interface ImageTextGenerator {
      * @return 图片描述文本
      */
     String imageToText(byte[] data, String prompt, String mimeType);
+
+    /**
+     * 批量生成图片描述，结果与输入顺序一致，单张图片识别失败时对应位置的描述为 null。
+     * 默认逐张调用；支持一次请求多张图片的实现可以合并请求，合并请求得到的描述标记为 packed
+     *
+     * @param images 图片
+     * @param prompt 模型提示词标识
+     */
+    default List<Caption> imageToText(List<ImageInput> images, String prompt) {
+        List<Caption> captions = new ArrayList<>(images.size());
+        for (ImageInput image : images) {
+            String caption;
+            try {
+                caption = imageToText(image.data(), prompt, image.mimeType());
+            } catch (RuntimeException e) {
+                caption = null;
+            }
+            captions.add(new Caption(caption, false));
+        }
+        return captions;
+    }
+
+    /**
+     * 描述版本：标识生成描述所用的模型与提示词，作为缓存键的一部分，模型或提示词变化后返回值随之变化
+     *
+     * @param prompt 模型提示词标识
+     * @return 版本标识，返回 null 时不缓存描述
+     */
+    default String captionVersion(String prompt) {
+        return null;
+    }
+
+    /**
+     * @param data     图片数据
+     * @param mimeType 图片 MIME 类型
+     */
+    record ImageInput(byte[] data, String mimeType) {
+    }
+
+    /**
+     * @param text   图片描述，识别失败时为 null
+     * @param packed 是否来自多图合并请求；合并请求的描述只按模型输出的标记对应到图片，对应关系无法校验，不应长期缓存
+     */
+    record Caption(String text, boolean packed) {
+    }
 }
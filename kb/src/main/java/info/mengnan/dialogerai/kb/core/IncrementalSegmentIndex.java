@@ -0,0 +1,126 @@
+package info.mengnan.dialogerai.kb.core;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 文档增量入库
+ * 分块以文本的 SHA-256 作为指纹写入元数据 content_hash。重新上传时与索引中该文档已有的分块比对：
+ * 指纹相同的分块向量不变，只替换元数据（位置、图片等），不再向量化；
+ * 全部分块处理完后删除不再出现的旧分块。未记录指纹的旧分块视为已变化。
+ * <p>
+ * 由一个线程依次调用 {@link #reuse}，{@link #reused()} 可在其他线程读取
+ */
+public class IncrementalSegmentIndex {
+
+    public static final String CONTENT_HASH = "content_hash";
+
+    private final DynamicEmbeddingStoreRegistry registry;
+    private final String indexName;
+
+    /**
+     * 内容哈希 -> 尚未被复用的已有分块 ID
+     */
+    private final Map<String, Deque<String>> existing = new LinkedHashMap<>();
+
+    /**
+     * 复用的分块 ID -> 新的元数据
+     */
+    private final Map<String, Map<String, Object>> reusedMetadata = new LinkedHashMap<>();
+
+    private final AtomicInteger reused = new AtomicInteger();
+    private int total;
+
+    private IncrementalSegmentIndex(DynamicEmbeddingStoreRegistry registry, String indexName,
+                                    Map<String, List<String>> existingHashes) {
+        this.registry = registry;
+        this.indexName = indexName;
+        existingHashes.forEach((hash, ids) -> existing.put(hash, new ArrayDeque<>(ids)));
+    }
+
+    /**
+     * 读取文档在索引中已有的分块指纹
+     * 读取前先刷新索引：写入期间关闭了自动刷新，中断的上次处理已写入的分块在刷新前检索不到，
+     * 漏读会导致重复向量化，旧分块也不会被删除
+     *
+     * @param registry   索引管理器
+     * @param indexName  知识库索引名
+     * @param documentId 文档 ID
+     */
+    public static IncrementalSegmentIndex open(DynamicEmbeddingStoreRegistry registry, String indexName, Long documentId) {
+        registry.refresh(indexName);
+        return new IncrementalSegmentIndex(registry, indexName,
+                registry.fetchSegmentHashes(indexName, documentId, CONTENT_HASH));
+    }
+
+    /**
+     * 为分块写入内容指纹，索引中已有相同内容时复用其向量
+     *
+     * @return true 表示已复用，调用方无需向量化该分块
+     */
+    public boolean reuse(TextSegment segment) {
+        total++;
+        String hash = sha256(segment.text());
+        segment.metadata().put(CONTENT_HASH, hash);
+        Deque<String> ids = existing.get(hash);
+        if (ids == null || ids.isEmpty()) {
+            return false;
+        }
+        reusedMetadata.put(ids.poll(), segment.metadata().toMap());
+        reused.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 已处理的分块总数，含复用与需向量化的分块
+     */
+    public int total() {
+        return total;
+    }
+
+    /**
+     * 已复用的分块数
+     */
+    public int reused() {
+        return reused.get();
+    }
+
+    /**
+     * 写回复用分块的元数据并删除不再出现的旧分块，应在新分块全部写入后调用
+     */
+    public Result finish() {
+        registry.replaceSegmentMetadata(indexName, reusedMetadata);
+        List<String> stale = new ArrayList<>();
+        existing.values().forEach(stale::addAll);
+        registry.deleteSegments(indexName, stale);
+        return new Result(total, reused.get(), stale.size());
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param total   分块总数
+     * @param reused  复用的分块数
+     * @param deleted 删除的旧分块数
+     */
+    public record Result(int total, int reused, int deleted) {
+    }
+}
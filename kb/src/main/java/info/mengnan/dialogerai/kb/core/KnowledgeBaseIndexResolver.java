@@ -13,5 +13,8 @@ public interface KnowledgeBaseIndexResolver {
 
     List<KbIndexRef> resolveActiveIndexes(Long memberId);
 
-    record KbIndexRef(String indexName, String displayName) {}
+    /**
+     * @param description 知识库描述，用于查询路由，可为 null
+     */
+    record KbIndexRef(String indexName, String displayName, String description) {}
 }
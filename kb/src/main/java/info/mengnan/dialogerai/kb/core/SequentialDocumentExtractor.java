@@ -18,13 +18,13 @@ import java.util.*;
 
 /**
  * 按顺序提取文档内容
- * 保持文本和图片在原文档中的相对位置
+ * 保持文本和图片在原文档中的相对位置；遍历时只收集图片，遍历结束后由 {@link ImageCaptioner} 统一生成描述
  */
 @Slf4j
 @RequiredArgsConstructor
 public class SequentialDocumentExtractor {
 
-    private final ImageTextGenerator imageTextGenerator;
+    private final ImageCaptioner imageCaptioner;
 
     /**
      * 从 Word 文档按顺序提取内容
@@ -34,18 +34,19 @@ public class SequentialDocumentExtractor {
      */
     public List<ContentElement> extractWordContentSequentially(Path filePath) {
         List<ContentElement> elements = new ArrayList<>();
+        List<ImageCaptioner.PendingImage> images = new ArrayList<>();
         int position = 0;
 
         try (FileInputStream fis = new FileInputStream(filePath.toFile());
              XWPFDocument document = new XWPFDocument(fis)) {
              // 遍历所有段落
-             position = getPosition(elements, position, document.getParagraphs(), document);
+             position = getPosition(elements, images, position, document.getParagraphs());
 
             // 处理表格中的内容
             for (XWPFTable table : document.getTables()) {
                 for (XWPFTableRow row : table.getRows()) {
                     for (XWPFTableCell cell : row.getTableCells()) {
-                        position = getPosition(elements, position, cell.getParagraphs(), document);
+                        position = getPosition(elements, images, position, cell.getParagraphs());
                     }
                 }
             }
@@ -55,10 +56,12 @@ public class SequentialDocumentExtractor {
             log.error("Error extracting content from Word document: {}", filePath, e);
         }
 
+        imageCaptioner.captionAll(images);
         return elements;
     }
 
-    private int getPosition(List<ContentElement> elements, int position, List<XWPFParagraph> paragraphs, XWPFDocument document) {
+    private int getPosition(List<ContentElement> elements, List<ImageCaptioner.PendingImage> images,
+                            int position, List<XWPFParagraph> paragraphs) {
         for (XWPFParagraph paragraph : paragraphs) {
             String paragraphText = paragraph.getText();
 
@@ -72,8 +75,9 @@ public class SequentialDocumentExtractor {
                 for (XWPFPicture picture : run.getEmbeddedPictures()) {
                     XWPFPictureData pictureData = picture.getPictureData();
                     if (pictureData != null) {
-                        DocumentImage image = createDocumentImage(pictureData, position);
-                        elements.add(ContentElement.ofImage(image, position++));
+                        ImageCaptioner.PendingImage image = createDocumentImage(pictureData, position);
+                        images.add(image);
+                        elements.add(ContentElement.ofImage(image.image(), position++));
                     }
                 }
             }
@@ -89,6 +93,7 @@ public class SequentialDocumentExtractor {
      */
     public List<ContentElement> extractPowerPointContentSequentially(Path filePath) {
         List<ContentElement> elements = new ArrayList<>();
+        List<ImageCaptioner.PendingImage> images = new ArrayList<>();
         int position = 0;
 
         try (FileInputStream fis = new FileInputStream(filePath.toFile());
@@ -101,8 +106,9 @@ public class SequentialDocumentExtractor {
                     // 处理图片
                     if (shape instanceof XSLFPictureShape pictureShape) {
                         try {
-                            DocumentImage image = createPowerPointImage(pictureShape, position);
-                            elements.add(ContentElement.ofImage(image, position++));
+                            ImageCaptioner.PendingImage image = createPowerPointImage(pictureShape, position);
+                            images.add(image);
+                            elements.add(ContentElement.ofImage(image.image(), position++));
                         } catch (Exception e) {
                             log.warn("Failed to extract picture from PowerPoint: {}", e.getMessage());
                         }
@@ -126,6 +132,7 @@ public class SequentialDocumentExtractor {
             log.error("Error extracting content from PowerPoint: {}", filePath, e);
         }
 
+        imageCaptioner.captionAll(images);
         return elements;
     }
 
@@ -148,9 +155,9 @@ public class SequentialDocumentExtractor {
     }
 
     /**
-     * 为 Word 文档中的图片创建 DocumentImage 对象
+     * 为 Word 文档中的图片创建 DocumentImage 对象，描述待统一生成
      */
-    private DocumentImage createDocumentImage(XWPFPictureData pictureData, int position) {
+    private ImageCaptioner.PendingImage createDocumentImage(XWPFPictureData pictureData, int position) {
         String pictureName = pictureData.getFileName();
         String extension = "png";
         if (pictureName != null && pictureName.contains(".")) {
@@ -158,21 +165,18 @@ public class SequentialDocumentExtractor {
         }
 
         String filename = String.format("word_image_%d.%s", position, extension);
-        byte[] data = pictureData.getData();
-        String imageDescription = imageTextGenerator.imageToText(data, "identify_picture","image/png");
-
-        return DocumentImage.builder()
+        DocumentImage image = DocumentImage.builder()
                 .filename(filename)
                 .pageNumber(1)
                 .format(extension)
-                .imageDescription(imageDescription)
                 .build();
+        return new ImageCaptioner.PendingImage(image, pictureData.getData(), "image/png");
     }
 
     /**
-     * 为 PowerPoint 中的图片创建 DocumentImage 对象
+     * 为 PowerPoint 中的图片创建 DocumentImage 对象，描述待统一生成
      */
-    private DocumentImage createPowerPointImage(XSLFPictureShape pictureData, int position) {
+    private ImageCaptioner.PendingImage createPowerPointImage(XSLFPictureShape pictureData, int position) {
         String pictureName = pictureData.getPictureData().getFileName();
         String extension = "png";
         if (pictureName.contains(".")) {
@@ -180,14 +184,11 @@ public class SequentialDocumentExtractor {
         }
 
         String filename = String.format("ppt_image_%d.%s", position, extension);
-        byte[] data = pictureData.getPictureData().getData();
-        String imageDescription = imageTextGenerator.imageToText(data, "identify_picture","image/png");
-
-        return DocumentImage.builder()
+        DocumentImage image = DocumentImage.builder()
                 .filename(filename)
                 .pageNumber(1)
                 .format(extension)
-                .imageDescription(imageDescription)
                 .build();
+        return new ImageCaptioner.PendingImage(image, pictureData.getPictureData().getData(), "image/png");
     }
 }
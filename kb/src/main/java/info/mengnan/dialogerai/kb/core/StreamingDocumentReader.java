@@ -0,0 +1,139 @@
+package info.mengnan.dialogerai.kb.core;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.parser.apache.poi.ApachePoiDocumentParser;
+import info.mengnan.dialogerai.kb.param.ContentElement;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 流式读取文档内容
+ * 按文档结构逐个产出内容元素，每个文件只解析一次：
+ * <ul>
+ *   <li>pdf：逐页提取文本，不在内存中保留整份文本</li>
+ *   <li>txt/md：逐行读取，空行作为段落边界</li>
+ *   <li>docx/pptx：由 {@link SequentialDocumentExtractor} 提取，保留图片位置；POI 需要整体加载文档模型</li>
+ *   <li>doc/ppt/xls/xlsx：POI 解析出整体文本后按段落产出</li>
+ * </ul>
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class StreamingDocumentReader {
+
+    private final SequentialDocumentExtractor sequentialExtractor;
+
+    /**
+     * 接收读取出的内容元素
+     */
+    @FunctionalInterface
+    public interface ElementSink {
+
+        /**
+         * @param element         内容元素
+         * @param progressPercent 元素在文档中的大致位置（0-100）
+         */
+        void accept(ContentElement element, int progressPercent);
+    }
+
+    /**
+     * 按文件类型流式读取内容元素
+     *
+     * @param filePath      文件路径
+     * @param fileExtension 文件扩展名（含点号）
+     * @param sink          元素接收方，在调用线程上依次调用
+     */
+    public void read(Path filePath, String fileExtension, ElementSink sink) throws IOException {
+        switch (fileExtension.toLowerCase()) {
+            case ".pdf" -> readPdf(filePath, sink);
+            case ".md", ".txt" -> readText(filePath, sink);
+            case ".docx", ".pptx" -> readSequential(filePath, fileExtension, sink);
+            case ".doc", ".ppt", ".xls", ".xlsx" -> readWithPoi(filePath, sink);
+            default -> throw new RuntimeException("不支持的文件类型：" + fileExtension);
+        }
+    }
+
+    private void readPdf(Path filePath, ElementSink sink) throws IOException {
+        try (PDDocument document = Loader.loadPDF(filePath.toFile())) {
+            int pages = document.getNumberOfPages();
+            PDFTextStripper stripper = new PDFTextStripper();
+            int position = 0;
+            for (int page = 1; page <= pages; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                String text = stripper.getText(document);
+                if (!text.isBlank()) {
+                    sink.accept(ContentElement.ofText(text, position++), percent(page - 1, pages));
+                }
+            }
+            log.info("Streamed {} pages from PDF: {}", pages, filePath.getFileName());
+        }
+    }
+
+    private void readText(Path filePath, ElementSink sink) throws IOException {
+        long size = Math.max(1, Files.size(filePath));
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
+             InputStream in = Channels.newInputStream(channel);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            StringBuilder paragraph = new StringBuilder();
+            int position = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    if (!paragraph.isEmpty()) {
+                        sink.accept(ContentElement.ofText(paragraph.toString(), position++),
+                                percent(channel.position(), size));
+                        paragraph.setLength(0);
+                    }
+                    continue;
+                }
+                if (!paragraph.isEmpty()) {
+                    paragraph.append('\n');
+                }
+                paragraph.append(line);
+            }
+            if (!paragraph.isEmpty()) {
+                sink.accept(ContentElement.ofText(paragraph.toString(), position), 100);
+            }
+        }
+    }
+
+    private void readSequential(Path filePath, String fileExtension, ElementSink sink) {
+        List<ContentElement> elements = sequentialExtractor.extractContentSequentially(filePath, fileExtension);
+        for (int i = 0; i < elements.size(); i++) {
+            sink.accept(elements.get(i), percent(i, elements.size()));
+        }
+    }
+
+    private void readWithPoi(Path filePath, ElementSink sink) throws IOException {
+        Document document;
+        try (InputStream in = Files.newInputStream(filePath)) {
+            document = new ApachePoiDocumentParser().parse(in);
+        }
+        String[] paragraphs = document.text().split("\\n\\s*\\n");
+        int position = 0;
+        for (int i = 0; i < paragraphs.length; i++) {
+            if (!paragraphs[i].isBlank()) {
+                sink.accept(ContentElement.ofText(paragraphs[i], position++), percent(i, paragraphs.length));
+            }
+        }
+    }
+
+    private static int percent(long done, long total) {
+        return total <= 0 ? 0 : (int) Math.min(100, done * 100 / total);
+    }
+}
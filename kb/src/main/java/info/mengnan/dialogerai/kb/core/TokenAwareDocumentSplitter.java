@@ -0,0 +1,261 @@
+package info.mengnan.dialogerai.kb.core;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * 按 token 数切分文档
+ * 文本先按句子切成最小单元：中文以。！？；…结束，英文以 .!? 加空白结束，换行也作为边界，
+ * 句末的引号、括号与空白归入前一句。超过上限的句子再按逗号、顿号、空白切开，仍超过时按字符数切开。
+ * <p>
+ * 单元按 token 数装箱：先由总 token 数算出分块数，再以平均大小为目标，
+ * 使各分块 token 数接近，且不超过 {@code maxTokens}。重叠部分取上一分块末尾的整句。
+ * 句子数超过 {@code parallelThreshold} 时并行计算 token 数。
+ * <p>
+ * 无状态，可在多个线程中共用
+ */
+public class TokenAwareDocumentSplitter implements DocumentSplitter {
+
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 2000;
+
+    private final int maxTokens;
+    private final int overlapTokens;
+    private final ToIntFunction<String> tokenCounter;
+    private final int parallelThreshold;
+
+    /**
+     * @param maxTokens     分块 token 上限
+     * @param overlapTokens 相邻分块重叠的 token 上限，0 表示不重叠
+     * @param tokenCounter  token 计数，需线程安全
+     */
+    public TokenAwareDocumentSplitter(int maxTokens, int overlapTokens, ToIntFunction<String> tokenCounter) {
+        this(maxTokens, overlapTokens, tokenCounter, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * @param parallelThreshold 句子数超过该值时并行计数
+     */
+    public TokenAwareDocumentSplitter(int maxTokens, int overlapTokens, ToIntFunction<String> tokenCounter,
+                                      int parallelThreshold) {
+        if (maxTokens <= 0) {
+            throw new IllegalArgumentException("maxTokens 必须大于 0");
+        }
+        this.maxTokens = maxTokens;
+        this.overlapTokens = Math.max(0, Math.min(overlapTokens, maxTokens / 2));
+        this.tokenCounter = tokenCounter;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    @Override
+    public List<TextSegment> split(Document document) {
+        String text = document.text();
+        List<TextSegment> segments = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return segments;
+        }
+
+        List<Unit> units = fit(text, sentences(text));
+        int index = 0;
+        for (int[] chunk : pack(units)) {
+            String chunkText = text.substring(units.get(chunk[0]).start, units.get(chunk[1]).end).strip();
+            if (!chunkText.isEmpty()) {
+                segments.add(TextSegment.from(chunkText,
+                        document.metadata().copy().put("index", String.valueOf(index++))));
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * 按句子切分，返回各句的 [start, end)，句末空白归入该句
+     */
+    private static List<int[]> sentences(String text) {
+        List<int[]> ranges = new ArrayList<>();
+        int length = text.length();
+        int start = 0;
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i++);
+            boolean boundary;
+            if (c == '\n') {
+                boundary = true;
+            } else if (isCjkTerminator(c)) {
+                boundary = true;
+            } else if (c == '.' || c == '!' || c == '?' || c == ';') {
+                int next = skipClosing(text, i);
+                boundary = next >= length || Character.isWhitespace(text.charAt(next));
+            } else {
+                boundary = false;
+            }
+            if (!boundary) {
+                continue;
+            }
+            i = skipClosing(text, i);
+            while (i < length && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            ranges.add(new int[]{start, i});
+            start = i;
+        }
+        if (start < length) {
+            ranges.add(new int[]{start, length});
+        }
+        return ranges;
+    }
+
+    /**
+     * 计算各句 token 数，超过上限的句子切成更小的单元
+     */
+    private List<Unit> fit(String text, List<int[]> ranges) {
+        int[] tokens = new int[ranges.size()];
+        IntStream indexes = IntStream.range(0, ranges.size());
+        if (ranges.size() > parallelThreshold) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> tokens[i] = count(text, ranges.get(i)[0], ranges.get(i)[1]));
+
+        List<Unit> units = new ArrayList<>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            int[] range = ranges.get(i);
+            if (tokens[i] <= maxTokens) {
+                units.add(new Unit(range[0], range[1], tokens[i]));
+            } else {
+                splitLong(text, range[0], range[1], units);
+            }
+        }
+        return units;
+    }
+
+    /**
+     * 超长句在逗号、顿号、冒号与空白处切成片段，由装箱重新合并；单个片段仍超过上限时按字符数切开
+     */
+    private void splitLong(String text, int start, int end, List<Unit> out) {
+        int i = start;
+        while (i < end) {
+            int pieceStart = i;
+            while (i < end && !isSoftBreak(text.charAt(i))) {
+                i++;
+            }
+            while (i < end && isSoftBreak(text.charAt(i))) {
+                i++;
+            }
+            int tokens = count(text, pieceStart, i);
+            if (tokens <= maxTokens) {
+                out.add(new Unit(pieceStart, i, tokens));
+            } else {
+                splitByLength(text, pieceStart, i, tokens, out);
+            }
+        }
+    }
+
+    /**
+     * 按 token 密度估算字符数切开，切出的片段超过上限时缩短重试
+     */
+    private void splitByLength(String text, int start, int end, int tokens, List<Unit> out) {
+        int pos = start;
+        while (pos < end) {
+            int remainingChars = end - pos;
+            int chars = Math.max(1, (int) ((long) remainingChars * maxTokens / Math.max(tokens, 1)));
+            int pieceEnd = Math.min(end, pos + chars);
+            if (pieceEnd < end && Character.isHighSurrogate(text.charAt(pieceEnd - 1))) {
+                pieceEnd++;
+            }
+            int pieceTokens = count(text, pos, pieceEnd);
+            while (pieceTokens > maxTokens && pieceEnd - pos > 1) {
+                pieceEnd = pos + Math.max(1, (pieceEnd - pos) * 9 / 10);
+                if (pieceEnd - pos > 1 && Character.isHighSurrogate(text.charAt(pieceEnd - 1))) {
+                    pieceEnd--;
+                }
+                pieceTokens = count(text, pos, pieceEnd);
+            }
+            out.add(new Unit(pos, pieceEnd, pieceTokens));
+            tokens = Math.max(0, tokens - pieceTokens);
+            pos = pieceEnd;
+        }
+    }
+
+    /**
+     * 装箱：返回每个分块首尾单元的下标（含两端），重叠的单元计入后一分块
+     */
+    private List<int[]> pack(List<Unit> units) {
+        long total = 0;
+        for (Unit unit : units) {
+            total += unit.tokens;
+        }
+        int step = Math.max(1, maxTokens - overlapTokens);
+        long chunks = Math.max(1, (Math.max(0, total - overlapTokens) + step - 1) / step);
+        long target = Math.max(1, (total + chunks - 1) / chunks);
+
+        List<int[]> result = new ArrayList<>();
+        int first = 0;
+        int fresh = 0;
+        int size = 0;
+        for (int i = 0; i < units.size(); i++) {
+            int tokens = units.get(i).tokens;
+            if (fresh > 0 && (size + tokens > maxTokens
+                    || Math.abs(fresh + tokens - target) > Math.abs(fresh - target))) {
+                result.add(new int[]{first, i - 1});
+                first = overlapStart(units, first, i, Math.min(overlapTokens, maxTokens - tokens));
+                size = 0;
+                for (int j = first; j < i; j++) {
+                    size += units.get(j).tokens;
+                }
+                fresh = 0;
+            }
+            size += tokens;
+            fresh += tokens;
+        }
+        if (fresh > 0) {
+            result.add(new int[]{first, units.size() - 1});
+        }
+        return result;
+    }
+
+    /**
+     * 上一分块 [previousFirst, next) 中作为重叠带入下一分块的第一个单元，重叠不超过 limit 个 token
+     */
+    private int overlapStart(List<Unit> units, int previousFirst, int next, int limit) {
+        int start = next;
+        int tokens = 0;
+        while (start - 1 > previousFirst && tokens + units.get(start - 1).tokens <= limit) {
+            tokens += units.get(--start).tokens;
+        }
+        return start;
+    }
+
+    private int count(String text, int start, int end) {
+        return tokenCounter.applyAsInt(text.substring(start, end));
+    }
+
+    private static int skipClosing(String text, int i) {
+        while (i < text.length() && isClosing(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isCjkTerminator(char c) {
+        return c == '。' || c == '！' || c == '？' || c == '；' || c == '…';
+    }
+
+    private static boolean isClosing(char c) {
+        return c == '”' || c == '’' || c == '」' || c == '』' || c == '）' || c == '》' || c == '】'
+                || c == ')' || c == '"' || c == '\'' || c == ']' || c == '…';
+    }
+
+    private static boolean isSoftBreak(char c) {
+        return c == '，' || c == '、' || c == '：' || c == ',' || c == ':' || Character.isWhitespace(c);
+    }
+
+    /**
+     * 切分单元：原文 [start, end) 及其 token 数
+     */
+    private record Unit(int start, int end, int tokens) {
+    }
+}
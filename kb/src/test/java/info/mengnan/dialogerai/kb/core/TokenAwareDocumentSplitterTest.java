@@ -0,0 +1,159 @@
+package info.mengnan.dialogerai.kb.core;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TokenAwareDocumentSplitter 测试类
+ * 以非空白字符数作为 token 数，计数可按区间相加，便于校验装箱结果
+ */
+class TokenAwareDocumentSplitterTest {
+
+    private static final ToIntFunction<String> NON_WHITESPACE = s ->
+            (int) s.codePoints().filter(c -> !Character.isWhitespace(c)).count();
+
+    /**
+     * 随机长度的中英文句子：分块不超过上限，首尾都落在句子边界，内容完整且按顺序
+     */
+    @Test
+    void chunksRespectLimitAndSentenceBoundaries() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            StringBuilder sb = new StringBuilder();
+            int sentences = 5 + random.nextInt(60);
+            for (int i = 0; i < sentences; i++) {
+                if (random.nextBoolean()) {
+                    sb.append("第").append(i).append("句").append("内容".repeat(1 + random.nextInt(6)))
+                            .append(random.nextBoolean() ? "。" : "！”");
+                } else {
+                    sb.append("Sentence ").append(i).append(" has ").append("word ".repeat(random.nextInt(5)))
+                            .append("3.14").append(random.nextBoolean() ? ". " : "? ");
+                }
+                if (random.nextInt(8) == 0) {
+                    sb.append('\n');
+                }
+            }
+            String text = sb.toString();
+            int maxTokens = 40 + random.nextInt(60);
+            List<String> chunks = split(text, maxTokens, 0);
+
+            assertWithinLimit(chunks, maxTokens);
+            assertCoversText(text, chunks);
+            for (String chunk : chunks) {
+                assertTrue(chunk.startsWith("第") || chunk.startsWith("Sentence "), "分块应从句首开始: " + chunk);
+                assertTrue(chunk.endsWith("。") || chunk.endsWith("！”") || chunk.endsWith(".") || chunk.endsWith("?"),
+                        "分块应在句末结束: " + chunk);
+            }
+        }
+    }
+
+    /**
+     * 英文句号后没有空白时不是句子边界，中文句末标点直接断句，句末的右引号归入前一句
+     */
+    @Test
+    void sentenceBoundaryDetection() {
+        List<String> ascii = split("Pi is 3.14 exactly. Version v1.2.3 shipped! Done?", 22, 0);
+        assertEquals(List.of("Pi is 3.14 exactly.", "Version v1.2.3 shipped!", "Done?"), ascii);
+
+        List<String> cjk = split("第一句。第二句！“第三句？”第四句；", 6, 0);
+        assertEquals(List.of("第一句。", "第二句！", "“第三句？”", "第四句；"), cjk);
+    }
+
+    /**
+     * 没有任何标点与空白的超长文本按字符数切开
+     */
+    @Test
+    void overLongUnpunctuatedRunIsSplit() {
+        for (String text : List.of("a".repeat(1000), "中".repeat(777), "😀".repeat(300))) {
+            List<String> chunks = split(text, 50, 0);
+            assertTrue(chunks.size() >= text.codePointCount(0, text.length()) / 50);
+            assertWithinLimit(chunks, 50);
+            assertEquals(text, String.join("", chunks));
+        }
+
+        // 超长句先在逗号、空白处切开，再由装箱合并
+        String clauses = "这是一个没有句号的超长句子，".repeat(20);
+        List<String> chunks = split(clauses, 30, 0);
+        assertWithinLimit(chunks, 30);
+        assertCoversText(clauses, chunks);
+    }
+
+    /**
+     * 相邻分块的重叠取上一分块末尾的整句，且不超过 overlapTokens
+     */
+    @Test
+    void overlapStaysWithinLimit() {
+        Random random = new Random(11);
+        boolean overlapped = false;
+        for (int round = 0; round < 50; round++) {
+            StringBuilder sb = new StringBuilder();
+            int sentences = 10 + random.nextInt(50);
+            for (int i = 0; i < sentences; i++) {
+                sb.append("句").append(i).append("字".repeat(1 + random.nextInt(8))).append("。");
+            }
+            String text = sb.toString();
+            int maxTokens = 30 + random.nextInt(40);
+            int overlapTokens = 1 + random.nextInt(maxTokens / 2);
+            List<String> chunks = split(text, maxTokens, overlapTokens);
+
+            assertWithinLimit(chunks, maxTokens);
+            int previousStart = -1;
+            int previousEnd = 0;
+            for (String chunk : chunks) {
+                int start = text.indexOf(chunk, previousStart + 1);
+                assertTrue(start >= 0, "分块应为原文的连续片段: " + chunk);
+                assertTrue(start <= previousEnd, "分块之间不应遗漏内容");
+                if (start < previousEnd) {
+                    String overlap = text.substring(start, previousEnd);
+                    assertTrue(NON_WHITESPACE.applyAsInt(overlap) <= overlapTokens,
+                            "重叠 " + overlap + " 超过 " + overlapTokens);
+                    assertTrue(overlap.endsWith("。"), "重叠应为整句: " + overlap);
+                    overlapped = true;
+                }
+                previousStart = start;
+                previousEnd = start + chunk.length();
+            }
+            assertEquals(text.length(), previousEnd);
+        }
+        assertTrue(overlapped, "应至少产生一次重叠");
+    }
+
+    @Test
+    void noOverlapWhenDisabled() {
+        String text = "甲乙丙丁。".repeat(40);
+        List<String> chunks = split(text, 12, 0);
+        assertEquals(text, String.join("", chunks));
+    }
+
+    private static List<String> split(String text, int maxTokens, int overlapTokens) {
+        TokenAwareDocumentSplitter splitter = new TokenAwareDocumentSplitter(maxTokens, overlapTokens, NON_WHITESPACE);
+        List<String> chunks = new ArrayList<>();
+        for (TextSegment segment : splitter.split(Document.from(text))) {
+            chunks.add(segment.text());
+        }
+        return chunks;
+    }
+
+    private static void assertWithinLimit(List<String> chunks, int maxTokens) {
+        assertFalse(chunks.isEmpty());
+        for (String chunk : chunks) {
+            int tokens = NON_WHITESPACE.applyAsInt(chunk);
+            assertTrue(tokens <= maxTokens, "分块 " + tokens + " 个 token，超过上限 " + maxTokens + ": " + chunk);
+        }
+    }
+
+    /**
+     * 不重叠时分块依次拼接应覆盖原文的全部非空白内容
+     */
+    private static void assertCoversText(String text, List<String> chunks) {
+        assertEquals(text.replaceAll("\\s+", ""), String.join("", chunks).replaceAll("\\s+", ""));
+    }
+}
@@ -10,20 +10,23 @@ import dev.langchain4j.model.moderation.DisabledModerationModel;
 import dev.langchain4j.model.moderation.ModerationModel;
 import dev.langchain4j.model.scoring.ScoringModel;
 import dev.langchain4j.rag.DefaultRetrievalAugmentor;
-import dev.langchain4j.rag.content.Content;
 import dev.langchain4j.rag.content.aggregator.ContentAggregator;
 import dev.langchain4j.rag.content.aggregator.DefaultContentAggregator;
 import dev.langchain4j.rag.content.aggregator.ReRankingContentAggregator;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
-import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import info.mengnan.dialogerai.common.param.ModelType;
 import info.mengnan.dialogerai.rag.injector.CapturingContentInjector;
 import info.mengnan.dialogerai.rag.injector.RagSourceStore;
+import info.mengnan.dialogerai.rag.retriever.FanOutQueryRouter;
+import info.mengnan.dialogerai.rag.retriever.KnowledgeBaseContentRetriever;
+import info.mengnan.dialogerai.rag.retriever.QueryRoutingMetrics;
+import info.mengnan.dialogerai.rag.retriever.TieredQueryRouter;
 import dev.langchain4j.rag.query.router.DefaultQueryRouter;
 import dev.langchain4j.rag.query.router.LanguageModelQueryRouter;
 import dev.langchain4j.rag.query.router.QueryRouter;
 import dev.langchain4j.rag.query.transformer.DefaultQueryTransformer;
+import dev.langchain4j.rag.query.transformer.QueryTransformer;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.TokenStream;
 import dev.langchain4j.service.tool.ToolExecutor;
@@ -33,6 +36,8 @@ import info.mengnan.dialogerai.kb.core.KnowledgeBaseIndexResolver;
 import info.mengnan.dialogerai.kb.core.KnowledgeBaseIndexResolver.KbIndexRef;
 import info.mengnan.dialogerai.rag.config.ModelConfig;
 import info.mengnan.dialogerai.rag.handler.StreamingResponseHandler;
+import info.mengnan.dialogerai.rag.container.assemble.AssembledComponents;
+import info.mengnan.dialogerai.rag.container.assemble.AssembledComponentsCache;
 import info.mengnan.dialogerai.rag.container.assemble.AssembledModels;
 import info.mengnan.dialogerai.rag.container.factory.UniversalModelFactory;
 import info.mengnan.dialogerai.rag.service.ModelConfigProvider;
@@ -42,6 +47,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 import static dev.langchain4j.rag.query.router.LanguageModelQueryRouter.FallbackStrategy.DO_NOT_ROUTE;
 import static info.mengnan.dialogerai.common.param.ModelType.*;
@@ -56,23 +62,34 @@ public class ChatService {
     private final ModelConfigProvider modelConfigProvider;
     private final RagSourceStore ragSourceStore;
     private final Executor ragExecutor;
+    private final ExecutorService searchExecutor;
+    private final AssembledComponentsCache componentsCache;
+    private final QueryRoutingMetrics routingMetrics;
 
     public ChatService(ChatMemoryStore chatMemoryStore,
                        UniversalModelFactory modelFactory,
                        DynamicEmbeddingStoreRegistry embeddingStoreRegistry,
                        ModelConfigProvider modelConfigProvider,
-                       RagSourceStore ragSourceStore, Executor ragExecutor) {
+                       RagSourceStore ragSourceStore, Executor ragExecutor,
+                       ExecutorService searchExecutor,
+                       AssembledComponentsCache componentsCache,
+                       QueryRoutingMetrics routingMetrics) {
         this.chatMemoryStore = chatMemoryStore;
         this.modelFactory = modelFactory;
         this.embeddingStoreRegistry = embeddingStoreRegistry;
         this.modelConfigProvider = modelConfigProvider;
         this.ragSourceStore = ragSourceStore;
         this.ragExecutor = ragExecutor;
+        this.searchExecutor = searchExecutor;
+        this.componentsCache = componentsCache;
+        this.routingMetrics = routingMetrics;
     }
 
     /**
      * 流式RAG对话 - 使用回调处理器
      *
+     * @param optionId        聊天配置id
+     * @param memberId        用户id
      * @param sessionId       会话id
      * @param message         消息
      * @param handler         流式响应处理器
@@ -80,7 +97,8 @@ public class ChatService {
      * @param toolMap         工具map
      * @param kbIndexRefs     知识库索引list
      */
-    public void chatStreaming(Long memberId,
+    public void chatStreaming(Long optionId,
+                              Long memberId,
                               String sessionId,
                               String message,
                               StreamingResponseHandler handler,
@@ -92,7 +110,7 @@ public class ChatService {
             return;
         }
 
-        AssistantUnique assistantUnique = buildAssistantUnique(memberId, sessionId, assembledModels, toolMap, kbIndexRefs);
+        AssistantUnique assistantUnique = buildAssistantUnique(optionId, memberId, sessionId, assembledModels, toolMap, kbIndexRefs);
 
         try {
             TokenStream tokenStream = assistantUnique.chatStreaming(sessionId, message);
@@ -121,144 +139,155 @@ public class ChatService {
 
     /**
      * 根据配置动态构建 AssistantUnique
+     * 模型与检索组件从缓存获取，仅会话相关的 ContentInjector 与 ChatMemory 每次创建
      */
-    private AssistantUnique buildAssistantUnique(Long memberId, String sessionId, AssembledModels assembledModels,
+    private AssistantUnique buildAssistantUnique(Long optionId, Long memberId, String sessionId,
+                                                 AssembledModels assembledModels,
                                                  Map<ToolSpecification, ToolExecutor> toolMap,
                                                  List<KnowledgeBaseIndexResolver.KbIndexRef> kbIndexRefs) {
-        AiServices<AssistantUnique> builder = AiServices.builder(AssistantUnique.class);
-        Map<ModelType, ModelConfig> modelConfigMap = modelConfigProvider.loadModelConfigs(memberId);
-
-        if (assembledModels.rag()) {
-            DefaultRetrievalAugmentor.DefaultRetrievalAugmentorBuilder ragBuilder = DefaultRetrievalAugmentor.builder();
-            ragBuilder.executor(ragExecutor);
+        AssembledComponents components = componentsCache.getOrBuild(
+                new AssembledComponentsCache.Key(optionId, memberId, assembledModels, kbIndexRefs),
+                () -> buildComponents(memberId, assembledModels, kbIndexRefs));
 
-            if (assembledModels.contentAggregator()) {
-                ContentAggregator contentAggregator = null;
+        AiServices<AssistantUnique> builder = AiServices.builder(AssistantUnique.class);
 
-                if (assembledModels.scoringModel() != null) {
-                    ModelConfig scoringConfig = modelConfigMap.get(SCORING);
-                    if (scoringConfig != null) {
-                        ScoringModel scoringModel = modelFactory.createScoringModel(scoringConfig);
-                        contentAggregator = ReRankingContentAggregator.builder()
-                                .scoringModel(scoringModel)
-                                .querySelector(queryToContents -> queryToContents.entrySet().iterator().next().getKey())
-                                .build();
-                    }
-                } else {
-                    contentAggregator = new DefaultContentAggregator();
-                }
-                ragBuilder.contentAggregator(contentAggregator);
-            }
+        if (components.rag()) {
+            builder.retrievalAugmentor(DefaultRetrievalAugmentor.builder()
+                    .executor(ragExecutor)
+                    .queryTransformer(components.queryTransformer())
+                    .queryRouter(components.queryRouter())
+                    .contentAggregator(components.contentAggregator())
+                    .contentInjector(new CapturingContentInjector(sessionId, ragSourceStore))
+                    .build());
+        }
+        if (components.streamingChatModel() != null) {
+            builder.streamingChatModel(components.streamingChatModel());
+        }
+        if (components.chatModel() != null) {
+            builder.chatModel(components.chatModel());
+        }
+        builder.moderationModel(components.moderationModel());
 
-            if (assembledModels.transform() != null) {
-                ragBuilder.queryTransformer(new DefaultQueryTransformer());
-            }
+        return builder
+                .tools(toolMap)
+                .chatMemoryProvider(memoryId -> MessageWindowChatMemory.builder()
+                        .id(memoryId)
+                        .maxMessages(assembledModels.maxMessages())
+                        .chatMemoryStore(assembledModels.inDB() ? chatMemoryStore : null)
+                        .build())
+                .build();
+    }
 
-            Map<ContentRetriever, String> contentRetrieverMap = buildContentRetrieverMap(kbIndexRefs, modelConfigMap.get(EMBEDDING), assembledModels);
-            QueryRouter queryRouter;
-            if (contentRetrieverMap.isEmpty()) {
-                queryRouter = new DefaultQueryRouter();
-            } else if (assembledModels.chatModel() == null) {
-                queryRouter = new DefaultQueryRouter(contentRetrieverMap.keySet());
-            } else {
-                ModelConfig chatConfig = modelConfigMap.get(CHAT);
+    /**
+     * 构建可复用的模型与检索组件
+     */
+    private AssembledComponents buildComponents(Long memberId, AssembledModels assembledModels,
+                                                List<KnowledgeBaseIndexResolver.KbIndexRef> kbIndexRefs) {
+        Map<ModelType, ModelConfig> modelConfigMap = modelConfigProvider.loadModelConfigs(memberId);
 
-                if (chatConfig != null) {
-                    ChatModel chatModel = modelFactory.createChatModel(chatConfig);
-                    queryRouter = new LanguageModelQueryRouter(chatModel, contentRetrieverMap,
-                            QUERY_ROUTER_PROMPT_TEMPLATE, DO_NOT_ROUTE);
-                } else {
-                    queryRouter = new DefaultQueryRouter(contentRetrieverMap.keySet());
-                }
+        ChatModel chatModel = null;
+        if (assembledModels.chatModel() != null) {
+            ModelConfig chatConfig = modelConfigMap.get(CHAT);
+            if (chatConfig != null) {
+                chatModel = modelFactory.createChatModel(chatConfig);
             }
-
-            ragBuilder.queryRouter(queryRouter);
-            ragBuilder.contentInjector(new CapturingContentInjector(sessionId, ragSourceStore));
-            builder.retrievalAugmentor(ragBuilder.build());
         }
 
+        StreamingChatModel streamingChatModel = null;
         if (assembledModels.streamingChatModel() != null) {
             ModelConfig streamingChatConfig = modelConfigMap.get(STREAMING_CHAT);
             if (streamingChatConfig != null) {
-                StreamingChatModel streamingChatModel = modelFactory.createStreamingChatModel(streamingChatConfig);
-                builder.streamingChatModel(streamingChatModel);
-            }
-        }
-
-        if (assembledModels.chatModel() != null) {
-            ModelConfig chatConfig = modelConfigMap.get(CHAT);
-            if (chatConfig != null) {
-                ChatModel chatModel = modelFactory.createChatModel(chatConfig);
-                builder.chatModel(chatModel);
+                streamingChatModel = modelFactory.createStreamingChatModel(streamingChatConfig);
             }
         }
 
+        ModerationModel moderationModel = new DisabledModerationModel();
         if (assembledModels.moderationModel() != null) {
             ModelConfig moderationConfig = modelConfigMap.get(MODERATION);
             if (moderationConfig != null) {
-                ModerationModel moderationModel = modelFactory.createModerationModel(moderationConfig);
-                builder.moderationModel(moderationModel);
+                moderationModel = modelFactory.createModerationModel(moderationConfig);
+            }
+        }
+
+        if (!Boolean.TRUE.equals(assembledModels.rag())) {
+            return new AssembledComponents(chatModel, streamingChatModel, moderationModel,
+                    false, null, null, null);
+        }
+
+        ContentAggregator contentAggregator = null;
+        if (Boolean.TRUE.equals(assembledModels.contentAggregator())) {
+            if (assembledModels.scoringModel() != null) {
+                ModelConfig scoringConfig = modelConfigMap.get(SCORING);
+                if (scoringConfig != null) {
+                    ScoringModel scoringModel = modelFactory.createScoringModel(scoringConfig);
+                    contentAggregator = ReRankingContentAggregator.builder()
+                            .scoringModel(scoringModel)
+                            .querySelector(queryToContents -> queryToContents.entrySet().iterator().next().getKey())
+                            .build();
+                }
             } else {
-                builder.moderationModel(new DisabledModerationModel());
+                contentAggregator = new DefaultContentAggregator();
             }
+        }
+
+        QueryTransformer queryTransformer = assembledModels.transform() != null ? new DefaultQueryTransformer() : null;
+
+        EmbeddingModel embeddingModel = createEmbeddingModel(modelConfigMap.get(EMBEDDING), assembledModels);
+        Map<ContentRetriever, String> contentRetrieverMap = buildContentRetrieverMap(kbIndexRefs, embeddingModel, assembledModels);
+        QueryRouter queryRouter;
+        if (contentRetrieverMap.isEmpty()) {
+            queryRouter = new DefaultQueryRouter();
         } else {
-            builder.moderationModel(new DisabledModerationModel());
+            QueryRouter llmRouter = chatModel == null ? null
+                    : new LanguageModelQueryRouter(chatModel, contentRetrieverMap, QUERY_ROUTER_PROMPT_TEMPLATE, DO_NOT_ROUTE);
+            // 单知识库与相似度可区分的查询不调用 LLM，路由结果按查询缓存
+            Map<KnowledgeBaseContentRetriever, String> routingTexts = new HashMap<>();
+            contentRetrieverMap.forEach((retriever, text) -> routingTexts.put((KnowledgeBaseContentRetriever) retriever, text));
+            queryRouter = new TieredQueryRouter(routingTexts, embeddingModel, llmRouter, routingMetrics);
+            // 选中的知识库共享一次查询向量化，在独立的检索线程池上并行检索
+            queryRouter = new FanOutQueryRouter(queryRouter, embeddingModel, searchExecutor,
+                    embeddingStoreRegistry.searchTimeoutMillis());
         }
 
-        return builder
-                .tools(toolMap)
-                .chatMemoryProvider(memoryId -> MessageWindowChatMemory.builder()
-                        .id(memoryId)
-                        .maxMessages(assembledModels.maxMessages())
-                        .chatMemoryStore(assembledModels.inDB() ? chatMemoryStore : null)
-                        .build())
-                .build();
+        return new AssembledComponents(chatModel, streamingChatModel, moderationModel,
+                true, queryTransformer, queryRouter, contentAggregator);
     }
 
     /**
-     * 构建 ContentRetriever Map
-     * 为每个 ES 索引动态创建 EmbeddingStore 和 ContentRetriever
+     * 创建查询向量化模型，未配置时返回 null
      */
-    public Map<ContentRetriever, String> buildContentRetrieverMap(List<KbIndexRef> kbIndexes,
-                                                                  ModelConfig embeddingConfig,
-                                                                  AssembledModels assembledModels) {
-        Map<ContentRetriever, String> map = new HashMap<>();
-
+    private EmbeddingModel createEmbeddingModel(ModelConfig embeddingConfig, AssembledModels assembledModels) {
         if (assembledModels.embeddingModel() == null) {
             log.warn("No embedding model configured");
-            return map;
+            return null;
         }
         if (embeddingConfig == null) {
             log.warn("Embedding model config not found in database: {}",
                     assembledModels.embeddingModel().getModelName());
-            return map;
+            return null;
         }
+        return modelFactory.createEmbeddingModel(embeddingConfig);
+    }
 
-        EmbeddingModel embeddingModel = modelFactory.createEmbeddingModel(embeddingConfig);
+    /**
+     * 构建 ContentRetriever Map
+     * 为每个 ES 索引创建 KnowledgeBaseContentRetriever，value 为供路由选择的知识库名称及描述
+     */
+    public Map<ContentRetriever, String> buildContentRetrieverMap(List<KbIndexRef> kbIndexes,
+                                                                  EmbeddingModel embeddingModel,
+                                                                  AssembledModels assembledModels) {
+        Map<ContentRetriever, String> map = new HashMap<>();
+        if (embeddingModel == null) {
+            return map;
+        }
 
         for (KbIndexRef kbIndex : kbIndexes) {
             String indexName = kbIndex.indexName();
             String kbName = kbIndex.displayName();
             try {
                 EmbeddingStore<TextSegment> embeddingStore = embeddingStoreRegistry.createEmbeddingStore(indexName);
-
-                ContentRetriever baseRetriever = EmbeddingStoreContentRetriever.builder()
-                        .embeddingStore(embeddingStore)
-                        .embeddingModel(embeddingModel)
-                        .maxResults(assembledModels.maxResults())
-                        .minScore(assembledModels.minScore())
-                        .build();
-
-                ContentRetriever enrichedRetriever = query -> {
-                    List<Content> contents = baseRetriever.retrieve(query);
-                    contents.forEach(c -> {
-                        c.textSegment().metadata().put("indexName", indexName);
-                        c.textSegment().metadata().put("kbName", kbName);
-                    });
-                    return contents;
-                };
-
-                map.put(enrichedRetriever, kbName);
+                map.put(new KnowledgeBaseContentRetriever(indexName, kbName, embeddingStore, embeddingModel,
+                        assembledModels.maxResults(), assembledModels.minScore()), routingText(kbIndex));
             } catch (Exception e) {
                 log.error("Failed to create ContentRetriever for kb: {}", kbName, e);
             }
@@ -266,4 +295,12 @@ public class ChatService {
         return map;
     }
 
-}
\ No newline at end of file
+    private static String routingText(KbIndexRef kbIndex) {
+        String description = kbIndex.description();
+        if (description == null || description.isBlank()) {
+            return kbIndex.displayName();
+        }
+        return kbIndex.displayName() + ": " + description.strip();
+    }
+
+}
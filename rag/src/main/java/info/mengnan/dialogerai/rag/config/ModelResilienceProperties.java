@@ -0,0 +1,64 @@
+package info.mengnan.dialogerai.rag.config;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 直接模型调用的熔断、重试与降级配置
+ */
+@Data
+public class ModelResilienceProperties {
+
+    /**
+     * 同一模型最多尝试次数（含首次）
+     */
+    private int maxAttempts = 3;
+    private long backoffDelayMs = 1000L;
+    private double backoffMultiplier = 2.0;
+    private long maxBackoffMs = 8000L;
+
+    /**
+     * 重试预算：每次调用存入的重试额度，重试一次消耗 1；额度上限
+     * 0.2 表示稳定状态下重试量不超过调用量的 20%
+     */
+    private double retryBudgetRatio = 0.2;
+    private int retryBudgetCapacity = 10;
+
+    /**
+     * 熔断：最近 slidingWindowSize 次调用中失败率达到阈值时打开，
+     * 打开 openDurationSeconds 秒后放行 halfOpenCalls 次探测调用，全部成功后关闭
+     */
+    private int slidingWindowSize = 20;
+    private int minimumCalls = 10;
+    private double failureRateThreshold = 0.5;
+    private int openDurationSeconds = 30;
+    private int halfOpenCalls = 2;
+
+    /**
+     * 图片识别请求按 Provider 限制同时进行的数量，所有文档与对话共用；未单独配置的 Provider 使用 visionConcurrency
+     */
+    private int visionConcurrency = 8;
+    private Map<String, Integer> providerVisionConcurrency = new HashMap<>();
+
+    /**
+     * 等待图片识别许可的最长时间，超时按可重试失败处理
+     */
+    private long visionPermitTimeoutMs = 10000L;
+
+    /**
+     * 模板名称 → 降级模型名称，按顺序尝试；default 用于未配置的模板与不使用模板的调用
+     */
+    private Map<String, List<String>> fallbackModels = new HashMap<>();
+
+    public int visionConcurrency(String provider) {
+        return Math.max(1, providerVisionConcurrency.getOrDefault(provider, visionConcurrency));
+    }
+
+    public List<String> fallbackModels(String templateName) {
+        List<String> models = templateName != null ? fallbackModels.get(templateName) : null;
+        return models != null ? models : fallbackModels.getOrDefault("default", List.of());
+    }
+}
@@ -0,0 +1,22 @@
+package info.mengnan.dialogerai.rag.container.assemble;
+
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.moderation.ModerationModel;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.rag.query.transformer.QueryTransformer;
+
+/**
+ * 根据 AssembledModels 构建出的可复用组件
+ * 不包含会话相关的状态（ContentInjector、ChatMemory），可在同一配置的多轮对话间共享
+ */
+public record AssembledComponents(ChatModel chatModel,
+                                  StreamingChatModel streamingChatModel,
+                                  ModerationModel moderationModel,
+                                  boolean rag, // 是否开启rag
+                                  QueryTransformer queryTransformer, // 为 null 时使用默认实现
+                                  QueryRouter queryRouter,
+                                  ContentAggregator contentAggregator) { // 为 null 时使用默认实现
+
+}
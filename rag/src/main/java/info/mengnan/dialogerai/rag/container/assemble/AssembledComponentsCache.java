@@ -0,0 +1,125 @@
+package info.mengnan.dialogerai.rag.container.assemble;
+
+import info.mengnan.dialogerai.kb.core.KnowledgeBaseIndexResolver.KbIndexRef;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * AssembledComponents 缓存
+ * 按 (optionId, memberId, 配置指纹) 缓存已构建的模型与检索组件，避免每轮对话重复构建。
+ * 每次失效都会递增版本号，构建期间发生过失效的结果不会写入缓存。
+ */
+@Slf4j
+public class AssembledComponentsCache {
+
+    private final Map<Key, AssembledComponents> entries = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder buildNanos = new LongAdder();
+
+    /**
+     * 获取缓存的组件，未命中时构建并写入缓存
+     *
+     * @param key     缓存键
+     * @param builder 组件构建逻辑
+     * @return AssembledComponents
+     */
+    public AssembledComponents getOrBuild(Key key, Supplier<AssembledComponents> builder) {
+        AssembledComponents cached = entries.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        long buildVersion = version.get();
+        long start = System.nanoTime();
+        AssembledComponents built = builder.get();
+        long elapsed = System.nanoTime() - start;
+        builds.increment();
+        buildNanos.add(elapsed);
+        log.debug("Built assembled components for option {} member {} in {}ms",
+                key.optionId(), key.memberId(), elapsed / 1_000_000);
+
+        synchronized (this) {
+            if (version.get() == buildVersion) {
+                // 同一 option + member 只保留最新配置对应的组件
+                entries.keySet().removeIf(k -> k.sameSlot(key));
+                entries.put(key, built);
+            }
+        }
+        return built;
+    }
+
+    /**
+     * 使指定聊天配置的缓存失效（chat_option 变更时调用）
+     */
+    public synchronized void invalidateOption(Long optionId) {
+        version.incrementAndGet();
+        entries.keySet().removeIf(k -> Objects.equals(k.optionId(), optionId));
+        log.info("Invalidated assembled components for option {}", optionId);
+    }
+
+    /**
+     * 使指定用户的缓存失效（chat_api_key 变更时调用）
+     */
+    public synchronized void invalidateMember(Long memberId) {
+        version.incrementAndGet();
+        entries.keySet().removeIf(k -> Objects.equals(k.memberId(), memberId));
+        log.info("Invalidated assembled components for member {}", memberId);
+    }
+
+    /**
+     * 清空全部缓存
+     */
+    public synchronized void invalidateAll() {
+        version.incrementAndGet();
+        entries.clear();
+        log.info("Invalidated all assembled components");
+    }
+
+    public Stats stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long buildCount = builds.sum();
+        long total = hitCount + missCount;
+        return new Stats(hitCount, missCount,
+                total == 0 ? 0D : (double) hitCount / total,
+                buildCount,
+                buildCount == 0 ? 0D : buildNanos.sum() / 1_000_000D / buildCount,
+                entries.size(),
+                version.get());
+    }
+
+    /**
+     * 缓存键，配置指纹由 AssembledModels 与当前可用的知识库索引组成
+     */
+    public record Key(Long optionId,
+                      Long memberId,
+                      AssembledModels assembledModels,
+                      List<KbIndexRef> kbIndexRefs) {
+
+        boolean sameSlot(Key other) {
+            return Objects.equals(optionId, other.optionId) && Objects.equals(memberId, other.memberId);
+        }
+    }
+
+    public record Stats(long hits,
+                        long misses,
+                        double hitRate,
+                        long builds,
+                        double avgBuildMillis,
+                        int size,
+                        long version) {
+    }
+}
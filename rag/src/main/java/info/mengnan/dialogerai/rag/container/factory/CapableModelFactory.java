@@ -1,12 +1,20 @@
 package info.mengnan.dialogerai.rag.container.factory;
 
+import dev.langchain4j.model.embedding.EmbeddingModel;
 import info.mengnan.dialogerai.common.param.ModelType;
 import info.mengnan.dialogerai.rag.config.ModelConfig;
+import info.mengnan.dialogerai.rag.container.factory.applier.ParamApplier;
+import info.mengnan.dialogerai.rag.embedding.CachingEmbeddingModel;
+import info.mengnan.dialogerai.rag.embedding.EmbeddingCache;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.util.*;
@@ -16,9 +24,12 @@ import java.util.jar.JarFile;
 /**
  * 通用模型工厂实现
  * 从 META-INF/model-mapping/*.properties 配置文件中加载 Provider 映射，
- * 运行时通过反射创建模型实例。
+ * 运行时通过反射创建模型实例，所需的方法在加载映射时解析为 {@link MethodHandle}，创建时不再查找方法。
  *
  * 新增 Provider 只需在 classpath 中添加对应的 properties 文件，无需编写 Java 代码。
+ * 传入 {@link EmbeddingCache} 时，创建的 EmbeddingModel 会包装为带缓存的实现，检索与入库都使用缓存，
+ * 入库经 {@link CachingEmbeddingModel#forIngestion} 使用独立分段。
+ * 传入 {@link ModelRegistry} 时，相同配置的模型只创建一次；OpenAI、Ollama 模型共用 {@link SharedHttpClients} 中的客户端。
  */
 @Slf4j
 public class CapableModelFactory implements UniversalModelFactory {
@@ -27,8 +38,26 @@ public class CapableModelFactory implements UniversalModelFactory {
 
     private final Map<String, Map<ModelType, String>> modelClassMapping = new HashMap<>();
     private final Map<String, ModelFactory> modelFactories = new HashMap<>();
+    private final Map<String, Map<ModelType, ReflectiveConstructor>> reflectiveConstructors = new HashMap<>();
+    private final EmbeddingCache embeddingCache;
+    private final ModelRegistry modelRegistry;
+    private final SharedHttpClients httpClients = new SharedHttpClients();
 
     public CapableModelFactory() {
+        this(null, null);
+    }
+
+    public CapableModelFactory(EmbeddingCache embeddingCache) {
+        this(embeddingCache, null);
+    }
+
+    /**
+     * @param embeddingCache 向量缓存，为 null 时不缓存
+     * @param modelRegistry  模型实例注册表，为 null 时每次调用都创建新实例
+     */
+    public CapableModelFactory(EmbeddingCache embeddingCache, ModelRegistry modelRegistry) {
+        this.embeddingCache = embeddingCache;
+        this.modelRegistry = modelRegistry;
         loadMappings();
     }
 
@@ -121,6 +150,9 @@ public class CapableModelFactory implements UniversalModelFactory {
             try {
                 Class<?> applierClass = Class.forName(applierClassName.trim());
                 ModelFactory factory = (ModelFactory) applierClass.getDeclaredConstructor().newInstance();
+                if (factory instanceof ParamApplier applier) {
+                    applier.setHttpClients(httpClients);
+                }
                 modelFactories.put(providerCode, factory);
             } catch (Exception e) {
                 log.warn("Failed to load ParamApplier '{}' for provider '{}': {}",
@@ -128,12 +160,23 @@ public class CapableModelFactory implements UniversalModelFactory {
             }
         }
 
+        if (!modelFactories.containsKey(providerCode)) {
+            resolveReflectiveConstructors(providerCode, typeMapping);
+        }
+
         log.info("Loaded model mapping for provider: {} from {} (types: {})",
                 providerCode, source, typeMapping.keySet());
     }
 
     @Override
     public Object createModel(ModelConfig modelConfig, ModelType modelType) {
+        if (modelRegistry == null) {
+            return doCreateModel(modelConfig, modelType);
+        }
+        return modelRegistry.getOrCreate(modelConfig, modelType, () -> doCreateModel(modelConfig, modelType));
+    }
+
+    private Object doCreateModel(ModelConfig modelConfig, ModelType modelType) {
         String providerCode = modelConfig.getModelProvider();
 
         // 优先委托给各 Provider 的 ModelFactory，由其负责完整的模型构建与参数注入
@@ -147,53 +190,118 @@ public class CapableModelFactory implements UniversalModelFactory {
         return createModelByReflection(modelConfig, modelType, providerCode);
     }
 
+    @Override
+    public EmbeddingModel createEmbeddingModel(ModelConfig modelConfig) {
+        EmbeddingModel embeddingModel = UniversalModelFactory.super.createEmbeddingModel(modelConfig);
+        if (embeddingCache == null) {
+            return embeddingModel;
+        }
+        // 与模型实例复用使用相同的地址与参数摘要，同名模型的不同配置不共用向量
+        ModelRegistry.Key key = ModelRegistry.Key.of(modelConfig, ModelType.EMBEDDING);
+        return new CachingEmbeddingModel(embeddingModel, embeddingCache,
+                key.provider(), key.modelName(), key.baseUrl(), key.paramsHash());
+    }
+
     private Object createModelByReflection(ModelConfig modelConfig, ModelType modelType, String providerCode) {
+        Map<ModelType, String> providerModels = modelClassMapping.get(providerCode);
+        if (providerModels == null) {
+            throw new UnsupportedOperationException(
+                    "Unsupported model provider: " + providerCode);
+        }
+
+        String className = providerModels.get(modelType);
+        if (className == null) {
+            throw new UnsupportedOperationException(
+                    "Model type '" + modelType + "' is not supported for provider: " + providerCode);
+        }
+
+        ReflectiveConstructor constructor = reflectiveConstructors
+                .getOrDefault(providerCode, Map.of())
+                .get(modelType);
+        if (constructor == null) {
+            throw new UnsupportedOperationException(
+                    "Model class not found in classpath. Please add the corresponding dependency for provider: "
+                            + providerCode);
+        }
+
         try {
-            Map<ModelType, String> providerModels = modelClassMapping.get(providerCode);
-            if (providerModels == null) {
-                throw new UnsupportedOperationException(
-                        "Unsupported model provider: " + providerCode);
-            }
+            Object model = constructor.create(modelConfig);
+            log.info("Successfully created {} model: {} (provider: {}, modelName: {})",
+                    modelType, className, providerCode, modelConfig.getModelName());
+            return model;
+        } catch (Throwable e) {
+            throw new RuntimeException(
+                    "Failed to create model for provider: " + providerCode + ", type: " + modelType, e);
+        }
+    }
 
-            String className = providerModels.get(modelType);
-            if (className == null) {
-                throw new UnsupportedOperationException(
-                        "Model type '" + modelType + "' is not supported for provider: " + providerCode);
+    /**
+     * 为没有 paramApplier 的 Provider 解析各模型类型的方法句柄，类不存在时跳过，创建时再报错
+     */
+    private void resolveReflectiveConstructors(String providerCode, Map<ModelType, String> typeMapping) {
+        Map<ModelType, ReflectiveConstructor> constructors = new EnumMap<>(ModelType.class);
+        typeMapping.forEach((modelType, className) -> {
+            try {
+                constructors.put(modelType, ReflectiveConstructor.resolve(className));
+            } catch (ClassNotFoundException e) {
+                log.warn("Model class '{}' for provider '{}' not found in classpath", className, providerCode);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Model class '{}' for provider '{}' has no usable builder: {}",
+                        className, providerCode, e.getMessage());
             }
+        });
+        reflectiveConstructors.put(providerCode, constructors);
+    }
 
-            Class<?> modelClass = Class.forName(className);
+    /**
+     * 反射创建模型所需的方法句柄：builder()、可选的 apiKey(String)/modelName(String) 与 build()
+     */
+    private record ReflectiveConstructor(MethodHandle builder,
+                                         MethodHandle apiKey,
+                                         MethodHandle modelName,
+                                         MethodHandle build) {
+
+        private static final MethodType BUILDER = MethodType.methodType(Object.class);
+        private static final MethodType SETTER = MethodType.methodType(Object.class, Object.class, String.class);
+        private static final MethodType BUILD = MethodType.methodType(Object.class, Object.class);
+
+        static ReflectiveConstructor resolve(String className) throws ReflectiveOperationException {
+            Class<?> modelClass = Class.forName(className, false, Thread.currentThread().getContextClassLoader());
             Method builderMethod = modelClass.getMethod("builder");
-            Object builder = builderMethod.invoke(null);
-            Class<?> builderClass = builder.getClass();
+            Class<?> builderClass = builderMethod.getReturnType();
+            return new ReflectiveConstructor(
+                    unreflect(builderMethod).asType(BUILDER),
+                    setter(builderClass, "apiKey"),
+                    setter(builderClass, "modelName"),
+                    unreflect(builderClass.getMethod("build")).asType(BUILD));
+        }
 
-            try {
-                Method apiKeyMethod = builderClass.getMethod("apiKey", String.class);
-                builder = apiKeyMethod.invoke(builder, modelConfig.getApiKey());
-            } catch (NoSuchMethodException e) {
-                log.debug("Model {} does not have apiKey method, skipping", className);
+        Object create(ModelConfig config) throws Throwable {
+            Object b = (Object) builder.invokeExact();
+            if (apiKey != null) {
+                b = (Object) apiKey.invokeExact(b, config.getApiKey());
+            }
+            if (modelName != null) {
+                b = (Object) modelName.invokeExact(b, config.getModelName());
             }
+            return (Object) build.invokeExact(b);
+        }
 
+        private static MethodHandle setter(Class<?> builderClass, String name) throws IllegalAccessException {
             try {
-                Method modelNameMethod = builderClass.getMethod("modelName", String.class);
-                builder = modelNameMethod.invoke(builder, modelConfig.getModelName());
+                return unreflect(builderClass.getMethod(name, String.class)).asType(SETTER);
             } catch (NoSuchMethodException e) {
-                log.debug("Model {} does not have modelName method, skipping", className);
+                log.debug("Builder {} does not have {} method, skipping", builderClass.getName(), name);
+                return null;
             }
+        }
 
-            Object model = builderClass.getMethod("build").invoke(builder);
-
-            log.info("Successfully created {} model: {} (provider: {}, modelName: {})",
-                    modelType, className, providerCode, modelConfig.getModelName());
-
-            return model;
-        } catch (ClassNotFoundException e) {
-            throw new UnsupportedOperationException(
-                    "Model class not found in classpath. Please add the corresponding dependency for provider: "
-                            + modelConfig.getModelProvider(), e);
-        } catch (Exception e) {
-            throw new RuntimeException(
-                    "Failed to create model for provider: " + modelConfig.getModelProvider()
-                            + ", type: " + modelType, e);
+        private static MethodHandle unreflect(Method method) throws IllegalAccessException {
+            // 公开方法可能声明在非公开的父类中，此时需要先放开访问检查
+            if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                method.setAccessible(true);
+            }
+            return MethodHandles.lookup().unreflect(method);
         }
     }
 }
@@ -0,0 +1,161 @@
+package info.mengnan.dialogerai.rag.container.factory;
+
+import info.mengnan.dialogerai.common.param.ModelType;
+import info.mengnan.dialogerai.rag.config.ModelConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 模型实例注册表
+ * 按 (provider, 模型类型, modelName, apiKey 摘要, 参数摘要, baseUrl) 复用已创建的模型实例，
+ * 同一配置的模型在所有调用方之间共用，连接池随实例一起复用。键中只保存 apiKey 的摘要。
+ * <p>
+ * 超过空闲时间未被使用的实例在之后的访问中清理；API Key 删除或变更时由调用方按模型失效。
+ */
+@Slf4j
+public class ModelRegistry {
+
+    private final long idleNanos;
+    private final long sweepIntervalNanos;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder creates = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param idleTimeout 实例空闲多久后释放
+     */
+    public ModelRegistry(Duration idleTimeout) {
+        this.idleNanos = idleTimeout.toNanos();
+        this.sweepIntervalNanos = Math.max(1, idleNanos / 4);
+    }
+
+    /**
+     * 获取配置对应的模型实例，不存在时创建；同一个键并发调用时只创建一次
+     */
+    public Object getOrCreate(ModelConfig config, ModelType modelType, Supplier<Object> creator) {
+        long now = System.nanoTime();
+        sweepIfDue(now);
+
+        Key key = Key.of(config, modelType);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hits.increment();
+        } else {
+            entry = entries.computeIfAbsent(key, k -> {
+                creates.increment();
+                return new Entry(creator.get());
+            });
+        }
+        entry.lastAccess = now;
+        return entry.model;
+    }
+
+    /**
+     * 使某个 API Key 下的模型实例失效（chat_api_key 删除或变更时调用）
+     */
+    public void invalidate(String provider, String modelName, String apiKey) {
+        String apiKeyHash = digest(apiKey);
+        int before = entries.size();
+        entries.keySet().removeIf(k -> Objects.equals(k.provider(), provider)
+                && Objects.equals(k.modelName(), modelName)
+                && Objects.equals(k.apiKeyHash(), apiKeyHash));
+        int removed = before - entries.size();
+        if (removed > 0) {
+            evictions.add(removed);
+            log.info("Invalidated {} model instance(s): provider={}, modelName={}", removed, provider, modelName);
+        }
+    }
+
+    public void invalidateAll() {
+        evictions.add(entries.size());
+        entries.clear();
+    }
+
+    private void sweepIfDue(long now) {
+        long last = lastSweep.get();
+        if (now - last < sweepIntervalNanos || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        entries.entrySet().removeIf(e -> {
+            boolean idle = now - e.getValue().lastAccess > idleNanos;
+            if (idle) {
+                evictions.increment();
+                log.debug("Evicted idle model instance: provider={}, type={}, modelName={}",
+                        e.getKey().provider(), e.getKey().modelType(), e.getKey().modelName());
+            }
+            return idle;
+        });
+    }
+
+    public Stats stats() {
+        long hitCount = hits.sum();
+        long createCount = creates.sum();
+        long total = hitCount + createCount;
+        return new Stats(hitCount, createCount,
+                total == 0 ? 0D : (double) hitCount / total,
+                evictions.sum(),
+                entries.size());
+    }
+
+    private static String digest(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+        private final Object model;
+        private volatile long lastAccess;
+
+        private Entry(Object model) {
+            this.model = model;
+            this.lastAccess = System.nanoTime();
+        }
+    }
+
+    /**
+     * 注册表键，参数摘要取自参数 JSON 文本
+     */
+    public record Key(String provider,
+                      ModelType modelType,
+                      String modelName,
+                      String apiKeyHash,
+                      String paramsHash,
+                      String baseUrl) {
+
+        static Key of(ModelConfig config, ModelType modelType) {
+            String params = config.getParams() != null && !config.getParams().isEmpty()
+                    ? config.getParams().toString() : null;
+            return new Key(config.getModelProvider(), modelType, config.getModelName(),
+                    digest(config.getApiKey()), digest(params), config.getBaseUrl());
+        }
+    }
+
+    public record Stats(long hits,
+                        long creates,
+                        double hitRate,
+                        long evictions,
+                        int size) {
+    }
+}
@@ -0,0 +1,103 @@
+package info.mengnan.dialogerai.rag.container.factory;
+
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpClientBuilder;
+import dev.langchain4j.http.client.jdk.JdkHttpClient;
+
+import java.net.URI;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按 Provider 共享的 HTTP 客户端
+ * 客户端按 Provider + URL 协议 + 超时区分：同一 Provider、同一协议、超时相同的模型实例共用一个 JDK HttpClient 及其连接池。
+ * 只有 https 后端优先协商 HTTP/2（多个请求复用同一连接）；http 明文后端固定使用 HTTP/1.1，避免发送 h2c 升级请求。
+ * 模型 Builder 设置的连接超时与读超时照常生效，未设置时使用默认值（连接 10 秒，读 120 秒）。
+ */
+public class SharedHttpClients {
+
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(120);
+
+    private final Map<ClientKey, HttpClient> clients = new ConcurrentHashMap<>();
+
+    private record ClientKey(String provider, String scheme, Duration connectTimeout, Duration readTimeout) {
+    }
+
+    /**
+     * 获取共享客户端的 Builder，传给模型 Builder 的 httpClientBuilder
+     * 模型 Builder 在 build 前写入的超时参与客户端的区分，build 时返回对应的共享客户端
+     *
+     * @param provider Provider 标识
+     * @param baseUrl  模型实际请求的地址，用于区分 http 与 https
+     */
+    public HttpClientBuilder builder(String provider, String baseUrl) {
+        return new SharedClientBuilder(provider, scheme(baseUrl));
+    }
+
+    private static String scheme(String baseUrl) {
+        try {
+            String scheme = URI.create(baseUrl.trim()).getScheme();
+            return scheme == null ? "https" : scheme.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return "https";
+        }
+    }
+
+    private HttpClient client(ClientKey key) {
+        return clients.computeIfAbsent(key, k -> JdkHttpClient.builder()
+                .httpClientBuilder(java.net.http.HttpClient.newBuilder()
+                        .version("https".equals(k.scheme()) ? Version.HTTP_2 : Version.HTTP_1_1)
+                        .followRedirects(Redirect.NORMAL))
+                .connectTimeout(k.connectTimeout())
+                .readTimeout(k.readTimeout())
+                .build());
+    }
+
+    /**
+     * 记录模型 Builder 设置的超时，build 时按 Provider、协议与超时取共享客户端
+     */
+    private final class SharedClientBuilder implements HttpClientBuilder {
+
+        private final String provider;
+        private final String scheme;
+        private Duration connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        private Duration readTimeout = DEFAULT_READ_TIMEOUT;
+
+        private SharedClientBuilder(String provider, String scheme) {
+            this.provider = provider;
+            this.scheme = scheme;
+        }
+
+        @Override
+        public Duration connectTimeout() {
+            return connectTimeout;
+        }
+
+        @Override
+        public HttpClientBuilder connectTimeout(Duration timeout) {
+            if (timeout != null) this.connectTimeout = timeout;
+            return this;
+        }
+
+        @Override
+        public Duration readTimeout() {
+            return readTimeout;
+        }
+
+        @Override
+        public HttpClientBuilder readTimeout(Duration timeout) {
+            if (timeout != null) this.readTimeout = timeout;
+            return this;
+        }
+
+        @Override
+        public HttpClient build() {
+            return client(new ClientKey(provider, scheme, connectTimeout, readTimeout));
+        }
+    }
+}
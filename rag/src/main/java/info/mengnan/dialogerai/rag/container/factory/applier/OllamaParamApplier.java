@@ -14,11 +14,15 @@ import java.util.Map;
  */
 public class OllamaParamApplier extends ParamApplier {
 
+    private static final String PROVIDER = "Ollama";
+    private static final String DEFAULT_BASE_URL = "http://localhost:11434";
+
     @Override
     protected OllamaChatModel.OllamaChatModelBuilder buildChatModel(ModelConfig config) {
         JSONObject p = config.getParams();
         OllamaChatModel.OllamaChatModelBuilder builder = OllamaChatModel.builder()
-                .modelName(config.getModelName());
+                .modelName(config.getModelName())
+                .httpClientBuilder(sharedHttpClient(PROVIDER, baseUrl(config)));
         builder.baseUrl(config.getBaseUrl());
         builder.temperature(p.getDouble("temperature"));
         builder.topP(p.getDouble("tpP"));
@@ -32,7 +36,8 @@ public class OllamaParamApplier extends ParamApplier {
     protected OllamaStreamingChatModel.OllamaStreamingChatModelBuilder buildStreamingChatModel(ModelConfig config) {
         JSONObject p = config.getParams();
         OllamaStreamingChatModel.OllamaStreamingChatModelBuilder builder = OllamaStreamingChatModel.builder()
-                .modelName(config.getModelName());
+                .modelName(config.getModelName())
+                .httpClientBuilder(sharedHttpClient(PROVIDER, baseUrl(config)));
         builder.baseUrl(config.getBaseUrl());
         builder.temperature(p.getDouble("temperature"));
         builder.topP(p.getDouble("tpP"));
@@ -45,8 +50,13 @@ public class OllamaParamApplier extends ParamApplier {
     @Override
     protected OllamaEmbeddingModel.OllamaEmbeddingModelBuilder buildEmbeddingModel(ModelConfig config) {
         OllamaEmbeddingModel.OllamaEmbeddingModelBuilder builder = OllamaEmbeddingModel.builder()
-                .modelName(config.getModelName());
+                .modelName(config.getModelName())
+                .httpClientBuilder(sharedHttpClient(PROVIDER, baseUrl(config)));
         if (config.getBaseUrl() != null) builder.baseUrl(config.getBaseUrl());
         return builder;
     }
+
+    private static String baseUrl(ModelConfig config) {
+        return config.getBaseUrl() != null ? config.getBaseUrl() : DEFAULT_BASE_URL;
+    }
 }
@@ -18,12 +18,16 @@ import java.util.Map;
  */
 public class OpenAiParamApplier extends ParamApplier {
 
+    private static final String PROVIDER = "OpenAI";
+    private static final String DEFAULT_BASE_URL = "https://api.openai.com/v1";
+
     @Override
     protected OpenAiChatModel.OpenAiChatModelBuilder buildChatModel(ModelConfig config) {
         JSONObject p = config.getParams();
         OpenAiChatModel.OpenAiChatModelBuilder builder = OpenAiChatModel.builder()
                 .apiKey(config.getApiKey())
-                .modelName(config.getModelName());
+                .modelName(config.getModelName())
+                .httpClientBuilder(sharedHttpClient(PROVIDER, baseUrl(config)));
         builder.baseUrl(config.getBaseUrl());
         builder.temperature(p.getDouble("temperature"));
         builder.topP(p.getDouble("topP"));
@@ -40,7 +44,8 @@ public class OpenAiParamApplier extends ParamApplier {
         JSONObject p = config.getParams();
         OpenAiStreamingChatModel.OpenAiStreamingChatModelBuilder builder = OpenAiStreamingChatModel.builder()
                 .apiKey(config.getApiKey())
-                .modelName(config.getModelName());
+                .modelName(config.getModelName())
+                .httpClientBuilder(sharedHttpClient(PROVIDER, baseUrl(config)));
         builder.baseUrl(config.getBaseUrl());
         builder.temperature(p.getDouble("temperature"));
         builder.topP(p.getDouble("topP"));
@@ -55,7 +60,8 @@ public class OpenAiParamApplier extends ParamApplier {
     protected OpenAiEmbeddingModel.OpenAiEmbeddingModelBuilder buildEmbeddingModel(ModelConfig config) {
         OpenAiEmbeddingModel.OpenAiEmbeddingModelBuilder builder = OpenAiEmbeddingModel.builder()
                 .apiKey(config.getApiKey())
-                .modelName(config.getModelName());
+                .modelName(config.getModelName())
+                .httpClientBuilder(sharedHttpClient(PROVIDER, baseUrl(config)));
         if (config.getBaseUrl() != null) builder.baseUrl(config.getBaseUrl());
         return builder;
     }
@@ -64,7 +70,8 @@ public class OpenAiParamApplier extends ParamApplier {
     protected OpenAiModerationModel.OpenAiModerationModelBuilder buildModerationModel(ModelConfig config) {
         OpenAiModerationModel.OpenAiModerationModelBuilder builder = OpenAiModerationModel.builder()
                 .apiKey(config.getApiKey())
-                .modelName(config.getModelName());
+                .modelName(config.getModelName())
+                .httpClientBuilder(sharedHttpClient(PROVIDER, baseUrl(config)));
         if (config.getBaseUrl() != null) builder.baseUrl(config.getBaseUrl());
         return builder;
     }
@@ -73,8 +80,13 @@ public class OpenAiParamApplier extends ParamApplier {
     protected OpenAiImageModel.OpenAiImageModelBuilder buildImageModel(ModelConfig config) {
         OpenAiImageModel.OpenAiImageModelBuilder builder = OpenAiImageModel.builder()
                 .apiKey(config.getApiKey())
-                .modelName(config.getModelName());
+                .modelName(config.getModelName())
+                .httpClientBuilder(sharedHttpClient(PROVIDER, baseUrl(config)));
         if (config.getBaseUrl() != null) builder.baseUrl(config.getBaseUrl());
         return builder;
     }
+
+    private static String baseUrl(ModelConfig config) {
+        return config.getBaseUrl() != null ? config.getBaseUrl() : DEFAULT_BASE_URL;
+    }
 }
@@ -1,10 +1,30 @@
 package info.mengnan.dialogerai.rag.container.factory.applier;
 
+import dev.langchain4j.http.client.HttpClientBuilder;
 import info.mengnan.dialogerai.common.param.ModelType;
 import info.mengnan.dialogerai.rag.config.ModelConfig;
+import info.mengnan.dialogerai.rag.container.factory.SharedHttpClients;
 
 public abstract class ParamApplier {
 
+    private SharedHttpClients httpClients;
+
+    /**
+     * 设置后，支持自定义 HTTP 客户端的模型共用 Provider 级别的客户端
+     */
+    public void setHttpClients(SharedHttpClients httpClients) {
+        this.httpClients = httpClients;
+    }
+
+    /**
+     * Provider 共享客户端的 Builder，未设置时返回 null，由模型使用默认客户端
+     *
+     * @param baseUrl 模型实际请求的地址，按其协议选择 HTTP/2 或 HTTP/1.1
+     */
+    protected HttpClientBuilder sharedHttpClient(String provider, String baseUrl) {
+        return httpClients != null ? httpClients.builder(provider, baseUrl) : null;
+    }
+
     protected Object buildChatModel(ModelConfig config) { return null; }
 
     protected Object buildStreamingChatModel(ModelConfig config) { return null; }
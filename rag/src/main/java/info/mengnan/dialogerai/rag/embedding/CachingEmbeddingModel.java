@@ -0,0 +1,95 @@
+package info.mengnan.dialogerai.rag.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 带缓存的 EmbeddingModel 装饰器
+ * 命中缓存的文本直接返回，未命中的文本合并为一次 embedAll 调用
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCache cache;
+    private final String provider;
+    private final String modelName;
+    private final String baseUrl;
+    private final String paramsHash;
+
+    /**
+     * @param baseUrl    模型地址，为 null 时使用 Provider 默认地址
+     * @param paramsHash 模型参数的摘要，参与缓存键，无参数时为 null
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCache cache, String provider, String modelName,
+                                 String baseUrl, String paramsHash) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.provider = provider;
+        this.modelName = modelName;
+        this.baseUrl = baseUrl;
+        this.paramsHash = paramsHash;
+    }
+
+    /**
+     * 改用缓存的入库分段，用于文档入库
+     * 重新上传、失败重试时相同分块直接命中，分块向量不会挤占查询向量
+     */
+    public static EmbeddingModel forIngestion(EmbeddingModel model) {
+        if (!(model instanceof CachingEmbeddingModel caching)) {
+            return model;
+        }
+        return new CachingEmbeddingModel(caching.delegate, caching.cache.ingestion(),
+                caching.provider, caching.modelName, caching.baseUrl, caching.paramsHash);
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        Embedding[] results = new Embedding[textSegments.size()];
+        EmbeddingCache.Key[] keys = new EmbeddingCache.Key[textSegments.size()];
+        List<TextSegment> missed = new ArrayList<>();
+        List<Integer> missedIndexes = new ArrayList<>();
+
+        for (int i = 0; i < textSegments.size(); i++) {
+            keys[i] = EmbeddingCache.key(provider, modelName, baseUrl, paramsHash, textSegments.get(i).text());
+            float[] vector = cache.get(keys[i]);
+            if (vector != null) {
+                // Embedding.normalize() 会原地修改数组，返回副本
+                results[i] = Embedding.from(vector.clone());
+            } else {
+                missed.add(textSegments.get(i));
+                missedIndexes.add(i);
+            }
+        }
+
+        TokenUsage tokenUsage = null;
+        if (!missed.isEmpty()) {
+            Response<List<Embedding>> response = delegate.embedAll(missed);
+            List<Embedding> embeddings = response.content();
+            for (int j = 0; j < embeddings.size(); j++) {
+                int index = missedIndexes.get(j);
+                Embedding embedding = embeddings.get(j);
+                results[index] = embedding;
+                cache.put(keys[index], embedding.vector().clone());
+            }
+            tokenUsage = response.tokenUsage();
+        }
+        return Response.from(Arrays.asList(results), tokenUsage);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    @Override
+    public String modelName() {
+        return delegate.modelName();
+    }
+}
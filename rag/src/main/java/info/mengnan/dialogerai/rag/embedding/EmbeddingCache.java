@@ -0,0 +1,170 @@
+package info.mengnan.dialogerai.rag.embedding;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内向量缓存
+ * 按 (provider, modelName, baseUrl, 参数摘要, 归一化文本) 缓存向量，向量以 float[] 存储，
+ * 同名模型的地址或参数（如 dimensions）不同时向量互不混用；
+ * 超过容量按最近最少使用淘汰，超过 TTL 的条目在访问时失效。
+ * 文档入库的分块向量使用独立的 {@link #ingestion()} 分段，容量单独计算，不会挤占查询向量
+ */
+public class EmbeddingCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final EmbeddingCache ingestion;
+
+    // accessOrder = true，迭代顺序即 LRU 顺序
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxEntries 最大缓存条目数
+     * @param ttl        条目存活时间
+     */
+    public EmbeddingCache(int maxEntries, Duration ttl) {
+        this(maxEntries, ttl, null);
+    }
+
+    /**
+     * @param maxEntries          查询向量的最大缓存条目数
+     * @param ingestionMaxEntries 入库分段的最大缓存条目数
+     * @param ttl                 条目存活时间
+     */
+    public EmbeddingCache(int maxEntries, int ingestionMaxEntries, Duration ttl) {
+        this(maxEntries, ttl, new EmbeddingCache(ingestionMaxEntries, ttl));
+    }
+
+    private EmbeddingCache(int maxEntries, Duration ttl, EmbeddingCache ingestion) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.ingestion = ingestion;
+    }
+
+    /**
+     * 文档入库使用的分段，未单独配置时与查询共用当前缓存
+     */
+    public EmbeddingCache ingestion() {
+        return ingestion != null ? ingestion : this;
+    }
+
+    /**
+     * 查询缓存的向量，未命中或已过期返回 null
+     * 返回的数组为缓存内部数据，调用方不得修改
+     */
+    public float[] get(Key key) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (now - entry.expiresAt() < 0) {
+                    hits.increment();
+                    return entry.vector();
+                }
+                entries.remove(key);
+                expirations.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(Key key, float[] vector) {
+        Entry entry = new Entry(vector, System.nanoTime() + ttlNanos);
+        synchronized (entries) {
+            entries.put(key, entry);
+            Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        if (ingestion != null) {
+            ingestion.clear();
+        }
+    }
+
+    public Stats stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hitCount, missCount,
+                total == 0 ? 0D : (double) hitCount / total,
+                evictions.sum(),
+                expirations.sum(),
+                size,
+                maxEntries,
+                ingestion != null ? ingestion.stats() : null);
+    }
+
+    /**
+     * 构建缓存键，文本按 {@link #normalize(String)} 归一化
+     *
+     * @param paramsHash 模型参数的摘要，无参数时为 null
+     */
+    public static Key key(String provider, String modelName, String baseUrl, String paramsHash, String text) {
+        return new Key(provider, modelName, baseUrl, paramsHash, normalize(text));
+    }
+
+    /**
+     * 文本归一化：NFKC、去除首尾空白并合并连续空白
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        StringBuilder sb = new StringBuilder(normalized.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    sb.append(' ');
+                    pendingSpace = false;
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    public record Key(String provider, String modelName, String baseUrl, String paramsHash, String text) {
+    }
+
+    private record Entry(float[] vector, long expiresAt) {
+    }
+
+    public record Stats(long hits,
+                        long misses,
+                        double hitRate,
+                        long evictions,
+                        long expirations,
+                        int size,
+                        int maxEntries,
+                        Stats ingestion) {
+    }
+}
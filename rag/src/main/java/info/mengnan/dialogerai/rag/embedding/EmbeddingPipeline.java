@@ -0,0 +1,301 @@
+package info.mengnan.dialogerai.rag.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 文档向量化流水线
+ * 分块按 Provider 的批大小切分，多个批次同时进行，每批向量化后直接批量写入向量库，
+ * 因此一批的写入与其他批的向量化相互重叠。向量化请求经 Provider 维度的限流器，
+ * 单批失败只重试该批：已生成的向量不会重新计算，写入使用固定的 ID，重试不会产生重复数据。
+ * 通过 {@link #open} 可以边产生分块边向量化，进行中的批次数即背压上限
+ */
+@Slf4j
+public class EmbeddingPipeline {
+
+    private final EmbeddingPipelineProperties properties;
+    private final Executor executor;
+    private final Map<String, EmbeddingRateLimiter> rateLimiters = new ConcurrentHashMap<>();
+
+    /**
+     * @param properties 流水线配置
+     * @param executor   执行批次的线程池，不应与调用方共用，避免相互等待
+     */
+    public EmbeddingPipeline(EmbeddingPipelineProperties properties, Executor executor) {
+        this.properties = properties;
+        this.executor = executor;
+    }
+
+    /**
+     * 向量化并写入全部分块，任一批次重试耗尽时抛出异常
+     *
+     * @param provider       模型 Provider，用于选择批大小与限流器
+     * @param segments       待向量化分块
+     * @param embeddingModel 向量化模型
+     * @param writer         写入目标，如 {@code store::addAll} 或批量写入会话的 {@code addAll}
+     * @param listener       进度回调，串行调用且已完成数单调递增
+     */
+    public Result run(String provider,
+                      List<TextSegment> segments,
+                      EmbeddingModel embeddingModel,
+                      Writer writer,
+                      ProgressListener listener) {
+        Session session = open(provider, embeddingModel, writer, listener);
+        for (TextSegment segment : segments) {
+            session.add(segment);
+        }
+        return session.finish();
+    }
+
+    /**
+     * 打开一个流式向量化会话，分块逐个加入，进行中的批次达到上限时 {@link Session#add} 阻塞
+     *
+     * @param provider       模型 Provider，用于选择批大小与限流器
+     * @param embeddingModel 向量化模型
+     * @param writer         写入目标，如 {@code store::addAll} 或批量写入会话的 {@code addAll}
+     * @param listener       进度回调，串行调用且已完成数单调递增
+     */
+    public Session open(String provider,
+                        EmbeddingModel embeddingModel,
+                        Writer writer,
+                        ProgressListener listener) {
+        return new Session(provider, embeddingModel, writer, listener);
+    }
+
+    /**
+     * 单个文档的向量化会话，非线程安全，由一个线程依次加入分块
+     */
+    public final class Session {
+
+        private final EmbeddingModel embeddingModel;
+        private final Writer writer;
+        private final ProgressListener listener;
+        private final int batchSize;
+        private final EmbeddingRateLimiter rateLimiter;
+        private final Semaphore inFlight;
+
+        private final long start = System.nanoTime();
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger retries = new AtomicInteger();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        private final Object progressLock = new Object();
+        private int reported;
+
+        private List<TextSegment> batch;
+        private int submitted;
+
+        private Session(String provider,
+                        EmbeddingModel embeddingModel,
+                        Writer writer,
+                        ProgressListener listener) {
+            this.embeddingModel = embeddingModel;
+            this.writer = writer;
+            this.listener = listener;
+            this.batchSize = Math.max(1, properties.batchSize(provider));
+            this.rateLimiter = rateLimiter(provider);
+            this.inFlight = new Semaphore(Math.max(1, properties.getMaxInFlight()));
+            this.batch = new ArrayList<>(batchSize);
+        }
+
+        /**
+         * 加入一个分块，凑满一批后提交；已有批次重试失败时抛出异常
+         */
+        public void add(TextSegment segment) {
+            checkFailure();
+            batch.add(segment);
+            submitted++;
+            if (batch.size() >= batchSize) {
+                submit();
+            }
+        }
+
+        /**
+         * 已加入的分块数
+         */
+        public int submitted() {
+            return submitted;
+        }
+
+        /**
+         * 提交剩余分块并等待全部批次完成
+         */
+        public Result finish() {
+            if (!batch.isEmpty() && failure.get() == null) {
+                submit();
+            }
+            for (CompletableFuture<Void> future : futures) {
+                try {
+                    future.join();
+                } catch (CompletionException ignored) {
+                    // 失败原因已记录在 failure 中
+                }
+            }
+            checkFailure();
+
+            long elapsed = System.nanoTime() - start;
+            return new Result(submitted, futures.size(), retries.get(),
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), chunksPerSecond(submitted, elapsed));
+        }
+
+        private void submit() {
+            List<TextSegment> current = batch;
+            batch = new ArrayList<>(batchSize);
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("向量化被中断", e);
+            }
+            CompletableFuture<Void> future;
+            try {
+                future = CompletableFuture.runAsync(
+                        () -> runBatch(current, embeddingModel, writer, rateLimiter, retries), executor);
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+            int total = submitted;
+            futures.add(future.whenComplete((v, e) -> {
+                inFlight.release();
+                if (e != null) {
+                    failure.compareAndSet(null, e instanceof CompletionException ? e.getCause() : e);
+                    return;
+                }
+                int done = processed.addAndGet(current.size());
+                synchronized (progressLock) {
+                    if (done > reported) {
+                        reported = done;
+                        try {
+                            listener.onProgress(done, Math.max(done, total),
+                                    chunksPerSecond(done, System.nanoTime() - start));
+                        } catch (RuntimeException ex) {
+                            log.warn("Failed to report embedding progress", ex);
+                        }
+                    }
+                }
+            }));
+        }
+
+        private void checkFailure() {
+            Throwable cause = failure.get();
+            if (cause != null) {
+                throw new IllegalStateException("向量化批次重试失败: " + cause.getMessage(), cause);
+            }
+        }
+    }
+
+    private void runBatch(List<TextSegment> batch,
+                          EmbeddingModel embeddingModel,
+                          Writer writer,
+                          EmbeddingRateLimiter rateLimiter,
+                          AtomicInteger retries) {
+        List<String> ids = batch.stream().map(s -> UUID.randomUUID().toString()).toList();
+        List<Embedding> embeddings = null;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                if (embeddings == null) {
+                    rateLimiter.acquire(estimateTokens(batch));
+                    embeddings = embeddingModel.embedAll(batch).content();
+                }
+                writer.addAll(ids, embeddings, batch);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("向量化被中断", e);
+            } catch (RuntimeException e) {
+                if (attempt >= properties.getMaxRetries()) {
+                    throw e;
+                }
+                retries.incrementAndGet();
+                long backoff = properties.getRetryBackoffMillis() << attempt;
+                log.warn("Embedding batch failed, retrying in {}ms (attempt {}/{})",
+                        backoff, attempt + 1, properties.getMaxRetries(), e);
+                sleep(backoff);
+            }
+        }
+    }
+
+    private EmbeddingRateLimiter rateLimiter(String provider) {
+        if (provider == null) {
+            return EmbeddingRateLimiter.UNLIMITED;
+        }
+        return rateLimiters.computeIfAbsent(provider, p -> {
+            EmbeddingPipelineProperties.Provider config = properties.getProviders().get(p);
+            return config == null
+                    ? EmbeddingRateLimiter.UNLIMITED
+                    : new EmbeddingRateLimiter(config.getRequestsPerSecond(), config.getTokensPerMinute());
+        });
+    }
+
+    /**
+     * 按字符数估算 token 数，对中文偏保守
+     */
+    private static int estimateTokens(List<TextSegment> batch) {
+        int tokens = 0;
+        for (TextSegment segment : batch) {
+            tokens += segment.text().length();
+        }
+        return tokens;
+    }
+
+    private static double chunksPerSecond(int chunks, long elapsedNanos) {
+        return elapsedNanos <= 0 ? 0D : chunks * 1_000_000_000D / elapsedNanos;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("向量化被中断", e);
+        }
+    }
+
+    /**
+     * 向量写入目标，流水线只需要按固定 ID 写入，重试同一批时覆盖已写入的分块
+     */
+    @FunctionalInterface
+    public interface Writer {
+
+        /**
+         * @param ids        分块 ID，与 embeddings、segments 一一对应
+         * @param embeddings 向量
+         * @param segments   分块
+         */
+        void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments);
+    }
+
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * @param processed       已写入的分块数
+         * @param total           分块总数，流式会话中为目前已加入的分块数
+         * @param chunksPerSecond 当前平均吞吐
+         */
+        void onProgress(int processed, int total, double chunksPerSecond);
+    }
+
+    public record Result(int chunks,
+                         int batches,
+                         int retries,
+                         long elapsedMillis,
+                         double chunksPerSecond) {
+    }
+}
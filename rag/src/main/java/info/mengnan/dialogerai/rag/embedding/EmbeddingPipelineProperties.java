@@ -0,0 +1,63 @@
+package info.mengnan.dialogerai.rag.embedding;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 文档向量化流水线配置
+ * 默认值适用于所有 Provider，可在 providers 下按 Provider 名称覆盖批大小并配置限流
+ */
+@Data
+public class EmbeddingPipelineProperties {
+
+    /**
+     * 单次 embedAll 的分块数
+     */
+    private int batchSize = 10;
+
+    /**
+     * 单个文档同时进行中的批次数
+     */
+    private int maxInFlight = 4;
+
+    /**
+     * 单批失败后的最大重试次数
+     */
+    private int maxRetries = 3;
+
+    /**
+     * 首次重试的等待时间（毫秒），之后逐次翻倍
+     */
+    private long retryBackoffMillis = 500L;
+
+    /**
+     * 按 Provider 名称覆盖的配置
+     */
+    private Map<String, Provider> providers = new HashMap<>();
+
+    public int batchSize(String provider) {
+        Provider p = provider != null ? providers.get(provider) : null;
+        return p != null && p.getBatchSize() != null ? p.getBatchSize() : batchSize;
+    }
+
+    @Data
+    public static class Provider {
+
+        /**
+         * Provider 单次请求允许的最大分块数，为 null 时使用默认值
+         */
+        private Integer batchSize;
+
+        /**
+         * 每秒请求数上限，0 表示不限制
+         */
+        private double requestsPerSecond;
+
+        /**
+         * 每分钟 token 数上限，0 表示不限制
+         */
+        private long tokensPerMinute;
+    }
+}
@@ -0,0 +1,71 @@
+package info.mengnan.dialogerai.rag.embedding;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向量化调用限流器
+ * 按请求数与 token 数两个维度做令牌桶限流，桶容量为一秒的配额；
+ * 配额不足时先预占再等待，后到的调用排在更后面
+ */
+public class EmbeddingRateLimiter {
+
+    public static final EmbeddingRateLimiter UNLIMITED = new EmbeddingRateLimiter(0, 0);
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000D;
+
+    private final double requestsPerNano;
+    private final double tokensPerNano;
+    private final double requestCapacity;
+    private final double tokenCapacity;
+
+    private double requestPermits;
+    private double tokenPermits;
+    private long refilledAt = System.nanoTime();
+
+    /**
+     * @param requestsPerSecond 每秒请求数上限，小于等于 0 表示不限制
+     * @param tokensPerMinute   每分钟 token 数上限，小于等于 0 表示不限制
+     */
+    public EmbeddingRateLimiter(double requestsPerSecond, long tokensPerMinute) {
+        this.requestsPerNano = requestsPerSecond > 0 ? requestsPerSecond / NANOS_PER_SECOND : 0;
+        this.tokensPerNano = tokensPerMinute > 0 ? tokensPerMinute / 60D / NANOS_PER_SECOND : 0;
+        this.requestCapacity = Math.max(1D, requestsPerSecond);
+        this.tokenCapacity = tokensPerMinute / 60D;
+        this.requestPermits = requestCapacity;
+        this.tokenPermits = tokenCapacity;
+    }
+
+    /**
+     * 获取一次请求的配额，配额不足时阻塞
+     *
+     * @param tokens 本次请求预估的 token 数
+     */
+    public void acquire(int tokens) throws InterruptedException {
+        if (requestsPerNano == 0 && tokensPerNano == 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long elapsed = now - refilledAt;
+            refilledAt = now;
+
+            waitNanos = 0;
+            if (requestsPerNano > 0) {
+                requestPermits = Math.min(requestCapacity, requestPermits + elapsed * requestsPerNano) - 1;
+                waitNanos = Math.max(waitNanos, deficitNanos(requestPermits, requestsPerNano));
+            }
+            if (tokensPerNano > 0) {
+                tokenPermits = Math.min(tokenCapacity, tokenPermits + elapsed * tokensPerNano) - tokens;
+                waitNanos = Math.max(waitNanos, deficitNanos(tokenPermits, tokensPerNano));
+            }
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private static long deficitNanos(double permits, double permitsPerNano) {
+        return permits >= 0 ? 0 : (long) (-permits / permitsPerNano);
+    }
+}
@@ -7,6 +7,8 @@ import dev.langchain4j.rag.content.injector.DefaultContentInjector;
 
 import java.util.List;
 
+import static info.mengnan.dialogerai.rag.retriever.KnowledgeBaseContentRetriever.INDEX_NAME_KEY;
+import static info.mengnan.dialogerai.rag.retriever.KnowledgeBaseContentRetriever.KB_NAME_KEY;
 import static info.mengnan.dialogerai.rag.constant.promptTemplate.PromptTemplateConstant.CONTENT_INJECTOR_PROMPT_TEMPLATE;
 
 /**
@@ -15,8 +17,6 @@ import static info.mengnan.dialogerai.rag.constant.promptTemplate.PromptTemplate
  */
 public class CapturingContentInjector implements ContentInjector {
 
-    private static final String INDEX_NAME_KEY = "indexName";
-    private static final String KB_NAME_KEY = "kbName";
     private final DefaultContentInjector delegate =
             new DefaultContentInjector(CONTENT_INJECTOR_PROMPT_TEMPLATE);
 
@@ -17,6 +17,16 @@ public interface RagSourceStore {
      */
     void linkToMessage(String sessionId, Long messageId);
 
+    /**
+     * getMessages() 阶段调用，查询尚未与消息绑定的 pending 记录（当前最新一轮的 RAG 内容）
+     */
+    List<RagSource> findPending(String sessionId);
+
+    /**
+     * 会话消息删除时调用，删除尚未绑定的 pending 记录
+     */
+    void discardPending(String sessionId);
+
     /**
      * RAG 检索命中的知识库片段
      */
@@ -0,0 +1,95 @@
+package info.mengnan.dialogerai.rag.retriever;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 多知识库并行检索
+ * 查询向量只计算一次，各索引的检索并行提交到专用的有界线程池，同时开始、期限相同；
+ * 超时的检索被取消（中断等待响应的线程，释放池中线程），超时、出错或池已满的索引记录日志后忽略，
+ * 返回其余索引的部分结果，按相似度降序合并；只有一个索引时同样经线程池检索，受同一期限约束
+ */
+@Slf4j
+public class FanOutContentRetriever implements ContentRetriever {
+
+    private final List<KnowledgeBaseContentRetriever> knowledgeBases;
+    private final EmbeddingModel embeddingModel;
+    private final ExecutorService executor;
+    private final long timeoutMillis;
+
+    public FanOutContentRetriever(List<KnowledgeBaseContentRetriever> knowledgeBases,
+                                  EmbeddingModel embeddingModel,
+                                  ExecutorService executor,
+                                  long timeoutMillis) {
+        this.knowledgeBases = knowledgeBases;
+        this.embeddingModel = embeddingModel;
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        Embedding queryEmbedding = embeddingModel.embed(query.text()).content();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<Future<List<Content>>> futures = new ArrayList<>(knowledgeBases.size());
+        for (KnowledgeBaseContentRetriever kb : knowledgeBases) {
+            try {
+                futures.add(executor.submit(() -> kb.search(query, queryEmbedding)));
+            } catch (RejectedExecutionException e) {
+                log.warn("Retrieval pool is full, skipped index {} ({})", kb.getIndexName(), kb.getKbName());
+                futures.add(null);
+            }
+        }
+
+        List<Content> merged = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            Future<List<Content>> future = futures.get(i);
+            if (future != null) {
+                merged.addAll(await(knowledgeBases.get(i), future, deadline));
+            }
+        }
+        merged.sort(Comparator.comparingDouble(FanOutContentRetriever::score).reversed());
+        return merged;
+    }
+
+    private List<Content> await(KnowledgeBaseContentRetriever kb, Future<List<Content>> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("Retrieval from index {} ({}) timed out after {}ms, cancelled",
+                    kb.getIndexName(), kb.getKbName(), timeoutMillis);
+        } catch (ExecutionException e) {
+            logFailure(kb, e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+        return List.of();
+    }
+
+    private void logFailure(KnowledgeBaseContentRetriever kb, Throwable e) {
+        log.error("Retrieval from index {} ({}) failed, skipped", kb.getIndexName(), kb.getKbName(), e);
+    }
+
+    private static double score(Content content) {
+        Object score = content.metadata().get(ContentMetadata.SCORE);
+        return score instanceof Number n ? n.doubleValue() : 0D;
+    }
+}
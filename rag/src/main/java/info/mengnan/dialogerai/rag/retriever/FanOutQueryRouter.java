@@ -0,0 +1,57 @@
+package info.mengnan.dialogerai.rag.retriever;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 知识库并行检索路由
+ * 先由被包装的路由器选出知识库，再把选中的 {@link KnowledgeBaseContentRetriever} 合并为一个
+ * {@link FanOutContentRetriever}：查询只向量化一次，各索引在线程池上并行检索
+ */
+public class FanOutQueryRouter implements QueryRouter {
+
+    private final QueryRouter delegate;
+    private final EmbeddingModel embeddingModel;
+    private final ExecutorService executor;
+    private final long timeoutMillis;
+
+    /**
+     * @param delegate       选择知识库的路由器
+     * @param embeddingModel 查询向量化模型，须与各索引写入时一致
+     * @param executor       并行检索线程池，应有界且专用：超时的检索会被取消，池满时跳过该索引
+     * @param timeoutMillis  单个索引的检索期限，超时的索引不返回结果
+     */
+    public FanOutQueryRouter(QueryRouter delegate, EmbeddingModel embeddingModel,
+                             ExecutorService executor, long timeoutMillis) {
+        this.delegate = delegate;
+        this.embeddingModel = embeddingModel;
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        Collection<ContentRetriever> selected = delegate.route(query);
+
+        List<KnowledgeBaseContentRetriever> knowledgeBases = new ArrayList<>();
+        List<ContentRetriever> routed = new ArrayList<>();
+        for (ContentRetriever retriever : selected) {
+            if (retriever instanceof KnowledgeBaseContentRetriever kb) {
+                knowledgeBases.add(kb);
+            } else {
+                routed.add(retriever);
+            }
+        }
+        if (!knowledgeBases.isEmpty()) {
+            routed.add(new FanOutContentRetriever(knowledgeBases, embeddingModel, executor, timeoutMillis));
+        }
+        return routed;
+    }
+}
@@ -0,0 +1,85 @@
+package info.mengnan.dialogerai.rag.retriever;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个知识库索引的检索器
+ * 可以单独作为 ContentRetriever 使用；由 {@link FanOutQueryRouter} 路由时，
+ * 查询向量在同一轮的多个知识库间共享，只调用 {@link #search(Query, Embedding)}
+ */
+public class KnowledgeBaseContentRetriever implements ContentRetriever {
+
+    public static final String INDEX_NAME_KEY = "indexName";
+    public static final String KB_NAME_KEY = "kbName";
+
+    private static final int DEFAULT_MAX_RESULTS = 3;
+    private static final double DEFAULT_MIN_SCORE = 0.0;
+
+    @Getter
+    private final String indexName;
+    @Getter
+    private final String kbName;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final EmbeddingModel embeddingModel;
+    private final int maxResults;
+    private final double minScore;
+
+    public KnowledgeBaseContentRetriever(String indexName,
+                                         String kbName,
+                                         EmbeddingStore<TextSegment> embeddingStore,
+                                         EmbeddingModel embeddingModel,
+                                         Integer maxResults,
+                                         Double minScore) {
+        this.indexName = indexName;
+        this.kbName = kbName;
+        this.embeddingStore = embeddingStore;
+        this.embeddingModel = embeddingModel;
+        this.maxResults = maxResults != null ? maxResults : DEFAULT_MAX_RESULTS;
+        this.minScore = minScore != null ? minScore : DEFAULT_MIN_SCORE;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        return search(query, embeddingModel.embed(query.text()).content());
+    }
+
+    /**
+     * 使用已计算好的查询向量检索当前索引
+     */
+    public List<Content> search(Query query, Embedding queryEmbedding) {
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .query(query.text())
+                .queryEmbedding(queryEmbedding)
+                .maxResults(maxResults)
+                .minScore(minScore)
+                .build();
+
+        List<Content> contents = new ArrayList<>();
+        for (EmbeddingMatch<TextSegment> match : embeddingStore.search(request).matches()) {
+            TextSegment segment = match.embedded();
+            if (segment == null) {
+                continue;
+            }
+            segment.metadata().put(INDEX_NAME_KEY, indexName);
+            segment.metadata().put(KB_NAME_KEY, kbName);
+            contents.add(Content.from(segment, Map.of(
+                    ContentMetadata.SCORE, match.score(),
+                    ContentMetadata.EMBEDDING_ID, match.embeddingId())));
+        }
+        return contents;
+    }
+}
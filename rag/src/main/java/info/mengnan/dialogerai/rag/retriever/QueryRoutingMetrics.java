@@ -0,0 +1,65 @@
+package info.mengnan.dialogerai.rag.retriever;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 查询路由统计
+ * 记录各路由层级的决策次数与 LLM 路由耗时，所有 {@link TieredQueryRouter} 共享
+ */
+public class QueryRoutingMetrics {
+
+    /**
+     * 路由决策来源
+     */
+    public enum Tier {
+        CACHE,     // 命中路由缓存
+        TRIVIAL,   // 只有一个知识库，直接路由
+        EMBEDDING, // 向量相似度可以明确区分
+        LLM,       // 相似度不明确，交由 LLM 路由
+        ALL        // 相似度不明确且无可用 LLM，检索全部知识库
+    }
+
+    private final LongAdder cache = new LongAdder();
+    private final LongAdder trivial = new LongAdder();
+    private final LongAdder embedding = new LongAdder();
+    private final LongAdder llm = new LongAdder();
+    private final LongAdder all = new LongAdder();
+    private final LongAdder llmNanos = new LongAdder();
+
+    public void record(Tier tier) {
+        switch (tier) {
+            case CACHE -> cache.increment();
+            case TRIVIAL -> trivial.increment();
+            case EMBEDDING -> embedding.increment();
+            case LLM -> llm.increment();
+            case ALL -> all.increment();
+        }
+    }
+
+    public void recordLlmLatency(long nanos) {
+        llmNanos.add(nanos);
+    }
+
+    public Stats stats() {
+        long llmCount = llm.sum();
+        long total = cache.sum() + trivial.sum() + embedding.sum() + llmCount + all.sum();
+        return new Stats(total,
+                cache.sum(),
+                trivial.sum(),
+                embedding.sum(),
+                llmCount,
+                all.sum(),
+                total == 0 ? 0D : (double) llmCount / total,
+                llmCount == 0 ? 0D : llmNanos.sum() / 1_000_000D / llmCount);
+    }
+
+    public record Stats(long total,
+                        long cache,
+                        long trivial,
+                        long embedding,
+                        long llm,
+                        long all,
+                        double llmRate,
+                        double avgLlmMillis) {
+    }
+}
@@ -0,0 +1,181 @@
+package info.mengnan.dialogerai.rag.retriever;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import info.mengnan.dialogerai.rag.embedding.EmbeddingCache;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分层知识库路由
+ * <ol>
+ *     <li>只有一个知识库时直接路由，不做任何模型调用</li>
+ *     <li>查询向量与各知识库描述向量做余弦相似度，最高分领先第二名足够多时只路由到最高分的知识库</li>
+ *     <li>相似度无法区分时交给 LLM 路由器；未配置 LLM 时检索全部知识库</li>
+ * </ol>
+ * 路由结果按归一化后的查询文本缓存。路由器随 AssembledComponents 缓存，知识库变更时整体重建，缓存随之失效
+ */
+@Slf4j
+public class TieredQueryRouter implements QueryRouter {
+
+    /**
+     * 最高相似度至少领先第二名该值才认为可以明确区分
+     */
+    private static final double EMBEDDING_MARGIN = 0.1;
+
+    private static final int CACHE_MAX_ENTRIES = 256;
+    private static final long CACHE_TTL_NANOS = 5L * 60 * 1_000_000_000;
+
+    private final Map<KnowledgeBaseContentRetriever, String> routingTexts;
+    private final EmbeddingModel embeddingModel;
+    private final QueryRouter llmRouter;
+    private final QueryRoutingMetrics metrics;
+
+    // 知识库描述向量，首次路由时计算
+    private volatile Map<KnowledgeBaseContentRetriever, Embedding> descriptionEmbeddings;
+
+    private final LinkedHashMap<String, Decision> decisions = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * @param routingTexts   知识库检索器及其用于相似度路由的文本（名称与描述）
+     * @param embeddingModel 查询向量化模型
+     * @param llmRouter      相似度不明确时使用的 LLM 路由器，为 null 时检索全部知识库
+     * @param metrics        路由统计
+     */
+    public TieredQueryRouter(Map<KnowledgeBaseContentRetriever, String> routingTexts,
+                             EmbeddingModel embeddingModel,
+                             QueryRouter llmRouter,
+                             QueryRoutingMetrics metrics) {
+        this.routingTexts = Map.copyOf(routingTexts);
+        this.embeddingModel = embeddingModel;
+        this.llmRouter = llmRouter;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        if (routingTexts.size() == 1) {
+            metrics.record(QueryRoutingMetrics.Tier.TRIVIAL);
+            return List.copyOf(routingTexts.keySet());
+        }
+
+        String key = EmbeddingCache.normalize(query.text());
+        Collection<ContentRetriever> cached = cachedDecision(key);
+        if (cached != null) {
+            metrics.record(QueryRoutingMetrics.Tier.CACHE);
+            return cached;
+        }
+
+        Collection<ContentRetriever> routed = routeByEmbedding(query);
+        if (routed != null) {
+            metrics.record(QueryRoutingMetrics.Tier.EMBEDDING);
+        } else if (llmRouter != null) {
+            long start = System.nanoTime();
+            routed = List.copyOf(llmRouter.route(query));
+            metrics.recordLlmLatency(System.nanoTime() - start);
+            metrics.record(QueryRoutingMetrics.Tier.LLM);
+            // LLM 路由失败时同样返回空集合，不缓存以免错误结果持续生效
+            if (routed.isEmpty()) {
+                return routed;
+            }
+        } else {
+            routed = List.copyOf(routingTexts.keySet());
+            metrics.record(QueryRoutingMetrics.Tier.ALL);
+        }
+        cacheDecision(key, routed);
+        return routed;
+    }
+
+    /**
+     * 向量相似度路由，无法明确区分时返回 null
+     */
+    private Collection<ContentRetriever> routeByEmbedding(Query query) {
+        Map<KnowledgeBaseContentRetriever, Embedding> descriptions;
+        Embedding queryEmbedding;
+        try {
+            descriptions = descriptionEmbeddings();
+            // 查询向量经 EmbeddingCache 缓存，随后的并行检索可直接复用
+            queryEmbedding = embeddingModel.embed(query.text()).content();
+        } catch (Exception e) {
+            log.warn("Embedding routing failed, falling back", e);
+            return null;
+        }
+
+        KnowledgeBaseContentRetriever best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        double secondScore = Double.NEGATIVE_INFINITY;
+        for (Map.Entry<KnowledgeBaseContentRetriever, Embedding> entry : descriptions.entrySet()) {
+            double score = CosineSimilarity.between(queryEmbedding, entry.getValue());
+            if (score > bestScore) {
+                secondScore = bestScore;
+                bestScore = score;
+                best = entry.getKey();
+            } else if (score > secondScore) {
+                secondScore = score;
+            }
+        }
+        if (best == null || bestScore - secondScore < EMBEDDING_MARGIN) {
+            return null;
+        }
+        log.debug("Routed query to {} by embedding, score {} vs {}", best.getKbName(), bestScore, secondScore);
+        return List.of(best);
+    }
+
+    private Map<KnowledgeBaseContentRetriever, Embedding> descriptionEmbeddings() {
+        Map<KnowledgeBaseContentRetriever, Embedding> embeddings = descriptionEmbeddings;
+        if (embeddings == null) {
+            List<KnowledgeBaseContentRetriever> retrievers = new ArrayList<>(routingTexts.keySet());
+            List<TextSegment> segments = retrievers.stream()
+                    .map(r -> TextSegment.from(routingTexts.get(r)))
+                    .toList();
+            List<Embedding> vectors = embeddingModel.embedAll(segments).content();
+            Map<KnowledgeBaseContentRetriever, Embedding> computed = new LinkedHashMap<>();
+            for (int i = 0; i < retrievers.size(); i++) {
+                computed.put(retrievers.get(i), vectors.get(i));
+            }
+            embeddings = Map.copyOf(computed);
+            descriptionEmbeddings = embeddings;
+        }
+        return embeddings;
+    }
+
+    private Collection<ContentRetriever> cachedDecision(String key) {
+        synchronized (decisions) {
+            Decision decision = decisions.get(key);
+            if (decision == null) {
+                return null;
+            }
+            if (System.nanoTime() - decision.expiresAt() >= 0) {
+                decisions.remove(key);
+                return null;
+            }
+            return decision.retrievers();
+        }
+    }
+
+    private void cacheDecision(String key, Collection<ContentRetriever> retrievers) {
+        Decision decision = new Decision(retrievers, System.nanoTime() + CACHE_TTL_NANOS);
+        synchronized (decisions) {
+            decisions.put(key, decision);
+            Iterator<String> it = decisions.keySet().iterator();
+            while (decisions.size() > CACHE_MAX_ENTRIES && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    private record Decision(Collection<ContentRetriever> retrievers, long expiresAt) {
+    }
+}
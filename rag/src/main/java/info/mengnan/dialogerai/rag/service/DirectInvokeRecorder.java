@@ -0,0 +1,42 @@
+package info.mengnan.dialogerai.rag.service;
+
+/**
+ * 直接模型调用记录接口
+ * 在调用完成的线程上回调，实现不能阻塞（应只做入队，由后台批量写入）
+ */
+@FunctionalInterface
+public interface DirectInvokeRecorder {
+
+    DirectInvokeRecorder NOOP = invocation -> {
+    };
+
+    void record(Invocation invocation);
+
+    enum Outcome {
+        SUCCESS, CLIENT_ERROR, CIRCUIT_OPEN, FAILED
+    }
+
+    /**
+     * 一次直接调用的结果
+     *
+     * @param modelName      最后一次尝试使用的模型，熔断全部打开时为 null
+     * @param attempts       实际调用模型的次数，包含重试与降级
+     * @param promptTokens   模型返回的用量，未返回时为 null
+     * @param responseTokens 模型返回的用量，未返回时为 null
+     * @param finishedAt     完成时间，毫秒时间戳
+     */
+    record Invocation(String invokeSource,
+                      String templateName,
+                      String promptText,
+                      String modelProvider,
+                      String modelName,
+                      String responseText,
+                      Outcome outcome,
+                      String errorMessage,
+                      int attempts,
+                      Integer promptTokens,
+                      Integer responseTokens,
+                      long durationMs,
+                      long finishedAt) {
+    }
+}
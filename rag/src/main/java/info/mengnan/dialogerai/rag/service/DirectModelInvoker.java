@@ -1,26 +1,45 @@
 package info.mengnan.dialogerai.rag.service;
 
+import dev.langchain4j.data.message.Content;
 import dev.langchain4j.data.message.ImageContent;
 import dev.langchain4j.data.message.TextContent;
 import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.exception.RetriableException;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.chat.request.ChatRequest;
 import dev.langchain4j.model.chat.response.ChatResponse;
 import dev.langchain4j.model.input.Prompt;
+import dev.langchain4j.model.output.TokenUsage;
 import info.mengnan.dialogerai.common.param.ModelType;
+import info.mengnan.dialogerai.kb.core.ImageTextGenerator;
 import info.mengnan.dialogerai.rag.config.DefaultModelConfig;
 import info.mengnan.dialogerai.rag.config.ModelConfig;
 import info.mengnan.dialogerai.rag.container.factory.UniversalModelFactory;
 import info.mengnan.dialogerai.rag.container.factory.ModelTypeMapper;
 import lombok.extern.slf4j.Slf4j;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.function.Supplier;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 直接模型调用器
+ * 调用经 {@link ModelResilience} 执行：按模型熔断、按预算重试，失败时改用模板配置的降级模型。
+ * 同步方法等待异步结果，重试的退避等待不占用线程。
+ * 每次调用完成后交给 {@link DirectInvokeRecorder} 记录耗时、token 用量、模型、调用次数与结果。
  */
 @Slf4j
 public class DirectModelInvoker {
@@ -29,26 +48,47 @@ public class DirectModelInvoker {
     private final SingleModelConfigProvider singleModelConfigProvider;
     private final PromptTemplateManager promptTemplateManager;
     private final DefaultModelConfig defaultModelConfig;
+    private final ModelResilience resilience;
+    private final DirectInvokeRecorder recorder;
+    private final Map<String, Semaphore> visionPermits = new ConcurrentHashMap<>();
+    /**
+     * 已确认不接受单条消息多张图片的模型（provider:modelName），这些模型只逐张识别
+     */
+    private final Set<String> singleImageModels = ConcurrentHashMap.newKeySet();
 
-    // 重试配置
-    private static final int MAX_ATTEMPTS = 3;
-    private static final long BACKOFF_DELAY_MS = 1000L;
-    private static final double BACKOFF_MULTIPLIER = 2.0;
+    /**
+     * 多图请求附加的说明，要求按顺序以 [Image k] 标记分隔各图描述
+     */
+    private static final String MULTI_IMAGE_INSTRUCTION = """
+
+            There are %d images above, given in order. Describe each image separately.
+            Start the description of image k with the marker [Image k] on its own line (for example [Image 1]),
+            and do not write anything before [Image 1].
+            """;
 
     public DirectModelInvoker(UniversalModelFactory modelFactory,
                               SingleModelConfigProvider singleModelConfigProvider,
                               PromptTemplateManager promptTemplateManager,
-                              DefaultModelConfig defaultModelConfig) {
+                              DefaultModelConfig defaultModelConfig,
+                              ModelResilience resilience,
+                              DirectInvokeRecorder recorder) {
         this.modelFactory = modelFactory;
         this.singleModelConfigProvider = singleModelConfigProvider;
         this.promptTemplateManager = promptTemplateManager;
         this.defaultModelConfig = defaultModelConfig;
+        this.resilience = resilience;
+        this.recorder = recorder != null ? recorder : DirectInvokeRecorder.NOOP;
     }
 
     /**
      * @param invokeSource 业务来源标识，便于排查；为 null 时使用 {@code template:模板名}
      */
     public String directInvoke(String invokeSource, String templateName, Map<String, Object> variables) {
+        return await(directInvokeAsync(invokeSource, templateName, variables));
+    }
+
+    public CompletableFuture<String> directInvokeAsync(String invokeSource, String templateName,
+                                                       Map<String, Object> variables) {
         if (templateName == null) {
             log.error("No template name provided");
             throw new IllegalArgumentException("No template name provided");
@@ -64,29 +104,16 @@ public class DirectModelInvoker {
      * @param invokeSource 业务来源标识，便于排查
      */
     public String directInvokeRaw(String invokeSource, String promptText) {
+        return await(directInvokeRawAsync(invokeSource, promptText));
+    }
+
+    public CompletableFuture<String> directInvokeRawAsync(String invokeSource, String promptText) {
         String source = (invokeSource != null && !invokeSource.isBlank()) ? invokeSource : "unknown";
         return directInvokeInternal(source, null, promptText);
     }
 
-    private String directInvokeInternal(String invokeSource, String templateName, String promptText) {
-        ModelConfig modelConfig = null;
-        try {
-            modelConfig = singleModelConfigProvider.findModel(null, defaultModelConfig.getModelName(), ModelType.CHAT);
-            if (modelConfig == null) {
-                throw new IllegalArgumentException("No default model configuration found");
-            }
-
-            ChatModel chatModel = getModel(modelConfig, ChatModel.class);
-
-            String response = executeWithRetry(() -> {
-                String raw = chatModel.chat(promptText);
-                return UserMessage.from(raw).singleText();
-            }, MAX_ATTEMPTS, BACKOFF_DELAY_MS, BACKOFF_MULTIPLIER);
-
-            return response;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    private CompletableFuture<String> directInvokeInternal(String invokeSource, String templateName, String promptText) {
+        return invoke(invokeSource, templateName, promptText, UserMessage.from(promptText), false);
     }
 
     /**
@@ -97,6 +124,25 @@ public class DirectModelInvoker {
      * @return 图片内容的文本描述
      */
     public String imageToText(byte[] imageData, String promptTemplate, String mimeType) {
+        return await(imageToTextAsync(imageData, promptTemplate, mimeType));
+    }
+
+    /**
+     * @param invokeSource 业务来源标识，便于排查
+     */
+    public String imageToText(String invokeSource, byte[] imageData, String promptTemplate, String mimeType) {
+        return await(imageToTextAsync(invokeSource, imageData, promptTemplate, mimeType));
+    }
+
+    public CompletableFuture<String> imageToTextAsync(byte[] imageData, String promptTemplate, String mimeType) {
+        return imageToTextAsync("imageToText", imageData, promptTemplate, mimeType);
+    }
+
+    /**
+     * @param invokeSource 业务来源标识，便于排查
+     */
+    public CompletableFuture<String> imageToTextAsync(String invokeSource, byte[] imageData,
+                                                      String promptTemplate, String mimeType) {
         if (imageData == null || imageData.length == 0) {
             log.error("Image data is null or empty");
             throw new IllegalArgumentException("Image data cannot be null or empty");
@@ -109,7 +155,7 @@ public class DirectModelInvoker {
 
         // 将字节数组转换为Base64字符串
         String base64ImageData = Base64.getEncoder().encodeToString(imageData);
-        return imageToTextFromBase64(base64ImageData, promptTemplate, mimeType);
+        return imageToTextFromBase64(invokeSource, base64ImageData, promptTemplate, mimeType);
     }
 
 
@@ -120,77 +166,279 @@ public class DirectModelInvoker {
      * @param mimeType 图片的MIME类型 (e.g., "image/png", "image/jpeg")
      * @return 图片内容的文本描述
      */
-    private String imageToTextFromBase64(String base64ImageData, String promptTemplate, String mimeType) {
-        ModelConfig modelConfig = singleModelConfigProvider.findModel(null, defaultModelConfig.getModelName(), ModelType.CHAT);
-        if (modelConfig == null) {
-            throw new IllegalArgumentException("No default image model configuration found");
-        }
-
+    private CompletableFuture<String> imageToTextFromBase64(String invokeSource, String base64ImageData,
+                                                            String promptTemplate, String mimeType) {
         Prompt prompt = promptTemplateManager.createPrompt(promptTemplate, null);
-        ChatModel chatModel = getModel(modelConfig, ChatModel.class);
-
         UserMessage userMessage = UserMessage.from(
                 TextContent.from(prompt.text()),
                 ImageContent.from(base64ImageData, mimeType)
         );
 
-        // 执行图片到文本的转换
-        return executeWithRetry(() -> {
-            ChatRequest.Builder requestBuilder = ChatRequest.builder().messages(userMessage);
-            ChatRequest request = requestBuilder.build();
-            ChatResponse response = chatModel.chat(request);
-            return response.aiMessage().text();
-        }, MAX_ATTEMPTS, BACKOFF_DELAY_MS, BACKOFF_MULTIPLIER);
+        // 执行图片到文本的转换，记录中只保存文本提示词
+        return invoke(invokeSource, promptTemplate, prompt.text(), userMessage, true);
     }
 
     /**
-     * 执行带重试的操作
-     * @param operation 要执行的操作
-     * @param maxAttempts 最大尝试次数
-     * @param initialDelayMs 延迟毫秒数
-     * @param multiplier 延迟倍增因子
-     * @return 操作结果
+     * 一次请求识别多张图片，返回与输入顺序一致的描述，单张图片识别失败时对应位置的描述为 null。
+     * 合并请求的描述标记为 packed；以下情况对该批改为逐张识别：
+     * 默认模型已确认不支持多图、返回的描述数量不符、请求失败。
+     * 合并请求被模型以客户端错误拒绝、而逐张识别全部成功时，才认定该模型不支持多图，此后该模型只逐张识别
+     *
+     * @param invokeSource   业务来源标识，便于排查
+     * @param images         图片
+     * @param promptTemplate 模板名称，用于指导图片分析
      */
-    private <T> T executeWithRetry(Supplier<T> operation, int maxAttempts, long initialDelayMs, double multiplier) {
-        Exception lastException = null;
-        long delayMs = initialDelayMs;
+    public List<ImageTextGenerator.Caption> imagesToText(String invokeSource, List<ImageTextGenerator.ImageInput> images,
+                                                         String promptTemplate) {
+        return await(imagesToTextAsync(invokeSource, images, promptTemplate));
+    }
 
-        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-            try {
-                return operation.get();
-            } catch (Exception e) {
-                lastException = e;
+    public CompletableFuture<List<ImageTextGenerator.Caption>> imagesToTextAsync(String invokeSource,
+                                                                                 List<ImageTextGenerator.ImageInput> images,
+                                                                                 String promptTemplate) {
+        if (images == null || images.isEmpty()) {
+            throw new IllegalArgumentException("Images cannot be null or empty");
+        }
+        if (images.size() == 1 || singleImageModels.contains(modelKey(candidates(promptTemplate).get(0)))) {
+            return oneByOne(invokeSource, images, promptTemplate);
+        }
 
-                if (e.getMessage() != null && e.getMessage().startsWith("4")) {
-                    log.warn("Client error occurred, not retrying: {}", e.getMessage());
-                    break;
-                }
+        String promptText = promptTemplateManager.createPrompt(promptTemplate, null).text()
+                + String.format(MULTI_IMAGE_INSTRUCTION, images.size());
+        List<Content> contents = new ArrayList<>(images.size() + 1);
+        contents.add(TextContent.from(promptText));
+        // 只在发出请求前编码，同一时刻只有进行中的请求同时持有原图与 Base64
+        for (ImageTextGenerator.ImageInput image : images) {
+            contents.add(ImageContent.from(Base64.getEncoder().encodeToString(image.data()), image.mimeType()));
+        }
 
-                // 如果不是最后一次尝试，等待后重试
-                if (attempt < maxAttempts) {
-                    // 添加抖动避免雪崩
-                    long jitter = ThreadLocalRandom.current().nextLong(delayMs / 2);
-                    long sleepTime = delayMs + jitter;
+        Trace trace = new Trace();
+        return invoke(invokeSource, promptTemplate, promptText, UserMessage.from(contents), true, trace)
+                .thenApply(text -> splitDescriptions(text, images.size()).stream()
+                        .map(description -> new ImageTextGenerator.Caption(description, true))
+                        .toList())
+                .exceptionallyCompose(error -> {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    ModelConfig model = trace.model;
+                    if (model == null || !ModelResilience.isClientError(cause)) {
+                        log.warn("Multi-image caption failed, retrying {} images one by one: {}", images.size(), cause.getMessage());
+                        return oneByOne(invokeSource, images, promptTemplate);
+                    }
+                    // 客户端错误也可能由单张图片引起（过大、内容审核），逐张识别全部成功才归因于多图
+                    return oneByOne(invokeSource, images, promptTemplate).thenApply(captions -> {
+                        if (captions.stream().allMatch(c -> c.text() != null)) {
+                            singleImageModels.add(modelKey(model));
+                            log.warn("Model {} rejected {} images in one request but accepted each alone, captioning one by one from now on: {}",
+                                    modelKey(model), images.size(), cause.getMessage());
+                        } else {
+                            log.warn("Model {} rejected a multi-image request, some images also fail alone: {}",
+                                    modelKey(model), cause.getMessage());
+                        }
+                        return captions;
+                    });
+                });
+    }
 
-                    log.warn("Attempt {} failed, retrying in {}ms... Error:", attempt, sleepTime, e);
+    /**
+     * 图片描述的版本：该模板的候选模型（默认模型与降级模型）及提示词文本的 SHA-256，
+     * 任一模型或提示词变化后版本随之变化，缓存的旧描述不再命中
+     *
+     * @param promptTemplate 模板名称
+     */
+    public String captionVersion(String promptTemplate) {
+        StringBuilder source = new StringBuilder();
+        for (ModelConfig model : candidates(promptTemplate)) {
+            source.append(modelKey(model)).append('\n');
+        }
+        source.append(promptTemplateManager.createPrompt(promptTemplate, null).text());
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(source.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-                    try {
-                        Thread.sleep(sleepTime);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("Operation was interrupted", ie);
-                    }
+    /**
+     * 依次逐张识别，单张失败时对应位置的描述为 null
+     */
+    private CompletableFuture<List<ImageTextGenerator.Caption>> oneByOne(String invokeSource,
+                                                                        List<ImageTextGenerator.ImageInput> images,
+                                                                        String promptTemplate) {
+        CompletableFuture<List<ImageTextGenerator.Caption>> captions =
+                CompletableFuture.completedFuture(new ArrayList<>(images.size()));
+        for (ImageTextGenerator.ImageInput image : images) {
+            captions = captions.thenCompose(list -> singleCaption(invokeSource, image, promptTemplate)
+                    .thenApply(text -> {
+                        list.add(new ImageTextGenerator.Caption(text, false));
+                        return list;
+                    }));
+        }
+        return captions;
+    }
 
-                    // 指数退避
-                    delayMs = (long) (delayMs * multiplier);
+    private CompletableFuture<String> singleCaption(String invokeSource, ImageTextGenerator.ImageInput image,
+                                                    String promptTemplate) {
+        try {
+            return imageToTextAsync(invokeSource, image.data(), promptTemplate, image.mimeType())
+                    .exceptionally(e -> null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private static String modelKey(ModelConfig config) {
+        return config.getModelProvider() + ":" + config.getModelName();
+    }
+
+    /**
+     * 按 [Image k] 标记拆分多张图片的描述
+     */
+    static List<String> splitDescriptions(String text, int count) {
+        List<String> descriptions = new ArrayList<>(count);
+        int from = text != null ? text.indexOf(imageMarker(1)) : -1;
+        for (int k = 1; k <= count && from >= 0; k++) {
+            int start = from + imageMarker(k).length();
+            int next = k < count ? text.indexOf(imageMarker(k + 1), start) : text.length();
+            if (next < 0) {
+                break;
+            }
+            descriptions.add(text.substring(start, next).strip());
+            from = next;
+        }
+        if (descriptions.size() != count) {
+            throw new IllegalStateException(String.format(
+                    "Expected %d image descriptions, got %d", count, descriptions.size()));
+        }
+        return descriptions;
+    }
+
+    private static String imageMarker(int k) {
+        return "[Image " + k + "]";
+    }
+
+    /**
+     * @param vision 是否为图片识别请求，图片识别按 Provider 限制并发
+     */
+    private CompletableFuture<String> invoke(String invokeSource, String templateName, String promptText,
+                                             UserMessage userMessage, boolean vision) {
+        return invoke(invokeSource, templateName, promptText, userMessage, vision, new Trace());
+    }
+
+    /**
+     * @param trace 调用跟踪，调用方可在完成后读取实际使用的模型
+     */
+    private CompletableFuture<String> invoke(String invokeSource, String templateName, String promptText,
+                                             UserMessage userMessage, boolean vision, Trace trace) {
+        return resilience.execute(candidates(templateName), modelConfig -> {
+            trace.model = modelConfig;
+            trace.attempts.incrementAndGet();
+            ChatModel chatModel = getModel(modelConfig, ChatModel.class);
+            ChatRequest request = ChatRequest.builder().messages(userMessage).build();
+            Semaphore permits = vision ? visionPermits(modelConfig.getModelProvider()) : null;
+            if (permits != null) {
+                // 限时等待许可，超时按可重试失败交给 resilience 退避，不让重试线程无限阻塞
+                long timeoutMs = resilience.properties().getVisionPermitTimeoutMs();
+                try {
+                    if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                        throw new RetriableException("No image recognition slot for provider "
+                                + modelConfig.getModelProvider() + " within " + timeoutMs + "ms");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Image recognition was interrupted", e);
                 }
             }
+            try {
+                ChatResponse response = chatModel.chat(request);
+                trace.usage = response.tokenUsage();
+                return response.aiMessage().text();
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        }).whenComplete((text, error) -> record(invokeSource, templateName, promptText, trace, text, error));
+    }
+
+    private void record(String invokeSource, String templateName, String promptText,
+                        Trace trace, String text, Throwable error) {
+        try {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            DirectInvokeRecorder.Outcome outcome;
+            if (cause == null) {
+                outcome = DirectInvokeRecorder.Outcome.SUCCESS;
+            } else if (trace.attempts.get() == 0) {
+                // 没有发出任何调用：所有候选模型的熔断都已打开
+                outcome = DirectInvokeRecorder.Outcome.CIRCUIT_OPEN;
+            } else if (ModelResilience.isClientError(cause)) {
+                outcome = DirectInvokeRecorder.Outcome.CLIENT_ERROR;
+            } else {
+                outcome = DirectInvokeRecorder.Outcome.FAILED;
+            }
+            ModelConfig model = trace.model;
+            TokenUsage usage = trace.usage;
+            recorder.record(new DirectInvokeRecorder.Invocation(invokeSource, templateName, promptText,
+                    model != null ? model.getModelProvider() : null,
+                    model != null ? model.getModelName() : null,
+                    text, outcome, cause != null ? cause.getMessage() : null,
+                    trace.attempts.get(),
+                    usage != null ? usage.inputTokenCount() : null,
+                    usage != null ? usage.outputTokenCount() : null,
+                    (System.nanoTime() - trace.start) / 1_000_000,
+                    System.currentTimeMillis()));
+        } catch (RuntimeException e) {
+            log.warn("Failed to record direct invocation from {}", invokeSource, e);
         }
-        if(lastException !=null) {
-            throw new RuntimeException(String.format(
-                    "Operation failed after %d attempts. Last error: %s", maxAttempts, lastException.getMessage()), lastException);
+    }
+
+    /**
+     * 默认模型在前，其后为该模板配置的降级模型；找不到配置的模型跳过
+     */
+    private List<ModelConfig> candidates(String templateName) {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(defaultModelConfig.getModelName());
+        names.addAll(resilience.properties().fallbackModels(templateName));
+
+        List<ModelConfig> candidates = new ArrayList<>(names.size());
+        for (String name : names) {
+            ModelConfig modelConfig = singleModelConfigProvider.findModel(null, name, ModelType.CHAT);
+            if (modelConfig != null) {
+                candidates.add(modelConfig);
+            } else {
+                log.warn("Model configuration not found: {}", name);
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException("No default model configuration found");
+        }
+        return candidates;
+    }
+
+    /**
+     * 单次调用的跟踪信息，同一调用的各次尝试依次执行，可能位于不同线程
+     */
+    private static final class Trace {
+        private final long start = System.nanoTime();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private volatile ModelConfig model;
+        private volatile TokenUsage usage;
+    }
+
+    private Semaphore visionPermits(String provider) {
+        return visionPermits.computeIfAbsent(String.valueOf(provider),
+                p -> new Semaphore(resilience.properties().visionConcurrency(provider)));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
         }
-        throw new RuntimeException();
     }
 
     public <T> T getModel(ModelConfig modelConfig, Class<T> modelClass) {
@@ -0,0 +1,168 @@
+package info.mengnan.dialogerai.rag.service;
+
+import info.mengnan.dialogerai.rag.config.ModelResilienceProperties;
+
+/**
+ * 单个模型的熔断器与重试预算
+ * 按最近若干次调用的失败率在 CLOSED / OPEN / HALF_OPEN 间切换；
+ * 客户端错误不计入失败率。状态变化都在实例锁内完成，调用本身不持锁。
+ */
+public class ModelCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    private final double retryBudgetRatio;
+    private final int retryBudgetCapacity;
+
+    // 最近调用结果的环形缓冲，true 表示失败
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCalls;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    private double retryTokens;
+
+    private long calls;
+    private long failures;
+    private long rejected;
+    private long retries;
+    private long retriesDenied;
+
+    public ModelCircuitBreaker(String name, ModelResilienceProperties properties) {
+        this.name = name;
+        this.window = new boolean[Math.max(1, properties.getSlidingWindowSize())];
+        this.minimumCalls = Math.max(1, Math.min(properties.getMinimumCalls(), window.length));
+        this.failureRateThreshold = properties.getFailureRateThreshold();
+        this.openDurationNanos = properties.getOpenDurationSeconds() * 1_000_000_000L;
+        this.halfOpenCalls = Math.max(1, properties.getHalfOpenCalls());
+        this.retryBudgetRatio = properties.getRetryBudgetRatio();
+        this.retryBudgetCapacity = properties.getRetryBudgetCapacity();
+        this.retryTokens = retryBudgetCapacity;
+    }
+
+    /**
+     * 申请一次调用；熔断打开时返回 false
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDurationNanos) {
+                rejected++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermits = halfOpenCalls;
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                rejected++;
+                return false;
+            }
+            halfOpenPermits--;
+        }
+        calls++;
+        retryTokens = Math.min(retryBudgetCapacity, retryTokens + retryBudgetRatio);
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSuccesses >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && windowCalls >= minimumCalls
+                && (double) windowFailures / windowCalls >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * 客户端错误：不计入失败率，半开状态下归还探测名额
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            halfOpenPermits++;
+        }
+    }
+
+    /**
+     * 申请一次重试，预算不足时返回 false
+     */
+    public synchronized boolean tryRetry() {
+        if (state != State.CLOSED || retryTokens < 1) {
+            retriesDenied++;
+            return false;
+        }
+        retryTokens--;
+        retries++;
+        return true;
+    }
+
+    private void record(boolean failed) {
+        if (windowCalls == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCalls++;
+        }
+        window[windowIndex] = failed;
+        if (failed) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowIndex = 0;
+        windowCalls = 0;
+        windowFailures = 0;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(name, state,
+                windowCalls == 0 ? 0D : (double) windowFailures / windowCalls,
+                calls, failures, rejected, retries, retriesDenied, retryTokens);
+    }
+
+    public record Stats(String model,
+                        State state,
+                        double failureRate,
+                        long calls,
+                        long failures,
+                        long rejected,
+                        long retries,
+                        long retriesDenied,
+                        double retryBudget) {
+    }
+}
@@ -0,0 +1,182 @@
+package info.mengnan.dialogerai.rag.service;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.NonRetriableException;
+import dev.langchain4j.exception.RetriableException;
+import info.mengnan.dialogerai.rag.config.ModelConfig;
+import info.mengnan.dialogerai.rag.config.ModelResilienceProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * 模型调用的熔断、重试与降级
+ * 每个 provider:modelName 一个 {@link ModelCircuitBreaker}。首次调用在调用线程执行；
+ * 失败后的重试按指数退避加抖动延迟提交到重试线程池，等待期间不占用任何线程。
+ * 客户端错误（4xx、参数错误）直接失败；同一模型重试用尽、预算不足或熔断打开时依次改用降级模型。
+ */
+@Slf4j
+public class ModelResilience {
+
+    private final ModelResilienceProperties properties;
+    private final Executor retryExecutor;
+    private final Map<String, ModelCircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    public ModelResilience(ModelResilienceProperties properties, Executor retryExecutor) {
+        this.properties = properties;
+        this.retryExecutor = retryExecutor;
+    }
+
+    /**
+     * 依次在候选模型上执行调用
+     *
+     * @param candidates 首选模型在前，其后为降级模型
+     * @param call       对单个模型的调用，在调用线程或重试线程中执行
+     */
+    public <T> CompletableFuture<T> execute(List<ModelConfig> candidates, Function<ModelConfig, T> call) {
+        Invocation<T> invocation = new Invocation<>(candidates, call);
+        invocation.run();
+        return invocation.result;
+    }
+
+    public ModelResilienceProperties properties() {
+        return properties;
+    }
+
+    /**
+     * 是否为客户端错误：重试与降级都无法成功，不计入失败率
+     */
+    public static boolean isClientError(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof HttpException http) {
+                int status = http.statusCode();
+                return status >= 400 && status < 500 && status != 408 && status != 429;
+            }
+            if (t instanceof NonRetriableException
+                    || t instanceof IllegalArgumentException
+                    || t instanceof UnsupportedOperationException) {
+                return true;
+            }
+            if (t instanceof RetriableException || t instanceof IOException || t instanceof TimeoutException) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private ModelCircuitBreaker breaker(ModelConfig config) {
+        String name = config.getModelProvider() + ":" + config.getModelName();
+        return breakers.computeIfAbsent(name, n -> new ModelCircuitBreaker(n, properties));
+    }
+
+    public List<ModelCircuitBreaker.Stats> stats() {
+        return breakers.values().stream()
+                .map(ModelCircuitBreaker::stats)
+                .sorted(Comparator.comparing(ModelCircuitBreaker.Stats::model))
+                .toList();
+    }
+
+    /**
+     * 单次调用的状态：当前候选模型、尝试次数与下一次退避时间
+     */
+    private final class Invocation<T> {
+
+        private final List<ModelConfig> candidates;
+        private final Function<ModelConfig, T> call;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private int index;
+        private int attempt = 1;
+        private long delayMs = properties.getBackoffDelayMs();
+        private RuntimeException lastError;
+
+        private Invocation(List<ModelConfig> candidates, Function<ModelConfig, T> call) {
+            this.candidates = candidates;
+            this.call = call;
+        }
+
+        private void run() {
+            while (index < candidates.size()) {
+                ModelConfig config = candidates.get(index);
+                ModelCircuitBreaker breaker = breaker(config);
+                if (!breaker.tryAcquire()) {
+                    lastError = new CircuitOpenException(config.getModelProvider() + ":" + config.getModelName());
+                    log.warn("Circuit open, skipping model {}:{}", config.getModelProvider(), config.getModelName());
+                    next();
+                    continue;
+                }
+
+                try {
+                    T value = call.apply(config);
+                    breaker.onSuccess();
+                    result.complete(value);
+                    return;
+                } catch (RuntimeException e) {
+                    if (isClientError(e)) {
+                        breaker.onIgnored();
+                        log.warn("Client error from model {}, not retrying: {}", config.getModelName(), e.getMessage());
+                        result.completeExceptionally(e);
+                        return;
+                    }
+                    breaker.onFailure();
+                    lastError = e;
+                    if (attempt < properties.getMaxAttempts() && breaker.tryRetry()) {
+                        scheduleRetry(config, e);
+                        return;
+                    }
+                    next();
+                    if (index < candidates.size()) {
+                        log.warn("Model {} failed, falling back to {}: {}", config.getModelName(),
+                                candidates.get(index).getModelName(), e.getMessage());
+                    }
+                }
+            }
+            result.completeExceptionally(new RuntimeException(String.format(
+                    "Operation failed on %d model(s). Last error: %s", candidates.size(),
+                    lastError != null ? lastError.getMessage() : "no model available"), lastError));
+        }
+
+        private void scheduleRetry(ModelConfig config, RuntimeException e) {
+            // 添加抖动避免雪崩
+            long sleepTime = delayMs + ThreadLocalRandom.current().nextLong(Math.max(1, delayMs / 2));
+            log.warn("Attempt {} on model {} failed, retrying in {}ms... Error: {}",
+                    attempt, config.getModelName(), sleepTime, e.getMessage());
+            attempt++;
+            delayMs = Math.min(properties.getMaxBackoffMs(), (long) (delayMs * properties.getBackoffMultiplier()));
+            // 延迟线程只负责到期后提交，重试本身在重试线程池中执行
+            CompletableFuture.delayedExecutor(sleepTime, TimeUnit.MILLISECONDS).execute(() -> {
+                try {
+                    retryExecutor.execute(this::run);
+                } catch (RejectedExecutionException rejected) {
+                    result.completeExceptionally(e);
+                }
+            });
+        }
+
+        private void next() {
+            index++;
+            attempt = 1;
+            delayMs = properties.getBackoffDelayMs();
+        }
+    }
+
+    /**
+     * 熔断打开，调用未发出
+     */
+    public static class CircuitOpenException extends RuntimeException {
+        public CircuitOpenException(String model) {
+            super("Circuit breaker is open for model: " + model);
+        }
+    }
+}
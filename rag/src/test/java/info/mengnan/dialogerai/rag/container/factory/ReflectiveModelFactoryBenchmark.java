@@ -0,0 +1,154 @@
+package info.mengnan.dialogerai.rag.container.factory;
+
+import info.mengnan.dialogerai.common.param.ModelType;
+import info.mengnan.dialogerai.rag.config.ModelConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 反射创建模型的基准测试
+ * reflection：原 createModelByReflection 的实现，每次 Class.forName 并逐个 getMethod
+ * methodHandle：{@link CapableModelFactory} 加载映射时解析好的方法句柄
+ * direct：直接调用 Builder，相当于手写的 ParamApplier
+ * <p>
+ * 基准所需资源放在 test 资源的 benchmark/ 目录下，不影响其他测试：
+ * 模型类由 benchmark/META-INF/model-mapping/benchmark.properties 注册，只在 setUp 中通过替换上下文类加载器加载；
+ * fork 出的 JVM 通过 logback.configurationFile 使用 benchmark/logback-benchmark.xml，只输出警告。
+ * 运行方式：执行 main 方法，或 mvn -pl rag test-compile 后通过 JMH Runner 运行
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=benchmark/logback-benchmark.xml")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReflectiveModelFactoryBenchmark {
+
+    private static final String PROVIDER = "benchmark";
+    private static final String MAPPING_LOCATION = "META-INF/model-mapping/";
+    private static final String BENCHMARK_MAPPING_LOCATION = "benchmark/" + MAPPING_LOCATION;
+
+    private CapableModelFactory factory;
+    private ModelConfig config;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        thread.setContextClassLoader(new BenchmarkMappingClassLoader(original));
+        try {
+            factory = new CapableModelFactory();
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+        config = new ModelConfig();
+        config.setModelProvider(PROVIDER);
+        config.setModelName("bench-model");
+        config.setApiKey("sk-benchmark");
+    }
+
+    @Benchmark
+    public Object reflection() throws Exception {
+        Class<?> modelClass = Class.forName(BenchmarkModel.class.getName());
+        Method builderMethod = modelClass.getMethod("builder");
+        Object builder = builderMethod.invoke(null);
+        Class<?> builderClass = builder.getClass();
+        try {
+            builder = builderClass.getMethod("apiKey", String.class).invoke(builder, config.getApiKey());
+        } catch (NoSuchMethodException ignored) {
+        }
+        try {
+            builder = builderClass.getMethod("modelName", String.class).invoke(builder, config.getModelName());
+        } catch (NoSuchMethodException ignored) {
+        }
+        return builderClass.getMethod("build").invoke(builder);
+    }
+
+    @Benchmark
+    public Object methodHandle() {
+        return factory.createModel(config, ModelType.CHAT);
+    }
+
+    @Benchmark
+    public Object direct() {
+        return BenchmarkModel.builder()
+                .apiKey(config.getApiKey())
+                .modelName(config.getModelName())
+                .build();
+    }
+
+    /**
+     * 查找映射目录时返回 benchmark/ 下的映射目录，只对本基准创建的工厂生效
+     */
+    private static final class BenchmarkMappingClassLoader extends ClassLoader {
+
+        private BenchmarkMappingClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) throws IOException {
+            if (MAPPING_LOCATION.equals(name)) {
+                URL benchmarkMappings = getParent().getResource(BENCHMARK_MAPPING_LOCATION);
+                return benchmarkMappings != null
+                        ? Collections.enumeration(Collections.singletonList(benchmarkMappings))
+                        : Collections.emptyEnumeration();
+            }
+            return super.getResources(name);
+        }
+    }
+
+    /**
+     * 与 LangChain4j 模型相同的 builder() 约定
+     */
+    public static class BenchmarkModel {
+
+        private final String apiKey;
+        private final String modelName;
+
+        private BenchmarkModel(Builder builder) {
+            this.apiKey = builder.apiKey;
+            this.modelName = builder.modelName;
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private String apiKey;
+            private String modelName;
+
+            public Builder apiKey(String apiKey) {
+                this.apiKey = apiKey;
+                return this;
+            }
+
+            public Builder modelName(String modelName) {
+                this.modelName = modelName;
+                return this;
+            }
+
+            public BenchmarkModel build() {
+                return new BenchmarkModel(this);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ReflectiveModelFactoryBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
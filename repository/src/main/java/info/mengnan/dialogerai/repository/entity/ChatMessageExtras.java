@@ -32,6 +32,9 @@ public class ChatMessageExtras {
     /** {@link dev.langchain4j.data.message.ToolExecutionResultMessage#toolName()} */
     private String toolName;
 
+    /** COMPRESS 摘要覆盖到的最后一条消息ID，其后的消息仍需原样发送 */
+    private Long compressedToId;
+
     /** 本条用户消息命中的知识库片段（仅查询时填充，不写入 DB：@JsonInclude(NON_EMPTY) 保护） */
     private List<RagSourceDto> ragSources;
 
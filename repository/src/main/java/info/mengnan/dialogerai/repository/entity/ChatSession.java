@@ -24,6 +24,15 @@ public class ChatSession {
      */
     private String title;
 
+    /**
+     * 最后一次压缩以来的累计 token 数（含压缩摘要本身）
+     */
+    private Integer tokenCount;
+
+    /**
+     * 最后一条 COMPRESS 消息ID，读取历史时只加载其后的消息
+     */
+    private Long lastCompressId;
 
     @TableField(fill = FieldFill.INSERT)
     private LocalDateTime createdAt;
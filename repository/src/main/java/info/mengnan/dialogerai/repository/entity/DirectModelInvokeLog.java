@@ -35,6 +35,20 @@ public class DirectModelInvokeLog {
 
     private String errorMessage;
 
+    /**
+     * SUCCESS / CLIENT_ERROR / CIRCUIT_OPEN / FAILED
+     */
+    private String outcome;
+
+    /**
+     * 实际调用模型的次数，包含重试与降级
+     */
+    private Integer attempts;
+
+    private Integer promptTokens;
+
+    private Integer responseTokens;
+
     private Long durationMs;
 
     @TableField(value = "created_at", fill = FieldFill.INSERT)
@@ -0,0 +1,30 @@
+package info.mengnan.dialogerai.repository.entity;
+
+import lombok.Data;
+
+/**
+ * 按调用来源聚合的直接模型调用统计，耗时分位数按最近排名法计算
+ */
+@Data
+public class DirectModelInvokeStats {
+
+    private String invokeSource;
+
+    private Long calls;
+
+    private Long failures;
+
+    private Long retriedCalls;
+
+    private Long avgMs;
+
+    private Long p50Ms;
+
+    private Long p95Ms;
+
+    private Long p99Ms;
+
+    private Long promptTokens;
+
+    private Long responseTokens;
+}
@@ -1,6 +1,7 @@
 package info.mengnan.dialogerai.repository.entity;
 
 import com.baomidou.mybatisplus.annotation.FieldFill;
+import com.baomidou.mybatisplus.annotation.FieldStrategy;
 import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
@@ -60,9 +61,24 @@ public class DocumentInfo {
     /** 已完成向量化的分块数（EMBEDDING 阶段滚动更新） */
     private Integer processedChunks;
 
+    /** 向量化吞吐，分块/秒（EMBEDDING 阶段滚动更新） */
+    private Double embeddingRate;
+
     /** 最近一次失败的错误原因 */
     private String errorMessage;
 
+    /** 持有处理租约的实例，只通过租约方法更新 */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private String leaseOwner;
+
+    /** 租约到期时间，处理中的实例定期续约，过期后可由其他实例接管 */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private LocalDateTime leaseExpiresAt;
+
+    /** 本次上传被接管恢复的次数 */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Integer resumeAttempts;
+
     /** 逻辑删除：0-未删除 1-已删除 */
     private Integer deleted;
 
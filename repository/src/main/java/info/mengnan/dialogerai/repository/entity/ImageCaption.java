@@ -0,0 +1,34 @@
+package info.mengnan.dialogerai.repository.entity;
+
+import com.baomidou.mybatisplus.annotation.FieldFill;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@TableName("image_caption")
+public class ImageCaption {
+
+    /**
+     * 图片内容的 SHA-256（十六进制）
+     */
+    @TableId(type = IdType.INPUT)
+    private String imageHash;
+
+    /**
+     * 生成描述的模型与提示词摘要，与 imageHash 组成主键
+     */
+    private String captionVersion;
+
+    /**
+     * 图生文模型生成的描述
+     */
+    private String caption;
+
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createdAt;
+}
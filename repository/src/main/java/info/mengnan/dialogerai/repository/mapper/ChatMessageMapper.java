@@ -30,6 +30,15 @@ public interface ChatMessageMapper extends BaseMapper<ChatMessage> {
         return selectList(qw);
     }
 
+    default List<ChatMessage> findChatAfter(String sessionId, Long fromId, List<String> role) {
+        LambdaQueryWrapper<ChatMessage> qw = new LambdaQueryWrapper<ChatMessage>()
+                .eq(ChatMessage::getSessionId, sessionId)
+                .gt(fromId != null, ChatMessage::getId, fromId)
+                .in(role != null, ChatMessage::getRole, role)
+                .orderByAsc(ChatMessage::getId);
+        return selectList(qw);
+    }
+
     default ChatMessage findLatestByRole(String sessionId, String role) {
         return selectOne(new LambdaQueryWrapper<ChatMessage>()
                 .eq(ChatMessage::getSessionId, sessionId)
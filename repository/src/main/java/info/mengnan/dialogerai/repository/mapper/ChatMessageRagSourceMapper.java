@@ -4,13 +4,26 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import info.mengnan.dialogerai.repository.entity.ChatMessageRagSource;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 import java.util.List;
 
 @Mapper
 public interface ChatMessageRagSourceMapper extends BaseMapper<ChatMessageRagSource> {
 
+    /**
+     * 多行插入，一条语句写入整批记录；created_at 使用数据库默认值
+     */
+    @Insert({"<script>",
+            "INSERT INTO chat_message_rag_source (message_id, session_id, kb_name, index_name, content) VALUES",
+            "<foreach collection='list' item='s' separator=','>",
+            "(#{s.messageId}, #{s.sessionId}, #{s.kbName}, #{s.indexName}, #{s.content})",
+            "</foreach>",
+            "</script>"})
+    int insertBatch(@Param("list") List<ChatMessageRagSource> list);
+
     default int linkToMessage(String sessionId, Long messageId) {
         return update(null, new LambdaUpdateWrapper<ChatMessageRagSource>()
                 .set(ChatMessageRagSource::getMessageId, messageId)
@@ -42,12 +55,24 @@ public interface ChatMessageRagSourceMapper extends BaseMapper<ChatMessageRagSou
                 .isNotNull(ChatMessageRagSource::getMessageId));
     }
 
+    default List<ChatMessageRagSource> findByMessageIds(List<Long> messageIds) {
+        if (messageIds == null || messageIds.isEmpty()) return List.of();
+        return selectList(new LambdaQueryWrapper<ChatMessageRagSource>()
+                .in(ChatMessageRagSource::getMessageId, messageIds));
+    }
+
     default List<ChatMessageRagSource> findPending(String sessionId) {
         return selectList(new LambdaQueryWrapper<ChatMessageRagSource>()
                 .eq(ChatMessageRagSource::getSessionId, sessionId)
                 .isNull(ChatMessageRagSource::getMessageId));
     }
 
+    default int deletePending(String sessionId) {
+        return delete(new LambdaQueryWrapper<ChatMessageRagSource>()
+                .eq(ChatMessageRagSource::getSessionId, sessionId)
+                .isNull(ChatMessageRagSource::getMessageId));
+    }
+
     default void deleteByMessageIdGreaterThanOrEqual(String sessionId, Long messageId) {
         update(null, new LambdaUpdateWrapper<ChatMessageRagSource>()
                 .set(ChatMessageRagSource::getMessageId, null)
@@ -1,9 +1,30 @@
 package info.mengnan.dialogerai.repository.mapper;
 
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import info.mengnan.dialogerai.repository.entity.ChatSession;
 import org.apache.ibatis.annotations.Mapper;
 
 @Mapper
 public interface ChatSessionMapper extends BaseMapper<ChatSession> {
+
+    default int addTokenCount(String sessionId, int delta) {
+        return update(null, new LambdaUpdateWrapper<ChatSession>()
+                .setSql("token_count = token_count + {0}", delta)
+                .eq(ChatSession::getChatSessionId, sessionId));
+    }
+
+    default int applyCompress(String sessionId, Long lastCompressId, int removedTokens, int summaryTokens) {
+        return update(null, new LambdaUpdateWrapper<ChatSession>()
+                .set(ChatSession::getLastCompressId, lastCompressId)
+                .setSql("token_count = GREATEST(token_count - {0}, 0) + {1}", removedTokens, summaryTokens)
+                .eq(ChatSession::getChatSessionId, sessionId));
+    }
+
+    default int updateCompress(String sessionId, Long lastCompressId, int tokenCount) {
+        return update(null, new LambdaUpdateWrapper<ChatSession>()
+                .set(ChatSession::getLastCompressId, lastCompressId)
+                .set(ChatSession::getTokenCount, tokenCount)
+                .eq(ChatSession::getChatSessionId, sessionId));
+    }
 }
@@ -2,8 +2,58 @@ package info.mengnan.dialogerai.repository.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import info.mengnan.dialogerai.repository.entity.DirectModelInvokeLog;
+import info.mengnan.dialogerai.repository.entity.DirectModelInvokeStats;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 @Mapper
 public interface DirectModelInvokeLogMapper extends BaseMapper<DirectModelInvokeLog> {
+
+    /**
+     * 多行插入，一条语句写入整批记录
+     */
+    @Insert({"<script>",
+            "INSERT INTO direct_model_invoke_log (invoke_source, template_name, prompt_text, model_name, model_provider,",
+            "response_text, success, error_message, outcome, attempts, prompt_tokens, response_tokens, duration_ms, created_at) VALUES",
+            "<foreach collection='list' item='l' separator=','>",
+            "(#{l.invokeSource}, #{l.templateName}, #{l.promptText}, #{l.modelName}, #{l.modelProvider},",
+            "#{l.responseText}, #{l.success}, #{l.errorMessage}, #{l.outcome}, #{l.attempts}, #{l.promptTokens},",
+            "#{l.responseTokens}, #{l.durationMs}, #{l.createdAt})",
+            "</foreach>",
+            "</script>"})
+    int insertBatch(@Param("list") List<DirectModelInvokeLog> list);
+
+    /**
+     * 按调用来源聚合 [from, to) 内的调用：次数、失败数、耗时分位数与 token 消耗。
+     * 分位数取来源内按耗时排序后排名不小于 ceil(n * p) 的最小值
+     */
+    @Select({"<script>",
+            "SELECT invoke_source,",
+            "       COUNT(*) AS calls,",
+            "       SUM(success = 0) AS failures,",
+            "       SUM(attempts > 1) AS retried_calls,",
+            "       ROUND(AVG(duration_ms)) AS avg_ms,",
+            "       MIN(CASE WHEN rn &gt;= CEIL(cnt * 0.50) THEN duration_ms END) AS p50_ms,",
+            "       MIN(CASE WHEN rn &gt;= CEIL(cnt * 0.95) THEN duration_ms END) AS p95_ms,",
+            "       MIN(CASE WHEN rn &gt;= CEIL(cnt * 0.99) THEN duration_ms END) AS p99_ms,",
+            "       COALESCE(SUM(prompt_tokens), 0) AS prompt_tokens,",
+            "       COALESCE(SUM(response_tokens), 0) AS response_tokens",
+            "FROM (SELECT invoke_source, success, attempts, duration_ms, prompt_tokens, response_tokens,",
+            "             ROW_NUMBER() OVER (PARTITION BY invoke_source ORDER BY duration_ms) AS rn,",
+            "             COUNT(*) OVER (PARTITION BY invoke_source) AS cnt",
+            "      FROM direct_model_invoke_log",
+            "      WHERE created_at &gt;= #{from} AND created_at &lt; #{to}",
+            "      <if test='invokeSource != null'>AND invoke_source = #{invokeSource}</if>",
+            "     ) t",
+            "GROUP BY invoke_source",
+            "ORDER BY calls DESC",
+            "</script>"})
+    List<DirectModelInvokeStats> aggregate(@Param("from") LocalDateTime from,
+                                           @Param("to") LocalDateTime to,
+                                           @Param("invokeSource") String invokeSource);
 }
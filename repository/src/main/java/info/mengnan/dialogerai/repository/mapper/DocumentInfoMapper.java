@@ -2,12 +2,15 @@ package info.mengnan.dialogerai.repository.mapper;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import info.mengnan.dialogerai.repository.entity.DocumentInfo;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -55,6 +58,70 @@ public interface DocumentInfoMapper extends BaseMapper<DocumentInfo> {
                 .eq(DocumentInfo::getDeleted, 0));
     }
 
+    default int updateEmbeddingProgress(Long id, int processedChunks, int totalChunks, double embeddingRate) {
+        return update(null, new LambdaUpdateWrapper<DocumentInfo>()
+                .set(DocumentInfo::getProcessedChunks, processedChunks)
+                .set(DocumentInfo::getTotalChunks, totalChunks)
+                .set(DocumentInfo::getEmbeddingRate, embeddingRate)
+                .eq(DocumentInfo::getId, id));
+    }
+
+    default int resetForReindex(DocumentInfo doc, Collection<String> settledStatuses) {
+        return update(null, new LambdaUpdateWrapper<DocumentInfo>()
+                .set(DocumentInfo::getStoredName, doc.getStoredName())
+                .set(DocumentInfo::getFileType, doc.getFileType())
+                .set(DocumentInfo::getDocType, doc.getDocType())
+                .set(DocumentInfo::getFileSize, doc.getFileSize())
+                .set(DocumentInfo::getCleaningConfig, doc.getCleaningConfig())
+                .set(DocumentInfo::getStatus, doc.getStatus())
+                .set(DocumentInfo::getProcessedChunks, 0)
+                .set(DocumentInfo::getEmbeddingRate, null)
+                .set(DocumentInfo::getErrorMessage, null)
+                .set(DocumentInfo::getLeaseOwner, doc.getLeaseOwner())
+                .set(DocumentInfo::getLeaseExpiresAt, doc.getLeaseExpiresAt())
+                .set(DocumentInfo::getResumeAttempts, 0)
+                .eq(DocumentInfo::getId, doc.getId())
+                .in(DocumentInfo::getStatus, settledStatuses));
+    }
+
+    default List<DocumentInfo> findResumable(Collection<String> statuses, LocalDateTime now, int limit) {
+        return selectList(new LambdaQueryWrapper<DocumentInfo>()
+                .in(DocumentInfo::getStatus, statuses)
+                .eq(DocumentInfo::getDeleted, 0)
+                .and(w -> w.isNull(DocumentInfo::getLeaseExpiresAt)
+                        .or().lt(DocumentInfo::getLeaseExpiresAt, now))
+                .orderByAsc(DocumentInfo::getId)
+                .last("LIMIT " + limit));
+    }
+
+    default int claimLease(Long id, Collection<String> statuses, String owner,
+                           LocalDateTime expiresAt, LocalDateTime now) {
+        return update(null, new LambdaUpdateWrapper<DocumentInfo>()
+                .set(DocumentInfo::getLeaseOwner, owner)
+                .set(DocumentInfo::getLeaseExpiresAt, expiresAt)
+                .setSql("resume_attempts = resume_attempts + 1")
+                .eq(DocumentInfo::getId, id)
+                .in(DocumentInfo::getStatus, statuses)
+                .eq(DocumentInfo::getDeleted, 0)
+                .and(w -> w.isNull(DocumentInfo::getLeaseExpiresAt)
+                        .or().lt(DocumentInfo::getLeaseExpiresAt, now)));
+    }
+
+    default int renewLeases(Collection<Long> ids, String owner, LocalDateTime expiresAt) {
+        return update(null, new LambdaUpdateWrapper<DocumentInfo>()
+                .set(DocumentInfo::getLeaseExpiresAt, expiresAt)
+                .in(DocumentInfo::getId, ids)
+                .eq(DocumentInfo::getLeaseOwner, owner));
+    }
+
+    default int releaseLease(Long id, String owner) {
+        return update(null, new LambdaUpdateWrapper<DocumentInfo>()
+                .set(DocumentInfo::getLeaseOwner, null)
+                .set(DocumentInfo::getLeaseExpiresAt, null)
+                .eq(DocumentInfo::getId, id)
+                .eq(DocumentInfo::getLeaseOwner, owner));
+    }
+
     default Map<Long, Long> countDocsByKbIds(List<Long> kbIds) {
         QueryWrapper<DocumentInfo> wrapper = new QueryWrapper<>();
         wrapper.in("kb_id", kbIds)
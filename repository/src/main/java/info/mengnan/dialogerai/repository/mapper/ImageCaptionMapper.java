@@ -0,0 +1,17 @@
+package info.mengnan.dialogerai.repository.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import info.mengnan.dialogerai.repository.entity.ImageCaption;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+@Mapper
+public interface ImageCaptionMapper extends BaseMapper<ImageCaption> {
+
+    @Insert("INSERT IGNORE INTO image_caption (image_hash, caption_version, caption) " +
+            "VALUES (#{imageHash}, #{captionVersion}, #{caption})")
+    int insertIgnore(@Param("imageHash") String imageHash,
+                     @Param("captionVersion") String captionVersion,
+                     @Param("caption") String caption);
+}
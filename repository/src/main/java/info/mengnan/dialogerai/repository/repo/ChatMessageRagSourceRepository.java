@@ -15,8 +15,16 @@ public class ChatMessageRagSourceRepository {
 
     private final ChatMessageRagSourceMapper mapper;
 
+    /**
+     * 单条 INSERT 语句的最大行数，避免超过 max_allowed_packet
+     */
+    private static final int INSERT_BATCH_SIZE = 200;
+
     public void batchInsert(List<ChatMessageRagSource> list) {
-        list.forEach(mapper::insert);
+        if (list == null || list.isEmpty()) return;
+        for (int from = 0; from < list.size(); from += INSERT_BATCH_SIZE) {
+            mapper.insertBatch(list.subList(from, Math.min(from + INSERT_BATCH_SIZE, list.size())));
+        }
     }
 
     public void linkToMessage(String sessionId, Long messageId) {
@@ -46,10 +54,19 @@ public class ChatMessageRagSourceRepository {
                 .collect(Collectors.groupingBy(ChatMessageRagSource::getMessageId));
     }
 
+    public Map<Long, List<ChatMessageRagSource>> findGroupedByMessageIds(List<Long> messageIds) {
+        return mapper.findByMessageIds(messageIds).stream()
+                .collect(Collectors.groupingBy(ChatMessageRagSource::getMessageId));
+    }
+
     public List<ChatMessageRagSource> findPending(String sessionId) {
         return mapper.findPending(sessionId);
     }
 
+    public void deletePending(String sessionId) {
+        mapper.deletePending(sessionId);
+    }
+
     public void deleteByMessageIdGreaterThanOrEqual(String sessionId, Long messageId) {
         mapper.deleteByMessageIdGreaterThanOrEqual(sessionId, messageId);
     }
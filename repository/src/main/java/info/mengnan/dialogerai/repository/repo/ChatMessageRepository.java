@@ -21,6 +21,17 @@ public class ChatMessageRepository {
         return mapper.findChatByRole(sessionId, null);
     }
 
+    public ChatMessage findById(Long id) {
+        return mapper.selectById(id);
+    }
+
+    /**
+     * 查询指定消息之后的消息，fromId 为 null 时查询全部
+     */
+    public List<ChatMessage> findChatAfter(String sessionId, Long fromId, List<String> roles) {
+        return mapper.findChatAfter(sessionId, fromId, roles);
+    }
+
     public void insert(ChatMessage entity) {
         mapper.insert(entity);
     }
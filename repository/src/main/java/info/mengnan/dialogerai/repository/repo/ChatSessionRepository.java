@@ -31,6 +31,28 @@ public class ChatSessionRepository {
                 .eq(ChatSession::getChatSessionId, sessionId));
     }
 
+    /**
+     * 原子累加会话 token 数
+     */
+    public void addTokenCount(String sessionId, int delta) {
+        mapper.addTokenCount(sessionId, delta);
+    }
+
+    /**
+     * 推进压缩水位：扣除被压缩消息的 token，加上摘要的 token
+     * 压缩期间新写入消息累加的 token 不受影响
+     */
+    public void applyCompress(String sessionId, Long lastCompressId, int removedTokens, int summaryTokens) {
+        mapper.applyCompress(sessionId, lastCompressId, removedTokens, summaryTokens);
+    }
+
+    /**
+     * 更新压缩水位与压缩后的 token 数
+     */
+    public void updateCompress(String sessionId, Long lastCompressId, int tokenCount) {
+        mapper.updateCompress(sessionId, lastCompressId, tokenCount);
+    }
+
     public ChatSession findLastByMemberId(Long memberId) {
         return mapper.selectOne(new LambdaQueryWrapper<ChatSession>()
                 .eq(ChatSession::getMemberId, memberId)
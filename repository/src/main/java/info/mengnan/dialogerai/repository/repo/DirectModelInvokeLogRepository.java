@@ -0,0 +1,36 @@
+package info.mengnan.dialogerai.repository.repo;
+
+import info.mengnan.dialogerai.repository.entity.DirectModelInvokeLog;
+import info.mengnan.dialogerai.repository.entity.DirectModelInvokeStats;
+import info.mengnan.dialogerai.repository.mapper.DirectModelInvokeLogMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class DirectModelInvokeLogRepository {
+
+    private final DirectModelInvokeLogMapper mapper;
+
+    /**
+     * 单条 INSERT 语句的最大行数，提示词与返回文本较长，避免超过 max_allowed_packet
+     */
+    private static final int INSERT_BATCH_SIZE = 100;
+
+    public void batchInsert(List<DirectModelInvokeLog> list) {
+        if (list == null || list.isEmpty()) return;
+        for (int from = 0; from < list.size(); from += INSERT_BATCH_SIZE) {
+            mapper.insertBatch(list.subList(from, Math.min(from + INSERT_BATCH_SIZE, list.size())));
+        }
+    }
+
+    /**
+     * @param invokeSource 为 null 时统计全部来源
+     */
+    public List<DirectModelInvokeStats> aggregate(LocalDateTime from, LocalDateTime to, String invokeSource) {
+        return mapper.aggregate(from, to, invokeSource);
+    }
+}
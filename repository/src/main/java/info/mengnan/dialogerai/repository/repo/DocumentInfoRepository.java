@@ -5,6 +5,8 @@ import info.mengnan.dialogerai.repository.mapper.DocumentInfoMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -22,6 +24,58 @@ public class DocumentInfoRepository {
         mapper.updateById(entity);
     }
 
+    /**
+     * 只更新向量化进度与吞吐，不先查询整行
+     * 流式入库时分块总数随处理增长，一并更新
+     */
+    public void updateEmbeddingProgress(Long id, int processedChunks, int totalChunks, double embeddingRate) {
+        mapper.updateEmbeddingProgress(id, processedChunks, totalChunks, embeddingRate);
+    }
+
+    /**
+     * 同名文档重新上传时复用原记录：替换文件信息并重置处理状态，清空上次的错误原因。
+     * 只重置仍处于已结束状态的记录，同一文档并发重新上传时只有一个成功
+     *
+     * @param settledStatuses 已处理结束的状态
+     * @return 是否重置成功
+     */
+    public boolean resetForReindex(DocumentInfo entity, Collection<String> settledStatuses) {
+        return mapper.resetForReindex(entity, settledStatuses) > 0;
+    }
+
+    /**
+     * 查询未处理结束且租约已过期（或从未持有租约）的文档，按 ID 升序
+     *
+     * @param statuses 未结束的状态
+     */
+    public List<DocumentInfo> findResumable(Collection<String> statuses, LocalDateTime now, int limit) {
+        return mapper.findResumable(statuses, now, limit);
+    }
+
+    /**
+     * 接管租约已过期的文档，并累加恢复次数；多个实例同时接管时只有一个成功
+     *
+     * @return 是否接管成功
+     */
+    public boolean claimLease(Long id, Collection<String> statuses, String owner,
+                              LocalDateTime expiresAt, LocalDateTime now) {
+        return mapper.claimLease(id, statuses, owner, expiresAt, now) > 0;
+    }
+
+    /**
+     * 为本实例持有的文档续约，已被其他实例接管的文档不受影响
+     */
+    public void renewLeases(Collection<Long> ids, String owner, LocalDateTime expiresAt) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        mapper.renewLeases(ids, owner, expiresAt);
+    }
+
+    public void releaseLease(Long id, String owner) {
+        mapper.releaseLease(id, owner);
+    }
+
     public DocumentInfo findById(Long id) {
         return mapper.selectById(id);
     }
@@ -0,0 +1,28 @@
+package info.mengnan.dialogerai.repository.repo;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import info.mengnan.dialogerai.repository.entity.ImageCaption;
+import info.mengnan.dialogerai.repository.mapper.ImageCaptionMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@RequiredArgsConstructor
+public class ImageCaptionRepository {
+
+    private final ImageCaptionMapper mapper;
+
+    public String findCaption(String imageHash, String captionVersion) {
+        ImageCaption row = mapper.selectOne(new LambdaQueryWrapper<ImageCaption>()
+                .eq(ImageCaption::getImageHash, imageHash)
+                .eq(ImageCaption::getCaptionVersion, captionVersion));
+        return row != null ? row.getCaption() : null;
+    }
+
+    /**
+     * 同一图片、同一版本并发写入时保留先写入的描述
+     */
+    public void save(String imageHash, String captionVersion, String caption) {
+        mapper.insertIgnore(imageHash, captionVersion, caption);
+    }
+}
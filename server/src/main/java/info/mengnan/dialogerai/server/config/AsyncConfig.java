@@ -4,12 +4,16 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -30,21 +34,136 @@ public class AsyncConfig implements WebMvcConfigurer {
     }
 
     /**
-     * 文档处理专用线程池。
-     * 核心线程2个保证并发，最大4个应对突发，队列50控制背压。
+     * 对话检索时各知识库并行检索的线程池。
+     * 与 ragExecutor 分开，检索线程不会与等待检索结果的线程争用；超时的检索会被中断，
+     * 队列满时直接拒绝，该知识库本轮不返回结果，不由调用线程执行以免超出检索期限。
      */
-    @Bean("docProcessPool")
-    public Executor docProcessExecutor() {
+    @Bean(name = "kbSearchPool", destroyMethod = "shutdownNow")
+    public ExecutorService kbSearchExecutor() {
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        return new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(256),
+                new CustomizableThreadFactory("kb-search-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 文档向量化批次线程池。
+     * 与文档处理线程分开，文档线程等待批次完成时不会占满自身的线程；队列满时由提交线程执行。
+     */
+    @Bean("embeddingPool")
+    public Executor embeddingExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(2);
-        executor.setMaxPoolSize(4);
-        executor.setQueueCapacity(50);
-        executor.setThreadNamePrefix("doc-process-");
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(16);
+        executor.setQueueCapacity(32);
+        executor.setThreadNamePrefix("embedding-");
         executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
         executor.initialize();
         return executor;
     }
 
+    /**
+     * ES 批量写入线程池。
+     * 单个文档同时进行的 bulk 请求数由 elasticsearch.bulk.concurrency 控制；队列满时由提交线程执行。
+     */
+    @Bean("esBulkPool")
+    public Executor esBulkExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(16);
+        executor.setThreadNamePrefix("es-bulk-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 文档图片识别线程池。
+     * 单个文档的并发由 image-caption.max-concurrency 控制，这里限制所有文档合计的图生文请求数，
+     * 同一 Provider 的请求数另由 model-resilience.vision-concurrency 限制。
+     */
+    @Bean("imageCaptionPool")
+    public Executor imageCaptionExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(16);
+        executor.setQueueCapacity(64);
+        executor.setThreadNamePrefix("image-caption-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 直接模型调用的重试线程池。
+     * 退避到期后的重试在这里执行，队列满时拒绝，该次调用直接失败。
+     */
+    @Bean("modelRetryPool")
+    public Executor modelRetryExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(64);
+        executor.setThreadNamePrefix("model-retry-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 聊天历史压缩专用调度器。
+     * 压缩需要调用 LLM，单独的少量线程避免占用请求与文档处理线程。
+     */
+    @Bean("compactionScheduler")
+    public ThreadPoolTaskScheduler compactionScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setThreadNamePrefix("chat-compaction-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    /**
+     * 知识库构建进度延迟写回调度器。
+     */
+    @Bean("progressFlushScheduler")
+    public ThreadPoolTaskScheduler progressFlushScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("progress-flush-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    /**
+     * 文档处理租约续约与中断文档恢复扫描调度器。
+     */
+    @Bean("ingestionLeaseScheduler")
+    public ThreadPoolTaskScheduler ingestionLeaseScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setThreadNamePrefix("ingestion-lease-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    /**
+     * 直接模型调用记录批量写入调度器。
+     */
+    @Bean("invokeLogScheduler")
+    public ThreadPoolTaskScheduler invokeLogScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("invoke-log-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.initialize();
+        return scheduler;
+    }
+
     @Override
     public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
@@ -1,7 +1,9 @@
 package info.mengnan.dialogerai.server.config;
 
+import info.mengnan.dialogerai.server.interceptor.MemberRoleProvider;
 import info.mengnan.dialogerai.server.interceptor.OpenAiApiKeyInterceptor;
 import cn.dev33.satoken.interceptor.SaInterceptor;
+import cn.dev33.satoken.router.SaRouter;
 import cn.dev33.satoken.stp.StpUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
@@ -21,8 +23,11 @@ public class InterceptorConfig implements WebMvcConfigurer {
                 .addPathPatterns("/v1/chat/completions")
                 .order(1);
 
-        // 登录检查
-        registry.addInterceptor(new SaInterceptor(handler -> StpUtil.checkLogin()))
+        // 登录检查，运行时指标只对管理员开放
+        registry.addInterceptor(new SaInterceptor(handler -> {
+                    StpUtil.checkLogin();
+                    SaRouter.match("/api/metrics/**").check(() -> StpUtil.checkRole(MemberRoleProvider.ADMIN));
+                }))
                 .addPathPatterns("/api/**")
                 .excludePathPatterns("/api/member/login", "/api/member/register")
                 .order(2);
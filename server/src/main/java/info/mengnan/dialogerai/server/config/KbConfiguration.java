@@ -1,22 +1,38 @@
 package info.mengnan.dialogerai.server.config;
 
+import info.mengnan.dialogerai.kb.config.ElasticsearchProperties;
 import info.mengnan.dialogerai.kb.core.DynamicEmbeddingStoreRegistry;
+import info.mengnan.dialogerai.kb.core.ElasticsearchBulkWriter;
+import info.mengnan.dialogerai.kb.core.ImageCaptionCache;
+import info.mengnan.dialogerai.kb.core.ImageCaptioner;
+import info.mengnan.dialogerai.rag.embedding.EmbeddingPipeline;
+import info.mengnan.dialogerai.rag.embedding.EmbeddingPipelineProperties;
 import info.mengnan.dialogerai.rag.service.DirectModelInvoker;
+import info.mengnan.dialogerai.repository.repo.ImageCaptionRepository;
+import info.mengnan.dialogerai.server.core.DbImageCaptionCache;
 import info.mengnan.dialogerai.server.core.DocumentEmbedding;
+import info.mengnan.dialogerai.server.core.ModelImageTextGenerator;
+import info.mengnan.dialogerai.server.core.TokenCounting;
 import info.mengnan.dialogerai.kb.core.DocumentImageExtractor;
 import info.mengnan.dialogerai.kb.core.ImageTextGenerator;
 import info.mengnan.dialogerai.kb.core.SequentialDocumentExtractor;
+import info.mengnan.dialogerai.kb.core.StreamingDocumentReader;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.Executor;
+
 @Slf4j
 @Configuration
 public class KbConfiguration {
 
     @Bean
     public ImageTextGenerator imageTextGenerator(DirectModelInvoker directModelInvoker) {
-        return directModelInvoker::imageToText;
+        return new ModelImageTextGenerator(directModelInvoker);
     }
 
     @Bean
@@ -25,13 +41,53 @@ public class KbConfiguration {
     }
 
     @Bean
-    public SequentialDocumentExtractor sequentialDocumentExtractor(ImageTextGenerator imageTextGenerator) {
-        return new SequentialDocumentExtractor(imageTextGenerator);
+    public ImageCaptionCache imageCaptionCache(ImageCaptionRepository imageCaptionRepository) {
+        return new DbImageCaptionCache(imageCaptionRepository);
+    }
+
+    @Bean
+    public ImageCaptioner imageCaptioner(ImageTextGenerator imageTextGenerator,
+                                         ImageCaptionCache imageCaptionCache,
+                                         @Qualifier("imageCaptionPool") Executor imageCaptionPool,
+                                         @Value("${image-caption.max-concurrency:4}") int maxConcurrency,
+                                         @Value("${image-caption.images-per-request:1}") int imagesPerRequest) {
+        return new ImageCaptioner(imageTextGenerator, imageCaptionCache, imageCaptionPool, maxConcurrency,
+                imagesPerRequest);
+    }
+
+    @Bean
+    public SequentialDocumentExtractor sequentialDocumentExtractor(ImageCaptioner imageCaptioner) {
+        return new SequentialDocumentExtractor(imageCaptioner);
+    }
+
+    @Bean
+    public StreamingDocumentReader streamingDocumentReader(SequentialDocumentExtractor sequentialDocumentExtractor) {
+        return new StreamingDocumentReader(sequentialDocumentExtractor);
+    }
+
+    @Bean
+    public DocumentEmbedding documentEmbedding(DynamicEmbeddingStoreRegistry embeddingStoreRegistry,
+                                               TokenCounting tokenCounting) {
+        return new DocumentEmbedding(embeddingStoreRegistry, tokenCounting);
+    }
+
+    @Bean
+    public ElasticsearchBulkWriter elasticsearchBulkWriter(DynamicEmbeddingStoreRegistry embeddingStoreRegistry,
+                                                           ElasticsearchProperties elasticsearchProperties,
+                                                           @Qualifier("esBulkPool") Executor esBulkPool) {
+        return new ElasticsearchBulkWriter(embeddingStoreRegistry, elasticsearchProperties.getBulk(), esBulkPool);
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "embedding.pipeline")
+    public EmbeddingPipelineProperties embeddingPipelineProperties() {
+        return new EmbeddingPipelineProperties();
     }
 
     @Bean
-    public DocumentEmbedding documentEmbedding(DynamicEmbeddingStoreRegistry embeddingStoreRegistry) {
-        return new DocumentEmbedding(embeddingStoreRegistry);
+    public EmbeddingPipeline embeddingPipeline(EmbeddingPipelineProperties properties,
+                                               @Qualifier("embeddingPool") Executor embeddingPool) {
+        return new EmbeddingPipeline(properties, embeddingPool);
     }
 
 }
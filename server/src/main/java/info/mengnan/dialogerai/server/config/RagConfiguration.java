@@ -5,14 +5,21 @@ import com.alibaba.dashscope.tokenizers.Tokenizer;
 import dev.langchain4j.store.memory.chat.ChatMemoryStore;
 import info.mengnan.dialogerai.rag.ChatService;
 import info.mengnan.dialogerai.rag.config.DefaultModelConfig;
+import info.mengnan.dialogerai.rag.config.ModelResilienceProperties;
 import info.mengnan.dialogerai.kb.config.ElasticsearchProperties;
+import info.mengnan.dialogerai.rag.container.assemble.AssembledComponentsCache;
 import info.mengnan.dialogerai.rag.container.assemble.AssembledModelsConstruct;
 import info.mengnan.dialogerai.kb.core.DynamicEmbeddingStoreRegistry;
 import info.mengnan.dialogerai.rag.container.factory.CapableModelFactory;
+import info.mengnan.dialogerai.rag.container.factory.ModelRegistry;
 import info.mengnan.dialogerai.rag.container.factory.UniversalModelFactory;
+import info.mengnan.dialogerai.rag.embedding.EmbeddingCache;
 import info.mengnan.dialogerai.rag.service.PromptTemplateManager;
 import info.mengnan.dialogerai.rag.injector.RagSourceStore;
+import info.mengnan.dialogerai.rag.retriever.QueryRoutingMetrics;
+import info.mengnan.dialogerai.rag.service.DirectInvokeRecorder;
 import info.mengnan.dialogerai.rag.service.DirectModelInvoker;
+import info.mengnan.dialogerai.rag.service.ModelResilience;
 import info.mengnan.dialogerai.rag.service.SingleModelConfigProvider;
 import info.mengnan.dialogerai.server.service.ModelConfigService;
 import lombok.extern.slf4j.Slf4j;
@@ -21,7 +28,9 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 
 /**
@@ -41,23 +50,43 @@ public class RagConfiguration {
         return new ElasticsearchProperties();
     }
 
+    /**
+     * 创建EmbeddingCache
+     * 查询向量最多缓存 10000 条，文档入库分段另缓存 10000 条，1 小时过期
+     */
+    @Bean
+    public EmbeddingCache embeddingCache() {
+        log.info("Creating EmbeddingCache...");
+        return new EmbeddingCache(10_000, 10_000, Duration.ofHours(1));
+    }
+
+    /**
+     * 创建ModelRegistry
+     * 模型实例空闲 30 分钟后释放
+     */
+    @Bean
+    public ModelRegistry modelRegistry() {
+        log.info("Creating ModelRegistry...");
+        return new ModelRegistry(Duration.ofMinutes(30));
+    }
+
     /**
      * 创建CapableModelFactory
      */
     @Bean
-    public UniversalModelFactory createModelFactory() {
+    public UniversalModelFactory createModelFactory(EmbeddingCache embeddingCache, ModelRegistry modelRegistry) {
         log.info("Creating CapableModelFactory...");
-        return new CapableModelFactory();
+        return new CapableModelFactory(embeddingCache, modelRegistry);
     }
 
     /**
      * 创建 DynamicEmbeddingStoreRegistry
      */
-    @Bean
+    @Bean(destroyMethod = "close")
     public DynamicEmbeddingStoreRegistry dynamicEmbeddingStoreRegistry(
             ElasticsearchProperties elasticsearchProperties) {
         log.info("Creating DynamicEmbeddingStoreRegistry...");
-        // 注册销毁回调
+        // 注册销毁回调，关闭共享的 RestClient
         return new DynamicEmbeddingStoreRegistry(elasticsearchProperties);
     }
 
@@ -70,6 +99,23 @@ public class RagConfiguration {
         return new AssembledModelsConstruct();
     }
 
+    /**
+     * 创建AssembledComponentsCache
+     */
+    @Bean
+    public AssembledComponentsCache assembledComponentsCache() {
+        log.info("Creating AssembledComponentsCache...");
+        return new AssembledComponentsCache();
+    }
+
+    /**
+     * 创建QueryRoutingMetrics
+     */
+    @Bean
+    public QueryRoutingMetrics queryRoutingMetrics() {
+        return new QueryRoutingMetrics();
+    }
+
     /**
      * 创建ChatService
      */
@@ -79,14 +125,20 @@ public class RagConfiguration {
                                    DynamicEmbeddingStoreRegistry embeddingStoreRegistry,
                                    ModelConfigService modelConfigService,
                                    RagSourceStore ragSourceStore,
-                                   @Qualifier("ragExecutor") Executor ragExecutor) {
+                                   @Qualifier("ragExecutor") Executor ragExecutor,
+                                   @Qualifier("kbSearchPool") ExecutorService kbSearchPool,
+                                   AssembledComponentsCache assembledComponentsCache,
+                                   QueryRoutingMetrics queryRoutingMetrics) {
         log.info("Creating ChatService...");
         return new ChatService(chatMemoryStore,
                 modelFactory,
                 embeddingStoreRegistry,
                 modelConfigService::loadModelConfigs,
                 ragSourceStore,
-                ragExecutor);
+                ragExecutor,
+                kbSearchPool,
+                assembledComponentsCache,
+                queryRoutingMetrics);
     }
 
     /**
@@ -108,12 +160,30 @@ public class RagConfiguration {
         return new PromptTemplateManager();
     }
 
+    /**
+     * 创建直接模型调用的熔断、重试与降级配置
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "model-resilience")
+    public ModelResilienceProperties modelResilienceProperties() {
+        return new ModelResilienceProperties();
+    }
+
+    @Bean
+    public ModelResilience modelResilience(ModelResilienceProperties modelResilienceProperties,
+                                           @Qualifier("modelRetryPool") Executor modelRetryPool) {
+        return new ModelResilience(modelResilienceProperties, modelRetryPool);
+    }
+
     @Bean
     public DirectModelInvoker directModelInvoker(UniversalModelFactory modelFactory,
                                                  ModelConfigService modelConfigService,
                                                  DefaultModelConfig modelConfig,
-                                                 PromptTemplateManager promptTemplateManager) {
-        return new DirectModelInvoker(modelFactory, modelConfigService::findModel, promptTemplateManager, modelConfig);
+                                                 PromptTemplateManager promptTemplateManager,
+                                                 ModelResilience modelResilience,
+                                                 DirectInvokeRecorder directInvokeRecorder) {
+        return new DirectModelInvoker(modelFactory, modelConfigService::findModel, promptTemplateManager, modelConfig,
+                modelResilience, directInvokeRecorder);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package info.mengnan.dialogerai.server.config;
+
+import info.mengnan.dialogerai.tool.Tools;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 动态工具配置
+ * 全局共享一个 GraalVM Engine，Context 池按用户隔离
+ */
+@Configuration
+public class ToolConfiguration {
+
+    @Bean(destroyMethod = "shutdown")
+    public Tools tools() {
+        return new Tools();
+    }
+}
@@ -3,6 +3,7 @@ package info.mengnan.dialogerai.server.controller;
 import info.mengnan.dialogerai.repository.entity.AsyncTask;
 import info.mengnan.dialogerai.server.param.R;
 import info.mengnan.dialogerai.server.service.AsyncTaskService;
+import info.mengnan.dialogerai.server.service.KnowledgeBaseBuildService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -15,10 +16,15 @@ import org.springframework.web.bind.annotation.RestController;
 public class AsyncTaskController {
 
     private final AsyncTaskService asyncTaskService;
+    private final KnowledgeBaseBuildService knowledgeBaseBuildService;
 
     @GetMapping("/{taskId}")
     public R getTask(@PathVariable("taskId") String taskId) {
-        AsyncTask task = asyncTaskService.getTask(taskId);
+        // 构建中的知识库任务直接读取内存进度，数据库中的进度按间隔写回
+        AsyncTask task = knowledgeBaseBuildService.liveTask(taskId);
+        if (task == null) {
+            task = asyncTaskService.getTask(taskId);
+        }
         if (task == null) {
             return R.error("任务不存在");
         }
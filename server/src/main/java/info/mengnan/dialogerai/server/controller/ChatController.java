@@ -141,6 +141,7 @@ public class ChatController {
 
                 // 调用 ChatService 的流式方法
                 chatService.chatStreaming(
+                        chatRequest.getOptionId(),
                         chatRequest.getMemberId(),
                         chatRequest.getSessionId(),
                         chatRequest.getMessage(),
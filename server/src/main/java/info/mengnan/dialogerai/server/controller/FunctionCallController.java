@@ -86,6 +86,7 @@ public class FunctionCallController {
         entity.setGeneratePrompt(request.getGeneratePrompt());
 
         toolDescriptionService.insert(entity);
+        toolAdapterService.invalidate(memberId);
         log.info("User {} created function call tool: {}, id={}", memberId, entity.getName(), entity.getId());
 
         return R.ok(entity);
@@ -174,6 +175,7 @@ public class FunctionCallController {
         tool.setGeneratePrompt(request.getGeneratePrompt());
 
         toolDescriptionService.update(tool);
+        toolAdapterService.invalidate(memberId);
         return R.ok(tool);
     }
 
@@ -193,6 +195,7 @@ public class FunctionCallController {
         }
 
         toolDescriptionService.deleteById(id);
+        toolAdapterService.invalidate(memberId);
         log.info("User {} deleted function call tool: {} id={}", memberId, tool.getName(), id);
 
         return R.ok();
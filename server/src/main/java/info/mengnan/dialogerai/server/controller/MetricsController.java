@@ -0,0 +1,133 @@
+package info.mengnan.dialogerai.server.controller;
+
+import info.mengnan.dialogerai.rag.container.assemble.AssembledComponentsCache;
+import info.mengnan.dialogerai.rag.container.factory.ModelRegistry;
+import info.mengnan.dialogerai.rag.embedding.EmbeddingCache;
+import info.mengnan.dialogerai.rag.retriever.QueryRoutingMetrics;
+import info.mengnan.dialogerai.rag.service.ModelResilience;
+import info.mengnan.dialogerai.server.core.ChatHistoryCompactor;
+import info.mengnan.dialogerai.server.messaging.document.IngestionRecovery;
+import info.mengnan.dialogerai.server.messaging.document.IngestionScheduler;
+import info.mengnan.dialogerai.repository.repo.DirectModelInvokeLogRepository;
+import info.mengnan.dialogerai.server.param.R;
+import info.mengnan.dialogerai.server.store.DbDirectInvokeRecorder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+
+/**
+ * 运行时指标
+ * 暴露各类缓存、队列的命中率与耗时统计，便于排查性能问题
+ */
+@RestController
+@RequestMapping("/api/metrics")
+@RequiredArgsConstructor
+public class MetricsController {
+
+    private final AssembledComponentsCache assembledComponentsCache;
+    private final ChatHistoryCompactor chatHistoryCompactor;
+    private final EmbeddingCache embeddingCache;
+    private final QueryRoutingMetrics queryRoutingMetrics;
+    private final IngestionScheduler ingestionScheduler;
+    private final IngestionRecovery ingestionRecovery;
+    private final ModelRegistry modelRegistry;
+    private final ModelResilience modelResilience;
+    private final DbDirectInvokeRecorder directInvokeRecorder;
+    private final DirectModelInvokeLogRepository directModelInvokeLogRepository;
+
+    /**
+     * 对话组件缓存统计
+     */
+    @GetMapping("/assistantCache")
+    public R assistantCache() {
+        return R.ok(assembledComponentsCache.stats());
+    }
+
+    /**
+     * 聊天历史后台压缩队列统计
+     */
+    @GetMapping("/compaction")
+    public R compaction() {
+        return R.ok(chatHistoryCompactor.stats());
+    }
+
+    /**
+     * 向量缓存统计
+     */
+    @GetMapping("/embeddingCache")
+    public R embeddingCache() {
+        return R.ok(embeddingCache.stats());
+    }
+
+    /**
+     * 知识库路由各层级决策统计
+     */
+    @GetMapping("/queryRouting")
+    public R queryRouting() {
+        return R.ok(queryRoutingMetrics.stats());
+    }
+
+    /**
+     * 文档处理各线程池排队深度与各阶段排队、执行耗时
+     */
+    @GetMapping("/ingestion")
+    public R ingestion() {
+        return R.ok(ingestionScheduler.stats());
+    }
+
+    /**
+     * 本实例持有的文档租约与中断文档恢复次数
+     */
+    @GetMapping("/recovery")
+    public R recovery() {
+        return R.ok(ingestionRecovery.stats());
+    }
+
+    /**
+     * 模型实例注册表命中率与实例数
+     */
+    @GetMapping("/modelRegistry")
+    public R modelRegistry() {
+        return R.ok(modelRegistry.stats());
+    }
+
+    /**
+     * 直接模型调用各模型的熔断状态、失败率与重试次数
+     */
+    @GetMapping("/modelBreakers")
+    public R modelBreakers() {
+        return R.ok(modelResilience.stats());
+    }
+
+    /**
+     * 直接模型调用记录写入队列统计
+     */
+    @GetMapping("/invokeLog")
+    public R invokeLog() {
+        return R.ok(directInvokeRecorder.stats());
+    }
+
+    /**
+     * 按调用来源聚合直接模型调用：耗时 p50/p95/p99 与 token 消耗
+     *
+     * @param from   开始时间，默认 24 小时前
+     * @param to     结束时间，默认当前时间
+     * @param source 调用来源，为空时统计全部来源
+     */
+    @GetMapping("/directInvokes")
+    public R directInvokes(@RequestParam(name = "from", required = false)
+                           @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                           @RequestParam(name = "to", required = false)
+                           @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                           @RequestParam(name = "source", required = false) String source) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        return R.ok(directModelInvokeLogRepository.aggregate(start, end,
+                source != null && !source.isBlank() ? source : null));
+    }
+}
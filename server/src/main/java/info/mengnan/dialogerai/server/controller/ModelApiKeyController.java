@@ -2,6 +2,8 @@ package info.mengnan.dialogerai.server.controller;
 
 import cn.dev33.satoken.stp.StpUtil;
 import info.mengnan.dialogerai.common.util.JSONUtil;
+import info.mengnan.dialogerai.rag.container.assemble.AssembledComponentsCache;
+import info.mengnan.dialogerai.rag.container.factory.ModelRegistry;
 import info.mengnan.dialogerai.repository.entity.ChatApiKey;
 import info.mengnan.dialogerai.repository.repo.ChatApiKeyRepository;
 import info.mengnan.dialogerai.server.param.R;
@@ -24,6 +26,8 @@ import java.util.List;
 public class ModelApiKeyController {
 
     private final ChatApiKeyRepository chatApiKeyService;
+    private final AssembledComponentsCache assembledComponentsCache;
+    private final ModelRegistry modelRegistry;
 
     /**
      * 获取当前用户的模型列表
@@ -69,6 +73,7 @@ public class ModelApiKeyController {
         entity.setApiKey(apiKey);
 
         chatApiKeyService.insert(entity);
+        assembledComponentsCache.invalidateMember(memberId);
         log.info("User {} created Model API Key: {} for model {}", memberId, entity.getId(), modelName);
 
         ModelApiKeyResponse response = new ModelApiKeyResponse();
@@ -93,6 +98,8 @@ public class ModelApiKeyController {
         }
 
         chatApiKeyService.deleteById(id);
+        assembledComponentsCache.invalidateMember(memberId);
+        modelRegistry.invalidate(chatApiKey.getModelProvider(), chatApiKey.getModelName(), chatApiKey.getApiKey());
         return R.ok();
     }
 
@@ -98,7 +98,8 @@ public class OpenAiCompatibleController {
                         StreamingResponseHandler handler = new OpenAiStreamingResponseHandler(
                                 sink, requestId, timestamp, model);
 
-                        chatService.chatStreaming(chatRequest.getMemberId(),
+                        chatService.chatStreaming(chatRequest.getOptionId(),
+                                chatRequest.getMemberId(),
                                 chatRequest.getSessionId(),
                                 chatRequest.getMessage(),
                                 handler,
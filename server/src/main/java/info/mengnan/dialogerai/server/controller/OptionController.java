@@ -1,6 +1,7 @@
 package info.mengnan.dialogerai.server.controller;
 
 import cn.dev33.satoken.stp.StpUtil;
+import info.mengnan.dialogerai.rag.container.assemble.AssembledComponentsCache;
 import info.mengnan.dialogerai.repository.entity.ChatOption;
 import info.mengnan.dialogerai.repository.repo.ChatOptionRepository;
 import info.mengnan.dialogerai.server.param.R;
@@ -17,6 +18,7 @@ import java.util.List;
 public class OptionController {
 
     private final ChatOptionRepository chatOptionService;
+    private final AssembledComponentsCache assembledComponentsCache;
 
     @GetMapping("/list")
     public R list() {
@@ -47,6 +49,7 @@ public class OptionController {
         option.setId(id);
         option.setMemberId(memberId);
         chatOptionService.update(option);
+        assembledComponentsCache.invalidateOption(id);
         return R.ok(option);
     }
 
@@ -61,6 +64,7 @@ public class OptionController {
             return R.unauthorized();
 
         chatOptionService.deleteById(id);
+        assembledComponentsCache.invalidateOption(id);
         return R.ok();
     }
 }
@@ -0,0 +1,252 @@
+package info.mengnan.dialogerai.server.core;
+
+import info.mengnan.dialogerai.repository.entity.ChatMessage;
+import info.mengnan.dialogerai.repository.entity.ChatMessageExtras;
+import info.mengnan.dialogerai.repository.entity.ChatSession;
+import info.mengnan.dialogerai.repository.repo.ChatMessageRepository;
+import info.mengnan.dialogerai.repository.repo.ChatSessionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static info.mengnan.dialogerai.common.param.MessageRole.*;
+
+/**
+ * 聊天历史后台压缩
+ * 会话累计 token 超过阈值后提交压缩任务，由独立线程调用 LLM 生成摘要，不阻塞回复的持久化。
+ * 每个会话同一时刻最多一个任务，排队或执行期间的重复提交会被合并。
+ * <p>
+ * 压缩水位：最后一条 COMPRESS 摘要及其覆盖到的消息ID（记录在摘要的 extras 中），
+ * 当前有效历史 = 摘要 + 覆盖点之后的非 COMPRESS 消息
+ */
+@Slf4j
+@Component
+public class ChatHistoryCompactor {
+
+    /**
+     * 累计 token 超过该值时触发压缩
+     */
+    public static final int COMPRESS_TOKEN_THRESHOLD = 1500;
+
+    /**
+     * 参与 token 累计与压缩的消息角色
+     */
+    public static final List<String> COMPRESSIBLE_ROLES = List.of(USER.n(), ASSISTANT.n(), COMPRESS.n(), TOOL.n());
+
+    /**
+     * 提交后延迟执行，合并短时间内的连续触发
+     */
+    private static final long DEBOUNCE_MILLIS = 2000;
+
+    private final ChatHistoryCompressing compressing;
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatSessionRepository chatSessionRepository;
+    private final TokenCounting tokenCounting;
+    private final TaskScheduler scheduler;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public ChatHistoryCompactor(ChatHistoryCompressing compressing,
+                                ChatMessageRepository chatMessageRepository,
+                                ChatSessionRepository chatSessionRepository,
+                                TokenCounting tokenCounting,
+                                @Qualifier("compactionScheduler") TaskScheduler scheduler) {
+        this.compressing = compressing;
+        this.chatMessageRepository = chatMessageRepository;
+        this.chatSessionRepository = chatSessionRepository;
+        this.tokenCounting = tokenCounting;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 提交会话压缩任务，同一会话已在队列或执行中时只标记需要重新检查
+     */
+    public void submit(String sessionId) {
+        submitted.increment();
+        boolean[] created = {false};
+        jobs.compute(sessionId, (k, job) -> {
+            if (job == null) {
+                created[0] = true;
+                return new Job();
+            }
+            job.dirty = true;
+            return job;
+        });
+        if (!created[0]) {
+            coalesced.increment();
+            return;
+        }
+        try {
+            scheduler.schedule(() -> run(sessionId), Instant.now().plusMillis(DEBOUNCE_MILLIS));
+        } catch (TaskRejectedException e) {
+            jobs.remove(sessionId);
+            log.warn("Compaction task rejected for session {}", sessionId, e);
+        }
+    }
+
+    private void run(String sessionId) {
+        running.incrementAndGet();
+        try {
+            do {
+                Job job = jobs.get(sessionId);
+                if (job != null) {
+                    job.dirty = false;
+                }
+                compactQuietly(sessionId);
+                // 执行期间又有提交时再检查一次，否则移除任务
+            } while (jobs.computeIfPresent(sessionId, (k, job) -> job.dirty ? job : null) != null);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    private void compactQuietly(String sessionId) {
+        long start = System.nanoTime();
+        try {
+            if (compact(sessionId)) {
+                long elapsed = System.nanoTime() - start;
+                completed.increment();
+                latencyNanos.add(elapsed);
+                maxLatencyNanos.accumulateAndGet(elapsed, Math::max);
+            }
+        } catch (Exception e) {
+            failed.increment();
+            log.error("Failed to compact chat history for session {}", sessionId, e);
+        }
+    }
+
+    /**
+     * 压缩当前有效历史，并推进压缩水位
+     *
+     * @return 是否执行了压缩
+     */
+    private boolean compact(String sessionId) {
+        ChatSession session = chatSessionRepository.findBySessionId(sessionId);
+        if (session == null || session.getTokenCount() == null
+                || session.getTokenCount() <= COMPRESS_TOKEN_THRESHOLD) {
+            return false;
+        }
+
+        List<ChatMessage> chats = activeHistory(sessionId, session, COMPRESSIBLE_ROLES);
+        if (chats.size() < 2) {
+            return false;
+        }
+        String compressRes = compressing.compressHistory(chats);
+        ChatMessage summaryMessage = saveCompressedSummary(sessionId, compressRes, chats);
+
+        int removedTokens = 0;
+        for (ChatMessage chat : chats) {
+            removedTokens += tokenCounting.estimateTokenCount(chat.getContent());
+        }
+        chatSessionRepository.applyCompress(sessionId, summaryMessage.getId(), removedTokens,
+                tokenCounting.estimateTokenCount(summaryMessage.getContent()));
+        return true;
+    }
+
+    private ChatMessage saveCompressedSummary(String sessionId, String summary, List<ChatMessage> originalMessages) {
+        ChatMessage lastMsg = originalMessages.get(originalMessages.size() - 1);
+
+        ChatMessage summaryMessage = new ChatMessage();
+        summaryMessage.setSessionId(sessionId);
+        summaryMessage.setRole(COMPRESS.n());
+
+        String summaryWithMeta = String.format("[历史对话摘要 - 压缩了 %d 条消息]\n%s", originalMessages.size(), summary);
+        summaryMessage.setContent(summaryWithMeta);
+
+        // 压缩在后台执行，期间写入的消息 ID 小于摘要，需记录覆盖点以免被跳过
+        ChatMessageExtras extras = new ChatMessageExtras();
+        extras.setCompressedToId(lastMsg.getId());
+        summaryMessage.setExtras(extras);
+
+        summaryMessage.setCreatedAt(lastMsg.getCreatedAt());
+        chatMessageRepository.insert(summaryMessage);
+        return summaryMessage;
+    }
+
+    /**
+     * 会话当前有效历史：最后一条摘要在前，其后是覆盖点之后的非 COMPRESS 消息
+     *
+     * @param session 会话，为 null 或未记录水位时回退为查询最后一条 COMPRESS 消息
+     * @param roles   要查询的消息角色，null 表示全部
+     */
+    public List<ChatMessage> activeHistory(String sessionId, ChatSession session, List<String> roles) {
+        ChatMessage summary = session != null && session.getLastCompressId() != null
+                ? chatMessageRepository.findById(session.getLastCompressId())
+                : chatMessageRepository.findLatest(sessionId, COMPRESS.n());
+        return activeHistory(sessionId, summary, roles);
+    }
+
+    private List<ChatMessage> activeHistory(String sessionId, ChatMessage summary, List<String> roles) {
+        Long coveredId = null;
+        List<ChatMessage> history = new ArrayList<>();
+        if (summary != null) {
+            ChatMessageExtras ex = summary.getExtras();
+            coveredId = ex != null && ex.getCompressedToId() != null ? ex.getCompressedToId() : summary.getId();
+            history.add(summary);
+        }
+        for (ChatMessage message : chatMessageRepository.findChatAfter(sessionId, coveredId, roles)) {
+            if (!COMPRESS.equals(message.getRole())) {
+                history.add(message);
+            }
+        }
+        return history;
+    }
+
+    /**
+     * 按剩余消息重建会话的压缩水位与累计 token 数
+     * 截断消息可能删除压缩摘要或已累计的消息时调用
+     */
+    public void rebuild(String sessionId) {
+        ChatMessage summary = chatMessageRepository.findLatest(sessionId, COMPRESS.n());
+        int tokenCount = 0;
+        for (ChatMessage chat : activeHistory(sessionId, summary, COMPRESSIBLE_ROLES)) {
+            tokenCount += tokenCounting.estimateTokenCount(chat.getContent());
+        }
+        chatSessionRepository.updateCompress(sessionId, summary != null ? summary.getId() : null, tokenCount);
+        log.debug("Rebuilt compaction state for session {}: tokenCount={}", sessionId, tokenCount);
+    }
+
+    public Stats stats() {
+        long completedCount = completed.sum();
+        return new Stats(jobs.size(),
+                running.get(),
+                submitted.sum(),
+                coalesced.sum(),
+                completedCount,
+                failed.sum(),
+                completedCount == 0 ? 0D : latencyNanos.sum() / 1_000_000D / completedCount,
+                maxLatencyNanos.get() / 1_000_000D);
+    }
+
+    private static final class Job {
+        private volatile boolean dirty;
+    }
+
+    public record Stats(int queued, // 排队及执行中的会话数
+                        int running,
+                        long submitted,
+                        long coalesced,
+                        long completed,
+                        long failed,
+                        double avgLatencyMillis,
+                        double maxLatencyMillis) {
+    }
+}
@@ -0,0 +1,220 @@
+package info.mengnan.dialogerai.server.core;
+
+import info.mengnan.dialogerai.kb.param.ContentElement;
+import info.mengnan.dialogerai.server.param.document.CleaningConfig;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 按 {@link CleaningConfig} 逐个清洗内容元素，供分阶段处理与流式入库共用。
+ * 去重状态保存在实例中，一个文档使用一个实例。
+ * <p>
+ * 规则在构造时确定，每个元素只扫描一遍：空白规范化、断行合并与首尾裁剪在同一次扫描中写入复用的缓冲区，
+ * 低价值判断与去重指纹在字符确定输出时同步计算，不使用正则，文本未变化时返回原元素。
+ * 结果与依次执行以下替换一致：
+ * <ul>
+ *     <li>空白规范化：{@code [ \t]+ → " "}，{@code (\r\n|\r|\n){3,} → "\n\n"}，trim</li>
+ *     <li>断行合并：{@code (?<!\n)\n(?!\n) → " "}，trim</li>
+ *     <li>低价值段落：trim 后长度不足或只包含 {@code [\d\s\p{Punct}]}</li>
+ * </ul>
+ */
+public class ContentCleaner {
+
+    private final boolean enabled;
+    private final boolean normalizeWhitespace;
+    private final boolean mergeLineBreaks;
+    private final boolean filterLowValue;
+    private final boolean deduplicate;
+    private final int minParagraphLength;
+
+    // 已出现段落的 64 位指纹，避免为去重保留整份文档的文本
+    private final Set<Long> seen = new HashSet<>();
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    // 当前元素已确定输出部分的统计
+    private int measured;
+    private boolean meaningful;
+    private int hash;
+    private int fnv;
+
+    /**
+     * @param config 清洗规则，为 null 时原样返回
+     */
+    public ContentCleaner(CleaningConfig config) {
+        this.enabled = config != null;
+        this.normalizeWhitespace = enabled && config.isNormalizeWhitespace();
+        this.mergeLineBreaks = enabled && config.isMergeLineBreaks();
+        this.filterLowValue = enabled && config.isFilterLowValueParagraphs();
+        this.deduplicate = enabled && config.isDeduplicateParagraphs();
+        this.minParagraphLength = enabled ? config.getMinParagraphLength() : 0;
+    }
+
+    /**
+     * 清洗整个元素列表
+     */
+    public List<ContentElement> cleanAll(List<ContentElement> elements) {
+        if (!enabled) {
+            return elements;
+        }
+        List<ContentElement> result = new ArrayList<>(elements.size());
+        for (ContentElement element : elements) {
+            ContentElement cleaned = clean(element);
+            if (cleaned != null) {
+                result.add(cleaned);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 清洗单个元素，被过滤时返回 null；图片元素原样返回
+     */
+    public ContentElement clean(ContentElement e) {
+        if (!enabled || e.getType() == ContentElement.Type.IMAGE) {
+            return e;
+        }
+
+        String text = e.getText();
+        measured = 0;
+        meaningful = false;
+        hash = 0;
+        fnv = 0x811c9dc5;
+
+        String cleaned = text;
+        if (text != null && (normalizeWhitespace || mergeLineBreaks)) {
+            if (rewrite(text)) {
+                cleaned = buffer.toString();
+            }
+        } else if (text != null && (filterLowValue || deduplicate)) {
+            int start = 0;
+            int end = text.length();
+            while (start < end && text.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && text.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            measure(text, start, end);
+        }
+
+        if (filterLowValue && (measured < minParagraphLength || (measured > 0 && !meaningful))) {
+            return null;
+        }
+        if (deduplicate && !seen.add(((long) hash << 32) | (fnv & 0xffffffffL))) {
+            return null;
+        }
+        return cleaned == text ? e : ContentElement.ofText(cleaned, positionOf(e));
+    }
+
+    /**
+     * 一次扫描完成规范化与断行合并，结果写入 buffer
+     *
+     * @return 文本是否有变化
+     */
+    private boolean rewrite(String text) {
+        StringBuilder out = buffer;
+        out.setLength(0);
+        int length = text.length();
+        // 最后一个非空白字符之后的位置，末尾的空白在扫描结束时截掉
+        int committed = 0;
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (out.isEmpty() && c <= ' ') {
+                i++;
+                continue;
+            }
+            if (normalizeWhitespace && (c == ' ' || c == '\t')) {
+                int end = i + 1;
+                while (end < length && (text.charAt(end) == ' ' || text.charAt(end) == '\t')) {
+                    end++;
+                }
+                out.append(' ');
+                i = end;
+                continue;
+            }
+            if (c == '\n' || c == '\r') {
+                i = lineBreaks(text, i, out);
+                continue;
+            }
+            out.append(c);
+            i++;
+            if (c > ' ') {
+                measure(out, committed, out.length());
+                committed = out.length();
+            }
+        }
+        out.setLength(committed);
+        return !text.contentEquals(out);
+    }
+
+    /**
+     * 处理从 start 开始的连续 \r、\n。
+     * 正则 {@code (\r\n|\r|\n){3,}} 会回溯把 \r\n 拆成两次匹配，因此按字符数而不是换行数判断
+     *
+     * @return 连续换行之后的位置
+     */
+    private int lineBreaks(String text, int start, StringBuilder out) {
+        int length = text.length();
+        int end = start;
+        while (end < length && (text.charAt(end) == '\r' || text.charAt(end) == '\n')) {
+            end++;
+        }
+
+        if (normalizeWhitespace && end - start >= 3) {
+            out.append("\n\n");
+            return end;
+        }
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            // 断行合并只替换前后都不是 \n 的 \n，连续换行之外的字符不会是 \n
+            if (mergeLineBreaks && c == '\n'
+                    && (i == start || text.charAt(i - 1) != '\n')
+                    && (i + 1 == end || text.charAt(i + 1) != '\n')) {
+                c = ' ';
+            }
+            out.append(c);
+        }
+        return end;
+    }
+
+    /**
+     * 统计已确定输出的字符：trim 后长度、是否含数字/空白/标点以外的字符、去重指纹
+     */
+    private void measure(CharSequence text, int from, int to) {
+        measured += to - from;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (!meaningful && !isLowValue(c)) {
+                meaningful = true;
+            }
+            if (deduplicate) {
+                // String.hashCode 与 FNV-1a 组合成 64 位指纹
+                hash = 31 * hash + c;
+                fnv = (fnv ^ c) * 0x01000193;
+            }
+        }
+    }
+
+    /**
+     * 与正则 {@code [\d\s\p{Punct}]} 一致：ASCII 数字、空白与标点
+     */
+    private static boolean isLowValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return true;
+        }
+        if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+            return true;
+        }
+        return (c >= '!' && c <= '/') || (c >= ':' && c <= '@')
+                || (c >= '[' && c <= '`') || (c >= '{' && c <= '~');
+    }
+
+    private static int positionOf(ContentElement e) {
+        return e.getPosition() != null ? e.getPosition() : 0;
+    }
+}
@@ -0,0 +1,25 @@
+package info.mengnan.dialogerai.server.core;
+
+import info.mengnan.dialogerai.kb.core.ImageCaptionCache;
+import info.mengnan.dialogerai.repository.repo.ImageCaptionRepository;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 基于 image_caption 表的图片描述缓存，跨文档、跨重启复用识别结果
+ * 描述按 (图片哈希, 描述版本) 存取，更换模型或修改提示词后旧描述不再命中；需要清理时直接删除表中的行
+ */
+@RequiredArgsConstructor
+public class DbImageCaptionCache implements ImageCaptionCache {
+
+    private final ImageCaptionRepository repository;
+
+    @Override
+    public String get(String imageHash, String captionVersion) {
+        return repository.findCaption(imageHash, captionVersion);
+    }
+
+    @Override
+    public void put(String imageHash, String captionVersion, String caption) {
+        repository.save(imageHash, captionVersion, caption);
+    }
+}
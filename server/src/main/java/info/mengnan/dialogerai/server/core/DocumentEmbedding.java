@@ -2,11 +2,13 @@ package info.mengnan.dialogerai.server.core;
 
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.parser.TextDocumentParser;
 import dev.langchain4j.data.document.parser.apache.pdfbox.ApachePdfBoxDocumentParser;
 import dev.langchain4j.data.document.parser.apache.poi.ApachePoiDocumentParser;
 import dev.langchain4j.data.segment.TextSegment;
 import info.mengnan.dialogerai.kb.core.DynamicEmbeddingStoreRegistry;
+import info.mengnan.dialogerai.kb.core.TokenAwareDocumentSplitter;
 import info.mengnan.dialogerai.kb.param.DocumentImage;
 import info.mengnan.dialogerai.kb.param.EnhancedTextSegment;
 import lombok.RequiredArgsConstructor;
@@ -18,11 +20,14 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 文档处理工具类，提供各阶段 Listener 复用的基础能力：
  * <ul>
  *   <li>文件解析（parseDocument）</li>
+ *   <li>按文档类型选择切分策略（createSplitter），按 token 数切分，实例按类型缓存</li>
  *   <li>增强分块创建（createEnhancedSegmentsWithPosition）</li>
  *   <li>知识库索引名构建（buildKbIndexName）</li>
  *   <li>ES 索引删除（deleteIndex）</li>
@@ -33,6 +38,12 @@ import java.util.List;
 public class DocumentEmbedding {
 
     private final DynamicEmbeddingStoreRegistry embeddingStoreRegistry;
+    private final TokenCounting tokenCounting;
+
+    /**
+     * 文档类型 -> 切分器，切分器无状态，所有文档共用
+     */
+    private final Map<String, DocumentSplitter> splitters = new ConcurrentHashMap<>();
 
     /**
      * 根据文件路径和扩展名解析文档，返回 LangChain4j Document（纯文本）。
@@ -49,6 +60,29 @@ public class DocumentEmbedding {
         }
     }
 
+    /**
+     * 按文档语义类型选择切分策略，分块大小与重叠以 token 计，中英文分块的 token 数一致。
+     */
+    public DocumentSplitter createSplitter(String docType) {
+        String type = docType != null ? docType.toLowerCase() : "";
+        // 未知类型共用默认切分器，缓存键只有固定几种
+        String key = switch (type) {
+            case "short_text", "paper", "contract", "novel" -> type;
+            default -> "default";
+        };
+        return splitters.computeIfAbsent(key, t -> switch (t) {
+            case "short_text" -> tokenSplitter(100, 15);
+            case "paper"      -> tokenSplitter(256, 32);
+            case "contract"   -> tokenSplitter(200, 0);
+            case "novel"      -> tokenSplitter(512, 32);
+            default           -> tokenSplitter(200, 32);
+        });
+    }
+
+    private DocumentSplitter tokenSplitter(int maxTokens, int overlapTokens) {
+        return new TokenAwareDocumentSplitter(maxTokens, overlapTokens, tokenCounting::countTokens);
+    }
+
     /**
      * 将 TextSegment 列表增强：注入图片元数据并添加位置信息到 Metadata。
      */
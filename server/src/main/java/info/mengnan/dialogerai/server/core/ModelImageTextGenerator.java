@@ -0,0 +1,35 @@
+package info.mengnan.dialogerai.server.core;
+
+import info.mengnan.dialogerai.kb.core.ImageTextGenerator;
+import info.mengnan.dialogerai.rag.service.DirectModelInvoker;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 通过 {@link DirectModelInvoker} 识别文档图片
+ * 批量识别时多张图片放在一次请求中，模型是否支持多图按 provider:model 分别判断，
+ * 不支持或合并请求失败时由 {@link DirectModelInvoker#imagesToText} 改为逐张识别
+ */
+@RequiredArgsConstructor
+public class ModelImageTextGenerator implements ImageTextGenerator {
+
+    private static final String INVOKE_SOURCE = "document.imageCaption";
+
+    private final DirectModelInvoker directModelInvoker;
+
+    @Override
+    public String imageToText(byte[] data, String prompt, String mimeType) {
+        return directModelInvoker.imageToText(INVOKE_SOURCE, data, prompt, mimeType);
+    }
+
+    @Override
+    public String captionVersion(String prompt) {
+        return directModelInvoker.captionVersion(prompt);
+    }
+
+    @Override
+    public List<Caption> imageToText(List<ImageInput> images, String prompt) {
+        return directModelInvoker.imagesToText(INVOKE_SOURCE, images, prompt);
+    }
+}
@@ -0,0 +1,238 @@
+package info.mengnan.dialogerai.server.core;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import info.mengnan.dialogerai.common.param.ModelType;
+import info.mengnan.dialogerai.kb.core.DynamicEmbeddingStoreRegistry;
+import info.mengnan.dialogerai.kb.core.ElasticsearchBulkWriter;
+import info.mengnan.dialogerai.kb.core.IncrementalSegmentIndex;
+import info.mengnan.dialogerai.kb.core.StreamingDocumentReader;
+import info.mengnan.dialogerai.kb.param.ContentElement;
+import info.mengnan.dialogerai.kb.param.DocumentImage;
+import info.mengnan.dialogerai.kb.param.EnhancedTextSegment;
+import info.mengnan.dialogerai.rag.config.ModelConfig;
+import info.mengnan.dialogerai.rag.container.factory.UniversalModelFactory;
+import info.mengnan.dialogerai.rag.embedding.CachingEmbeddingModel;
+import info.mengnan.dialogerai.rag.embedding.EmbeddingPipeline;
+import info.mengnan.dialogerai.repository.entity.DocumentInfo;
+import info.mengnan.dialogerai.repository.enums.DocumentStatus;
+import info.mengnan.dialogerai.repository.repo.DocumentInfoRepository;
+import info.mengnan.dialogerai.server.messaging.document.event.DocumentUploadedEvent;
+import info.mengnan.dialogerai.server.service.DocumentProcessService;
+import info.mengnan.dialogerai.server.service.KnowledgeBaseBuildService;
+import info.mengnan.dialogerai.server.service.ModelConfigService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 流式文档入库：解析 → 清洗 → 分块 → 向量化在同一任务中以流的方式进行。
+ * <p>
+ * 文件只解析一次，内容元素逐个清洗后进入分块窗口，窗口累计到 {@code windowChars} 字符时切分，
+ * 除最后一个分块外全部交给 {@link EmbeddingPipeline}，最后一个分块并入下一窗口重新切分，
+ * 因此窗口边界不会截断分块。向量化进行中的批次达到上限时读取阻塞，内存占用由窗口大小与批次上限决定，与文档大小无关。
+ * <p>
+ * 与分阶段处理的差异：分块只携带所在窗口内的图片；分块总数在处理过程中逐步增长。
+ * 重新上传的文档经 {@link IncrementalSegmentIndex} 比对，只向量化内容变化的分块。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StreamingDocumentIngestion {
+
+    private final StreamingDocumentReader documentReader;
+    private final DocumentEmbedding documentEmbedding;
+    private final DynamicEmbeddingStoreRegistry embeddingStoreRegistry;
+    private final ElasticsearchBulkWriter bulkWriter;
+    private final UniversalModelFactory modelFactory;
+    private final ModelConfigService modelConfigService;
+    private final EmbeddingPipeline embeddingPipeline;
+    private final DocumentInfoRepository documentInfoRepository;
+    private final DocumentProcessService documentProcessService;
+    private final KnowledgeBaseBuildService knowledgeBaseBuildService;
+
+    @Value("${embedding.model-name:text-embedding-v2}")
+    private String embeddingModelName;
+
+    @Value("${ingestion.streaming.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ingestion.streaming.window-chars:20000}")
+    private int windowChars;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 流式处理已上传的文档，失败时标记文档失败，不抛出异常
+     *
+     * @param event    上传事件
+     * @param filePath 文件实际路径
+     */
+    public void ingest(DocumentUploadedEvent event, Path filePath) {
+        Long documentId = event.getDocumentId();
+        ElasticsearchBulkWriter.Session bulk = null;
+        try {
+            documentProcessService.updateStatus(documentId, DocumentStatus.PARSING);
+            DocumentInfo info = documentInfoRepository.findById(documentId);
+
+            ModelConfig embeddingConfig = modelConfigService.findModel(
+                    event.getMemberId(), embeddingModelName, ModelType.EMBEDDING);
+            if (embeddingConfig == null) {
+                throw new RuntimeException("Embedding 模型配置不存在：" + embeddingModelName);
+            }
+            // 入库分块使用向量缓存的入库分段，不挤占查询向量
+            EmbeddingModel embeddingModel = CachingEmbeddingModel.forIngestion(
+                    modelFactory.createEmbeddingModel(embeddingConfig));
+            bulk = bulkWriter.open(info.getIndexName());
+            IncrementalSegmentIndex incremental =
+                    IncrementalSegmentIndex.open(embeddingStoreRegistry, info.getIndexName(), documentId);
+
+            EmbeddingPipeline.Session session = embeddingPipeline.open(embeddingConfig.getModelProvider(),
+                    embeddingModel, bulk::addAll,
+                    (processed, total, chunksPerSecond) -> {
+                        int reused = incremental.reused();
+                        documentInfoRepository.updateEmbeddingProgress(
+                                documentId, reused + processed, reused + total, chunksPerSecond);
+                        knowledgeBaseBuildService.embeddingProgress(
+                                documentId, reused + processed, reused + total, chunksPerSecond);
+                    });
+
+            ContentCleaner cleaner = new ContentCleaner(event.getCleaningConfig());
+            ChunkWindow window = new ChunkWindow(documentEmbedding.createSplitter(event.getDocType()),
+                    String.valueOf(documentId), segment -> {
+                if (incremental.total() == 0) {
+                    documentProcessService.updateStatus(documentId, DocumentStatus.EMBEDDING);
+                }
+                if (!incremental.reuse(segment)) {
+                    session.add(segment);
+                }
+            });
+
+            long[] charCounts = new long[2];
+            documentReader.read(filePath, event.getFileType(), (element, progressPercent) -> {
+                if (element.getType() == ContentElement.Type.TEXT && element.getText() != null) {
+                    charCounts[0] += element.getText().length();
+                }
+                ContentElement cleaned = cleaner.clean(element);
+                if (cleaned == null) {
+                    return;
+                }
+                if (cleaned.getType() == ContentElement.Type.TEXT && cleaned.getText() != null) {
+                    charCounts[1] += cleaned.getText().length();
+                }
+                window.accept(cleaned, progressPercent);
+            });
+            window.finish();
+
+            if (incremental.total() == 0) {
+                throw new IllegalArgumentException("文档分块结果为空，请检查文档内容或调整清洗规则");
+            }
+            EmbeddingPipeline.Result result = session.finish();
+            ElasticsearchBulkWriter.Result written = bulk.finish();
+            IncrementalSegmentIndex.Result diff = incremental.finish();
+
+            info = documentInfoRepository.findById(documentId);
+            info.setOriginalCharCount((int) charCounts[0]);
+            info.setCleanedCharCount((int) charCounts[1]);
+            info.setTotalChunks(diff.total());
+            info.setProcessedChunks(diff.total());
+            info.setEmbeddingRate(result.chunksPerSecond());
+            documentInfoRepository.updateById(info);
+            documentProcessService.updateStatus(documentId, DocumentStatus.DONE);
+
+            log.info("document streamed into index, documentId={}, indexName={}, totalChunks={}, embedded={}, reused={}, deleted={}, batches={}, retries={}, bulkRequests={}, bulkRetries={}, elapsed={}ms, rate={} chunks/s",
+                    documentId, info.getIndexName(), diff.total(), result.chunks(), diff.reused(), diff.deleted(),
+                    result.batches(), result.retries(), written.requests(), written.retriedItems(),
+                    result.elapsedMillis(), String.format("%.1f", result.chunksPerSecond()));
+        } catch (Exception e) {
+            log.error("streaming ingestion failed, documentId={}", documentId, e);
+            documentProcessService.markFailed(documentId, event.getTaskId(), "处理失败: " + e.getMessage());
+        } finally {
+            if (bulk != null) {
+                bulk.close();
+            }
+        }
+    }
+
+    /**
+     * 分块窗口：累计清洗后的文本，超过窗口大小时切分并输出已确定的分块
+     */
+    private final class ChunkWindow {
+
+        private final DocumentSplitter splitter;
+        private final String documentId;
+        private final Consumer<TextSegment> downstream;
+
+        private final StringBuilder text = new StringBuilder();
+        private List<DocumentImage> images = new ArrayList<>();
+        private int progressPercent;
+        private int segmentIndex;
+
+        private ChunkWindow(DocumentSplitter splitter, String documentId,
+                            Consumer<TextSegment> downstream) {
+            this.splitter = splitter;
+            this.documentId = documentId;
+            this.downstream = downstream;
+        }
+
+        private void accept(ContentElement element, int progressPercent) {
+            this.progressPercent = progressPercent;
+            if (element.getType() == ContentElement.Type.IMAGE) {
+                if (element.getImage() != null) {
+                    images.add(element.getImage());
+                }
+                return;
+            }
+            if (!StringUtils.hasText(element.getText())) {
+                return;
+            }
+            if (!text.isEmpty()) {
+                text.append("\n\n");
+            }
+            text.append(element.getText());
+            if (text.length() >= windowChars) {
+                flush(false);
+            }
+        }
+
+        private void finish() {
+            if (!text.isEmpty()) {
+                flush(true);
+            }
+        }
+
+        private void flush(boolean last) {
+            List<TextSegment> parts = splitter.split(Document.from(text.toString())).stream()
+                    .filter(segment -> StringUtils.hasText(segment.text()))
+                    .toList();
+            int emit = last ? parts.size() : parts.size() - 1;
+            for (int i = 0; i < emit; i++) {
+                EnhancedTextSegment segment = EnhancedTextSegment.from(parts.get(i).text(), images);
+                segment.metadata().put("segment_index", String.valueOf(segmentIndex++));
+                segment.metadata().put("segment_position", String.valueOf(progressPercent));
+                segment.metadata().put("document_id", documentId);
+                downstream.accept(segment);
+            }
+
+            text.setLength(0);
+            if (!last && !parts.isEmpty()) {
+                // 最后一个分块可能被窗口截断，并入下一窗口重新切分
+                text.append(parts.get(parts.size() - 1).text());
+            }
+            if (emit > 0) {
+                images = new ArrayList<>();
+            }
+        }
+    }
+}
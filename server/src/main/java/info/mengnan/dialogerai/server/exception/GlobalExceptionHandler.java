@@ -1,6 +1,7 @@
 package info.mengnan.dialogerai.server.exception;
 
 import cn.dev33.satoken.exception.NotLoginException;
+import cn.dev33.satoken.exception.NotRoleException;
 import cn.dev33.satoken.exception.SaTokenException;
 import info.mengnan.dialogerai.server.param.R;
 import lombok.extern.slf4j.Slf4j;
@@ -23,6 +24,16 @@ public class GlobalExceptionHandler {
         return R.error("请登录后重试");
     }
 
+    /**
+     * 处理Sa-Token角色校验异常
+     */
+    @ExceptionHandler(NotRoleException.class)
+    @ResponseStatus(HttpStatus.FORBIDDEN)
+    public R handleNotRoleException(NotRoleException e) {
+        log.warn("not role Exception: {}", e.getMessage());
+        return R.error("无权访问");
+    }
+
     /**
      * 处理Sa-Token其他异常
      */
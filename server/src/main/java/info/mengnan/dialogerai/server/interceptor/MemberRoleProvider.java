@@ -0,0 +1,38 @@
+package info.mengnan.dialogerai.server.interceptor;
+
+import cn.dev33.satoken.stp.StpInterface;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 成员角色
+ * 管理员由配置项 security.admin-member-ids 指定（逗号分隔的成员 ID），未配置时没有管理员
+ */
+@Component
+public class MemberRoleProvider implements StpInterface {
+
+    public static final String ADMIN = "admin";
+
+    private final Set<Long> adminMemberIds;
+
+    public MemberRoleProvider(@Value("${security.admin-member-ids:}") List<Long> adminMemberIds) {
+        this.adminMemberIds = Set.copyOf(adminMemberIds);
+    }
+
+    @Override
+    public List<String> getRoleList(Object loginId, String loginType) {
+        try {
+            return adminMemberIds.contains(Long.valueOf(String.valueOf(loginId))) ? List.of(ADMIN) : List.of();
+        } catch (NumberFormatException e) {
+            return List.of();
+        }
+    }
+
+    @Override
+    public List<String> getPermissionList(Object loginId, String loginType) {
+        return List.of();
+    }
+}
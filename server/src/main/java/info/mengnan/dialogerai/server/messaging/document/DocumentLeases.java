@@ -0,0 +1,136 @@
+package info.mengnan.dialogerai.server.messaging.document;
+
+import info.mengnan.dialogerai.repository.enums.DocumentStatus;
+import info.mengnan.dialogerai.repository.repo.DocumentInfoRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 文档处理租约
+ * 处理中的文档在 document_info 上记录持有实例与到期时间，本实例持有的租约按到期时长的三分之一定期续约。
+ * 实例崩溃或重启后租约不再续约，到期后由 {@link IngestionRecovery} 接管。处理结束（DONE/FAILED）时释放。
+ */
+@Slf4j
+@Component
+public class DocumentLeases {
+
+    /**
+     * 未处理结束的状态
+     */
+    public static final List<String> UNFINISHED = List.of(
+            DocumentStatus.PENDING.name(),
+            DocumentStatus.PARSING.name(),
+            DocumentStatus.CLEANING.name(),
+            DocumentStatus.CHUNKING.name(),
+            DocumentStatus.EMBEDDING.name());
+
+    private final DocumentInfoRepository documentInfoRepository;
+    private final TaskScheduler scheduler;
+    private final Duration leaseDuration;
+
+    /**
+     * 实例标识，进程名（pid@host）加随机后缀，同一主机重启后不会与上次相同
+     */
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName()
+            + "#" + UUID.randomUUID().toString().substring(0, 8);
+
+    /**
+     * 本实例持有租约的文档
+     */
+    private final Set<Long> held = ConcurrentHashMap.newKeySet();
+
+    private ScheduledFuture<?> heartbeat;
+
+    public DocumentLeases(DocumentInfoRepository documentInfoRepository,
+                          @Qualifier("ingestionLeaseScheduler") TaskScheduler scheduler,
+                          @Value("${ingestion.recovery.lease-seconds:60}") long leaseSeconds) {
+        this.documentInfoRepository = documentInfoRepository;
+        this.scheduler = scheduler;
+        this.leaseDuration = Duration.ofSeconds(Math.max(3, leaseSeconds));
+    }
+
+    @PostConstruct
+    public void start() {
+        heartbeat = scheduler.scheduleWithFixedDelay(this::renew, leaseDuration.dividedBy(3));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
+    }
+
+    public String owner() {
+        return owner;
+    }
+
+    /**
+     * 新的租约到期时间
+     */
+    public LocalDateTime nextExpiry() {
+        return LocalDateTime.now().plus(leaseDuration);
+    }
+
+    /**
+     * 记录本实例已持有租约（上传时随文档记录一起写入），此后定期续约
+     */
+    public void hold(Long documentId) {
+        held.add(documentId);
+    }
+
+    /**
+     * 接管租约已过期的文档
+     *
+     * @return 是否接管成功，其他实例已先接管时返回 false
+     */
+    public boolean claim(Long documentId) {
+        boolean claimed = documentInfoRepository.claimLease(
+                documentId, UNFINISHED, owner, nextExpiry(), LocalDateTime.now());
+        if (claimed) {
+            held.add(documentId);
+        }
+        return claimed;
+    }
+
+    /**
+     * 文档处理结束，释放租约
+     */
+    public void release(Long documentId) {
+        if (held.remove(documentId)) {
+            documentInfoRepository.releaseLease(documentId, owner);
+        }
+    }
+
+    public int heldCount() {
+        return held.size();
+    }
+
+    private void renew() {
+        if (held.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(held);
+        try {
+            documentInfoRepository.renewLeases(ids, owner, nextExpiry());
+        } catch (Exception e) {
+            // 续约失败时租约可能到期被其他实例接管，重复处理由增量入库去重
+            log.warn("Failed to renew document leases: count={}, {}", ids.size(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package info.mengnan.dialogerai.server.messaging.document;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按用户公平调度的固定线程池
+ * 每个用户一个 FIFO 队列，工作线程在有任务的用户之间轮流取任务，
+ * 单个用户批量提交时其他用户的任务仍能及时得到执行。提交从不在调用线程上执行任务。
+ */
+@Slf4j
+public class FairStageExecutor {
+
+    private final String name;
+    private final List<Thread> workers = new ArrayList<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * 用户 -> 待执行任务
+     */
+    private final Map<Long, Deque<Runnable>> queues = new HashMap<>();
+
+    /**
+     * 有待执行任务的用户，按轮转顺序排列
+     */
+    private final Deque<Long> ready = new ArrayDeque<>();
+
+    private final AtomicInteger active = new AtomicInteger();
+    private int queued;
+    private boolean shutdown;
+
+    /**
+     * @param name    线程名前缀
+     * @param threads 工作线程数
+     */
+    public FairStageExecutor(String name, int threads) {
+        this.name = name;
+        for (int i = 0; i < Math.max(1, threads); i++) {
+            Thread worker = new Thread(this::work, name + "-" + (i + 1));
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * 提交任务到用户队列末尾
+     *
+     * @throws IllegalStateException 线程池已关闭
+     */
+    public void submit(Long memberId, Runnable task) {
+        Long key = memberId != null ? memberId : 0L;
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new IllegalStateException(name + " 已关闭");
+            }
+            Deque<Runnable> queue = queues.computeIfAbsent(key, k -> new ArrayDeque<>());
+            if (queue.isEmpty()) {
+                ready.addLast(key);
+            }
+            queue.addLast(task);
+            queued++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 排队中的任务总数
+     */
+    public int queued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 指定用户排队中的任务数
+     */
+    public int queued(Long memberId) {
+        lock.lock();
+        try {
+            Deque<Runnable> queue = queues.get(memberId != null ? memberId : 0L);
+            return queue != null ? queue.size() : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 有排队任务的用户数
+     */
+    public int queuedMembers() {
+        lock.lock();
+        try {
+            return ready.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int active() {
+        return active.get();
+    }
+
+    public int threads() {
+        return workers.size();
+    }
+
+    /**
+     * 停止接收任务，等待已排队的任务执行完
+     */
+    public void shutdown(long timeoutMillis) {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Runnable task = take();
+            if (task == null) {
+                return;
+            }
+            active.incrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                log.error("{} task failed", name, e);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 取轮转到的用户的下一个任务，该用户仍有任务时排到队尾；关闭且队列为空时返回 null
+     */
+    private Runnable take() {
+        lock.lock();
+        try {
+            while (ready.isEmpty()) {
+                if (shutdown) {
+                    return null;
+                }
+                notEmpty.awaitUninterruptibly();
+            }
+            Long memberId = ready.pollFirst();
+            Deque<Runnable> queue = queues.get(memberId);
+            Runnable task = queue.pollFirst();
+            if (queue.isEmpty()) {
+                queues.remove(memberId);
+            } else {
+                ready.addLast(memberId);
+            }
+            queued--;
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
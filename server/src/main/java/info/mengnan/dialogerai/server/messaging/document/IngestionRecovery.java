@@ -0,0 +1,180 @@
+package info.mengnan.dialogerai.server.messaging.document;
+
+import info.mengnan.dialogerai.kb.core.ElasticsearchBulkWriter;
+import info.mengnan.dialogerai.repository.entity.DocumentInfo;
+import info.mengnan.dialogerai.repository.repo.DocumentInfoRepository;
+import info.mengnan.dialogerai.server.core.storage.FileUploadStorage;
+import info.mengnan.dialogerai.server.messaging.document.event.DocumentUploadedEvent;
+import info.mengnan.dialogerai.server.param.document.CleaningConfig;
+import info.mengnan.dialogerai.server.service.DocumentProcessService;
+import info.mengnan.dialogerai.server.service.KnowledgeBaseBuildService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 中断文档的恢复
+ * 启动后及之后定期扫描未处理结束且租约已过期的文档（本实例重启前或其他已退出实例留下的），
+ * 接管租约后以原上传参数重新提交处理。上传文件保留到文档处理结束，因此可以重新读取。
+ * <p>
+ * 分阶段处理的中间结果只在内存中，恢复时从解析重新开始；已写入索引的分块由
+ * {@link info.mengnan.dialogerai.kb.core.IncrementalSegmentIndex} 按内容指纹复用，
+ * 向量化从上次写入的位置之后继续，图片描述由图片缓存复用。
+ * 超过最大恢复次数的文档标记失败，避免反复导致进程退出的文档无限重试。
+ */
+@Slf4j
+@Component
+public class IngestionRecovery {
+
+    private final DocumentInfoRepository documentInfoRepository;
+    private final DocumentProcessService documentProcessService;
+    private final KnowledgeBaseBuildService knowledgeBaseBuildService;
+    private final IngestionScheduler ingestionScheduler;
+    private final DocumentLeases leases;
+    private final ElasticsearchBulkWriter bulkWriter;
+    private final FileUploadStorage fileStorage;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TaskScheduler scheduler;
+
+    @Value("${ingestion.recovery.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ingestion.recovery.scan-interval-seconds:30}")
+    private long scanIntervalSeconds;
+
+    @Value("${ingestion.recovery.batch-size:50}")
+    private int batchSize;
+
+    @Value("${ingestion.recovery.max-attempts:3}")
+    private int maxAttempts;
+
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    private ScheduledFuture<?> scan;
+
+    public IngestionRecovery(DocumentInfoRepository documentInfoRepository,
+                             DocumentProcessService documentProcessService,
+                             KnowledgeBaseBuildService knowledgeBaseBuildService,
+                             IngestionScheduler ingestionScheduler,
+                             DocumentLeases leases,
+                             ElasticsearchBulkWriter bulkWriter,
+                             FileUploadStorage fileStorage,
+                             ApplicationEventPublisher eventPublisher,
+                             @Qualifier("ingestionLeaseScheduler") TaskScheduler scheduler) {
+        this.documentInfoRepository = documentInfoRepository;
+        this.documentProcessService = documentProcessService;
+        this.knowledgeBaseBuildService = knowledgeBaseBuildService;
+        this.ingestionScheduler = ingestionScheduler;
+        this.leases = leases;
+        this.bulkWriter = bulkWriter;
+        this.fileStorage = fileStorage;
+        this.eventPublisher = eventPublisher;
+        this.scheduler = scheduler;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scan = scheduler.scheduleWithFixedDelay(this::scan, Duration.ofSeconds(Math.max(1, scanIntervalSeconds)));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scan != null) {
+            scan.cancel(false);
+        }
+    }
+
+    /**
+     * 接管并重新提交一批中断的文档
+     */
+    public void scan() {
+        List<DocumentInfo> docs;
+        try {
+            docs = documentInfoRepository.findResumable(DocumentLeases.UNFINISHED, LocalDateTime.now(), batchSize);
+        } catch (Exception e) {
+            log.warn("Failed to scan interrupted documents: {}", e.getMessage());
+            return;
+        }
+        Set<String> recoveredIndices = new HashSet<>();
+        for (DocumentInfo doc : docs) {
+            // 队列已满时留到下次扫描，租约仍是过期状态
+            if (!ingestionScheduler.canAccept(doc.getMemberId()) || !leases.claim(doc.getId())) {
+                continue;
+            }
+            try {
+                resume(doc, recoveredIndices);
+            } catch (Exception e) {
+                log.error("Failed to resume document, documentId={}", doc.getId(), e);
+                documentProcessService.markFailed(doc.getId(), doc.getTaskId(), "恢复处理失败: " + e.getMessage());
+            }
+        }
+    }
+
+    private void resume(DocumentInfo doc, Set<String> recoveredIndices) throws Exception {
+        int attempts = (doc.getResumeAttempts() != null ? doc.getResumeAttempts() : 0) + 1;
+        if (attempts > maxAttempts) {
+            abandoned.increment();
+            documentProcessService.markFailed(doc.getId(), doc.getTaskId(),
+                    "处理多次中断，已停止自动恢复，请重新上传");
+            return;
+        }
+        Path filePath = fileStorage.resolvePath(doc.getStoredName());
+        if (!Files.exists(filePath)) {
+            abandoned.increment();
+            documentProcessService.markFailed(doc.getId(), doc.getTaskId(), "上传文件已不存在，请重新上传");
+            return;
+        }
+
+        // 上次进程退出时索引可能停留在关闭刷新的状态，没有其他写入时恢复；
+        // 上次写入的分块由增量比对前的显式刷新变为可见，不依赖这里
+        if (recoveredIndices.add(doc.getIndexName())) {
+            bulkWriter.recover(doc.getIndexName());
+        }
+        knowledgeBaseBuildService.refreshBuildProgress(doc.getKbId());
+
+        eventPublisher.publishEvent(new DocumentUploadedEvent(
+                doc.getId(), doc.getMemberId(), doc.getTaskId(),
+                doc.getStoredName(), fileStorage.getType(),
+                doc.getFileType(), doc.getDocType(), CleaningConfig.fromJson(doc.getCleaningConfig())
+        ));
+        resumed.increment();
+        log.info("Resuming interrupted document: documentId={}, status={}, processedChunks={}, attempt={}",
+                doc.getId(), doc.getStatus(), doc.getProcessedChunks(), attempts);
+    }
+
+    public Stats stats() {
+        return new Stats(leases.owner(), leases.heldCount(), resumed.sum(), abandoned.sum());
+    }
+
+    /**
+     * @param owner     本实例标识
+     * @param held      本实例持有租约的文档数
+     * @param resumed   已恢复的文档数
+     * @param abandoned 因文件丢失或超过恢复次数而放弃的文档数
+     */
+    public record Stats(String owner,
+                        int held,
+                        long resumed,
+                        long abandoned) {
+    }
+}
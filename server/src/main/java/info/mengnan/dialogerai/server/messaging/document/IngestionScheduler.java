@@ -0,0 +1,163 @@
+package info.mengnan.dialogerai.server.messaging.document;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 文档处理调度
+ * 解析、清洗、分块为 CPU 密集阶段，运行在与 CPU 核数相当的线程池上；向量化与流式入库主要等待模型与 ES，
+ * 运行在单独的 I/O 线程池上。两个线程池都按用户公平轮转，阶段之间的交接总是入队，不会占用发布事件的线程。
+ * <p>
+ * 新文档在上传时通过 {@link #hasCapacity} 检查排队深度，超过总量或单用户上限时由调用方拒绝上传。
+ */
+@Slf4j
+@Component
+public class IngestionScheduler {
+
+    public enum Stage {
+        PARSE(true),
+        CLEAN(true),
+        CHUNK(true),
+        EMBED(false),
+        /**
+         * 流式入库，解析到向量化在同一任务中完成
+         */
+        STREAM(false);
+
+        private final boolean cpuBound;
+
+        Stage(boolean cpuBound) {
+            this.cpuBound = cpuBound;
+        }
+    }
+
+    private final FairStageExecutor cpuPool;
+    private final FairStageExecutor ioPool;
+    private final int maxQueued;
+    private final int maxQueuedPerMember;
+
+    private final Map<Stage, StageMetrics> metrics = new EnumMap<>(Stage.class);
+    private final LongAdder rejected = new LongAdder();
+
+    public IngestionScheduler(@Value("${ingestion.scheduler.cpu-threads:0}") int cpuThreads,
+                              @Value("${ingestion.scheduler.io-threads:8}") int ioThreads,
+                              @Value("${ingestion.scheduler.max-queued:200}") int maxQueued,
+                              @Value("${ingestion.scheduler.max-queued-per-member:20}") int maxQueuedPerMember) {
+        this.cpuPool = new FairStageExecutor("ingest-cpu",
+                cpuThreads > 0 ? cpuThreads : Runtime.getRuntime().availableProcessors());
+        this.ioPool = new FairStageExecutor("ingest-io", ioThreads);
+        this.maxQueued = maxQueued;
+        this.maxQueuedPerMember = maxQueuedPerMember;
+        for (Stage stage : Stage.values()) {
+            metrics.put(stage, new StageMetrics());
+        }
+    }
+
+    /**
+     * 是否还能接纳该用户的新文档，不能时计入拒绝次数
+     */
+    public boolean hasCapacity(Long memberId) {
+        if (!canAccept(memberId)) {
+            rejected.increment();
+            log.warn("Ingestion queue full, rejecting upload: memberId={}, memberQueued={}, totalQueued={}",
+                    memberId, cpuPool.queued(memberId) + ioPool.queued(memberId), cpuPool.queued() + ioPool.queued());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 排队深度是否低于上限，不计入拒绝次数
+     */
+    public boolean canAccept(Long memberId) {
+        int total = cpuPool.queued() + ioPool.queued();
+        int member = cpuPool.queued(memberId) + ioPool.queued(memberId);
+        return total < maxQueued && member < maxQueuedPerMember;
+    }
+
+    /**
+     * 提交一个文档的处理阶段
+     */
+    public void submit(Stage stage, Long memberId, Runnable task) {
+        StageMetrics m = metrics.get(stage);
+        long enqueuedAt = System.nanoTime();
+        m.submitted.increment();
+        (stage.cpuBound ? cpuPool : ioPool).submit(memberId, () -> {
+            long startedAt = System.nanoTime();
+            m.record(m.waitNanos, m.maxWaitNanos, startedAt - enqueuedAt);
+            try {
+                task.run();
+            } finally {
+                m.record(m.runNanos, m.maxRunNanos, System.nanoTime() - startedAt);
+                m.completed.increment();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cpuPool.shutdown(30_000);
+        ioPool.shutdown(30_000);
+    }
+
+    public Stats stats() {
+        Map<String, StageStats> stages = new LinkedHashMap<>();
+        metrics.forEach((stage, m) -> stages.put(stage.name(), m.snapshot()));
+        return new Stats(pool(cpuPool), pool(ioPool), rejected.sum(), stages);
+    }
+
+    private static PoolStats pool(FairStageExecutor pool) {
+        return new PoolStats(pool.threads(), pool.active(), pool.queued(), pool.queuedMembers());
+    }
+
+    private static final class StageMetrics {
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final LongAdder runNanos = new LongAdder();
+        private final AtomicLong maxRunNanos = new AtomicLong();
+
+        private void record(LongAdder sum, AtomicLong max, long nanos) {
+            sum.add(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        private StageStats snapshot() {
+            long done = completed.sum();
+            return new StageStats(submitted.sum(), done,
+                    done == 0 ? 0D : waitNanos.sum() / 1_000_000D / done,
+                    maxWaitNanos.get() / 1_000_000D,
+                    done == 0 ? 0D : runNanos.sum() / 1_000_000D / done,
+                    maxRunNanos.get() / 1_000_000D);
+        }
+    }
+
+    public record Stats(PoolStats cpuPool,
+                        PoolStats ioPool,
+                        long rejectedUploads,
+                        Map<String, StageStats> stages) {
+    }
+
+    public record PoolStats(int threads,
+                            int active,
+                            int queued,
+                            int queuedMembers) { // 有排队任务的用户数
+    }
+
+    public record StageStats(long submitted,
+                             long completed,
+                             double avgWaitMillis,
+                             double maxWaitMillis,
+                             double avgRunMillis,
+                             double maxRunMillis) {
+    }
+}
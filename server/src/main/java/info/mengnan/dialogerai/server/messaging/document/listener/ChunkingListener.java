@@ -2,7 +2,6 @@ package info.mengnan.dialogerai.server.messaging.document.listener;
 
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
 import info.mengnan.dialogerai.kb.param.ContentElement;
 import info.mengnan.dialogerai.kb.param.DocumentImage;
@@ -10,6 +9,7 @@ import info.mengnan.dialogerai.repository.entity.DocumentInfo;
 import info.mengnan.dialogerai.repository.enums.DocumentStatus;
 import info.mengnan.dialogerai.repository.repo.DocumentInfoRepository;
 import info.mengnan.dialogerai.server.core.DocumentEmbedding;
+import info.mengnan.dialogerai.server.messaging.document.IngestionScheduler;
 import info.mengnan.dialogerai.server.messaging.document.event.DocumentChunkedEvent;
 import info.mengnan.dialogerai.server.messaging.document.event.DocumentCleanedEvent;
 import info.mengnan.dialogerai.server.service.DocumentProcessService;
@@ -18,7 +18,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
@@ -39,20 +38,20 @@ public class ChunkingListener {
     private final DocumentInfoRepository documentInfoRepository;
     private final KnowledgeBaseBuildService KnowledgeBaseBuildService;
     private final DocumentProcessService documentProcessService;
+    private final IngestionScheduler ingestionScheduler;
     private final ApplicationEventPublisher eventPublisher;
 
-    @Async("docProcessPool")
     @EventListener
     public void onDocumentCleaned(DocumentCleanedEvent event) {
+        ingestionScheduler.submit(IngestionScheduler.Stage.CHUNK, event.getMemberId(), () -> chunk(event));
+    }
+
+    private void chunk(DocumentCleanedEvent event) {
         Long documentId = event.getDocumentId();
         String taskId = event.getTaskId();
 
         try {
             documentProcessService.updateStatus(documentId, DocumentStatus.CHUNKING);
-            DocumentInfo docRef = documentInfoRepository.findById(documentId);
-            if (docRef != null) {
-                KnowledgeBaseBuildService.refreshBuildProgress(docRef.getKbId());
-            }
 
             List<ContentElement> elements = event.getContentElements();
 
@@ -71,13 +70,7 @@ public class ChunkingListener {
 
             Document document = Document.from(combinedText);
 
-            DocumentSplitter splitter = switch (event.getDocType().toLowerCase()) {
-                case "short_text" -> DocumentSplitters.recursive(150, 20);
-                case "paper"      -> DocumentSplitters.recursive(400, 40);
-                case "contract"   -> DocumentSplitters.recursive(300, 0);
-                case "novel"      -> DocumentSplitters.recursive(750, 50);
-                default           -> DocumentSplitters.recursive(300, 50);
-            };
+            DocumentSplitter splitter = documentEmbedding.createSplitter(event.getDocType());
 
             List<TextSegment> textSegments = splitter.split(document).stream()
                     .filter(segment -> StringUtils.hasText(segment.text()))
@@ -95,8 +88,7 @@ public class ChunkingListener {
             info.setTotalChunks(enhanced.size());
             info.setProcessedChunks(0);
             documentInfoRepository.updateById(info);
-
-            KnowledgeBaseBuildService.refreshBuildProgress(info.getKbId());
+            KnowledgeBaseBuildService.documentChanged(info);
 
             eventPublisher.publishEvent(new DocumentChunkedEvent(
                     documentId, event.getMemberId(), taskId, info.getIndexName(), enhanced
@@ -1,16 +1,18 @@
 package info.mengnan.dialogerai.server.messaging.document.listener;
 
-import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.store.embedding.EmbeddingStore;
 import info.mengnan.dialogerai.common.param.ModelType;
 import info.mengnan.dialogerai.kb.core.DynamicEmbeddingStoreRegistry;
+import info.mengnan.dialogerai.kb.core.ElasticsearchBulkWriter;
+import info.mengnan.dialogerai.kb.core.IncrementalSegmentIndex;
 import info.mengnan.dialogerai.rag.config.ModelConfig;
 import info.mengnan.dialogerai.rag.container.factory.UniversalModelFactory;
-import info.mengnan.dialogerai.repository.entity.DocumentInfo;
+import info.mengnan.dialogerai.rag.embedding.CachingEmbeddingModel;
+import info.mengnan.dialogerai.rag.embedding.EmbeddingPipeline;
 import info.mengnan.dialogerai.repository.enums.DocumentStatus;
 import info.mengnan.dialogerai.repository.repo.DocumentInfoRepository;
+import info.mengnan.dialogerai.server.messaging.document.IngestionScheduler;
 import info.mengnan.dialogerai.server.messaging.document.event.DocumentChunkedEvent;
 import info.mengnan.dialogerai.server.service.DocumentProcessService;
 import info.mengnan.dialogerai.server.service.KnowledgeBaseBuildService;
@@ -19,15 +21,15 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
 
 /**
  * 阶段4：向量化存储。
- * 监听 DocumentChunkedEvent，分批调用 EmbeddingModel 生成向量，写入 Elasticsearch。
- * 每批完成后滚动更新 document_info.processed_chunks 用于进度展示。
+ * 监听 DocumentChunkedEvent，由 {@link EmbeddingPipeline} 并行、限流地生成向量，经 {@link ElasticsearchBulkWriter} 批量写入 Elasticsearch。
+ * 每批完成后滚动更新 document_info.processed_chunks 与吞吐用于进度展示。
+ * 经 {@link IncrementalSegmentIndex} 比对后只向量化内容变化的分块，并删除文档中已不存在的旧分块。
  */
 @Slf4j
 @Component
@@ -35,26 +37,30 @@ import java.util.List;
 public class EmbeddingListener {
 
     private final DynamicEmbeddingStoreRegistry embeddingStoreRegistry;
+    private final ElasticsearchBulkWriter bulkWriter;
     private final UniversalModelFactory modelFactory;
     private final ModelConfigService modelConfigService;
     private final DocumentInfoRepository documentInfoRepository;
     private final DocumentProcessService documentProcessService;
+    private final IngestionScheduler ingestionScheduler;
     private final KnowledgeBaseBuildService KnowledgeBaseBuildService;
+    private final EmbeddingPipeline embeddingPipeline;
 
     @Value("${embedding.model-name:text-embedding-v2}")
     private String embeddingModelName;
 
-    private static final int BATCH_SIZE = 10;
-
-    @Async("docProcessPool")
     @EventListener
     public void onDocumentChunked(DocumentChunkedEvent event) {
+        ingestionScheduler.submit(IngestionScheduler.Stage.EMBED, event.getMemberId(), () -> embed(event));
+    }
+
+    private void embed(DocumentChunkedEvent event) {
         Long documentId = event.getDocumentId();
         String taskId = event.getTaskId();
 
+        ElasticsearchBulkWriter.Session bulk = null;
         try {
             documentProcessService.updateStatus(documentId, DocumentStatus.EMBEDDING);
-            refreshKbBuildProgress(documentId);
 
             ModelConfig embeddingConfig = modelConfigService.findModel(
                     event.getMemberId(), embeddingModelName, ModelType.EMBEDDING);
@@ -62,42 +68,45 @@ public class EmbeddingListener {
                 throw new RuntimeException("Embedding 模型配置不存在：" + embeddingModelName);
             }
 
-            EmbeddingModel embeddingModel = modelFactory.createEmbeddingModel(embeddingConfig);
-            EmbeddingStore<TextSegment> embeddingStore =
-                    embeddingStoreRegistry.createEmbeddingStore(event.getIndexName());
-
-            List<TextSegment> segments = event.getEnhancedSegments();
-            int total = segments.size();
-            int processed = 0;
-
-            for (int i = 0; i < total; i += BATCH_SIZE) {
-                List<TextSegment> batch = segments.subList(i, Math.min(i + BATCH_SIZE, total));
-                List<Embedding> embeddings = embeddingModel.embedAll(batch).content();
-                embeddingStore.addAll(embeddings, batch);
-
-                processed += batch.size();
-                DocumentInfo info = documentInfoRepository.findById(documentId);
-                info.setProcessedChunks(processed);
-                documentInfoRepository.updateById(info);
-                refreshKbBuildProgress(documentId);
-            }
-
+            // 入库分块使用向量缓存的入库分段，不挤占查询向量
+            EmbeddingModel embeddingModel = CachingEmbeddingModel.forIngestion(
+                    modelFactory.createEmbeddingModel(embeddingConfig));
+            bulk = bulkWriter.open(event.getIndexName());
+
+            IncrementalSegmentIndex incremental =
+                    IncrementalSegmentIndex.open(embeddingStoreRegistry, event.getIndexName(), documentId);
+            List<TextSegment> changed = event.getEnhancedSegments().stream()
+                    .filter(segment -> !incremental.reuse(segment))
+                    .toList();
+            int reused = incremental.reused();
+
+            EmbeddingPipeline.Result result = embeddingPipeline.run(embeddingConfig.getModelProvider(),
+                    changed, embeddingModel, bulk::addAll,
+                    (processed, total, chunksPerSecond) -> {
+                        documentInfoRepository.updateEmbeddingProgress(
+                                documentId, reused + processed, reused + total, chunksPerSecond);
+                        KnowledgeBaseBuildService.embeddingProgress(
+                                documentId, reused + processed, reused + total, chunksPerSecond);
+                    });
+            ElasticsearchBulkWriter.Result written = bulk.finish();
+            IncrementalSegmentIndex.Result diff = incremental.finish();
+
+            documentInfoRepository.updateEmbeddingProgress(documentId, diff.total(), diff.total(), result.chunksPerSecond());
+            KnowledgeBaseBuildService.embeddingProgress(documentId, diff.total(), diff.total(), result.chunksPerSecond());
             documentProcessService.updateStatus(documentId, DocumentStatus.DONE);
-            refreshKbBuildProgress(documentId);
 
-            log.info("document vectorization completed, documentId={}, indexName={}, totalChunks={}",
-                    documentId, event.getIndexName(), total);
+            log.info("document vectorization completed, documentId={}, indexName={}, totalChunks={}, embedded={}, reused={}, deleted={}, batches={}, retries={}, bulkRequests={}, bulkRetries={}, elapsed={}ms, rate={} chunks/s",
+                    documentId, event.getIndexName(), diff.total(), result.chunks(), diff.reused(), diff.deleted(),
+                    result.batches(), result.retries(), written.requests(), written.retriedItems(),
+                    result.elapsedMillis(), String.format("%.1f", result.chunksPerSecond()));
 
         } catch (Exception e) {
             log.error("document vectorization failed, documentId={}", documentId, e);
             documentProcessService.markFailed(documentId, taskId, "向量化失败: " + e.getMessage());
-        }
-    }
-
-    private void refreshKbBuildProgress(Long documentId) {
-        DocumentInfo info = documentInfoRepository.findById(documentId);
-        if (info != null && info.getKbId() != null) {
-            KnowledgeBaseBuildService.refreshBuildProgress(info.getKbId());
+        } finally {
+            if (bulk != null) {
+                bulk.close();
+            }
         }
     }
 }
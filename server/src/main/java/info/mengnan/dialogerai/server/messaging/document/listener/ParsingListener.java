@@ -7,7 +7,10 @@ import info.mengnan.dialogerai.repository.entity.DocumentInfo;
 import info.mengnan.dialogerai.repository.enums.DocumentStatus;
 import info.mengnan.dialogerai.repository.repo.DocumentInfoRepository;
 import info.mengnan.dialogerai.server.core.DocumentEmbedding;
+import info.mengnan.dialogerai.server.core.StreamingDocumentIngestion;
 import info.mengnan.dialogerai.server.core.storage.FileUploadStorage;
+import info.mengnan.dialogerai.server.messaging.document.IngestionRecovery;
+import info.mengnan.dialogerai.server.messaging.document.IngestionScheduler;
 import info.mengnan.dialogerai.server.messaging.document.event.DocumentParsedEvent;
 import info.mengnan.dialogerai.server.messaging.document.event.DocumentUploadedEvent;
 import info.mengnan.dialogerai.server.service.DocumentProcessService;
@@ -16,7 +19,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
@@ -27,6 +29,9 @@ import java.util.List;
 /**
  * 阶段1：文档解析。
  * 监听 DocumentUploadedEvent，从磁盘文件中提取文本和图片内容元素。
+ * 开启流式入库（ingestion.streaming.enabled）时交由 {@link StreamingDocumentIngestion} 一次完成后续阶段，
+ * 否则按阶段发布 DocumentParsedEvent。
+ * 上传文件在文档处理结束时才删除，处理中断后可由 {@link IngestionRecovery} 重新解析。
  */
 @Slf4j
 @Component
@@ -40,30 +45,50 @@ public class ParsingListener {
     private final KnowledgeBaseBuildService KnowledgeBaseBuildService;
     private final ApplicationEventPublisher eventPublisher;
     private final FileUploadStorage fileStorage;
+    private final StreamingDocumentIngestion streamingIngestion;
+    private final IngestionScheduler ingestionScheduler;
 
-    @Async("docProcessPool")
     @EventListener
     public void onDocumentUploaded(DocumentUploadedEvent event) {
+        IngestionScheduler.Stage stage = streamingIngestion.isEnabled()
+                ? IngestionScheduler.Stage.STREAM
+                : IngestionScheduler.Stage.PARSE;
+        ingestionScheduler.submit(stage, event.getMemberId(), () -> parse(event));
+    }
+
+    private void parse(DocumentUploadedEvent event) {
         Long documentId = event.getDocumentId();
         String taskId = event.getTaskId();
 
         try {
+            Path filePath = fileStorage.resolvePath(event.getStoredName());
+            if (streamingIngestion.isEnabled()) {
+                streamingIngestion.ingest(event, filePath);
+                return;
+            }
+
             documentProcessService.updateStatus(documentId, DocumentStatus.PARSING);
-            refreshKbBuildProgress(documentId);
 
-            Path filePath = fileStorage.resolvePath(event.getStoredName());
             List<ContentElement> elements = sequentialExtractor.extractContentSequentially(filePath, event.getFileType());
-            Document document = documentEmbedding.parseDocument(filePath, event.getFileType());
-            String parsedText = document.text();
-            int charCount = parsedText != null ? parsedText.length() : 0;
 
-            // 顺序提取器目前只支持 docx/pptx；pdf/txt 等类型走通用解析文本兜底。
+            // 顺序提取器目前只支持 docx/pptx；pdf/txt 等类型走通用解析文本兜底，已提取到文本时不再重复解析。
             boolean hasTextElement = elements.stream()
                     .anyMatch(e -> e.getType() == ContentElement.Type.TEXT && StringUtils.hasText(e.getText()));
-            if (!hasTextElement && StringUtils.hasText(parsedText)) {
-                List<ContentElement> merged = new ArrayList<>(elements);
-                merged.add(ContentElement.ofText(parsedText, merged.size()));
-                elements = merged;
+            int charCount;
+            if (hasTextElement) {
+                charCount = elements.stream()
+                        .filter(e -> e.getType() == ContentElement.Type.TEXT && e.getText() != null)
+                        .mapToInt(e -> e.getText().length())
+                        .sum();
+            } else {
+                Document document = documentEmbedding.parseDocument(filePath, event.getFileType());
+                String parsedText = document.text();
+                charCount = parsedText != null ? parsedText.length() : 0;
+                if (StringUtils.hasText(parsedText)) {
+                    List<ContentElement> merged = new ArrayList<>(elements);
+                    merged.add(ContentElement.ofText(parsedText, merged.size()));
+                    elements = merged;
+                }
             }
 
             long imageCount = elements.stream()
@@ -73,8 +98,7 @@ public class ParsingListener {
             DocumentInfo info = documentInfoRepository.findById(documentId);
             info.setOriginalCharCount(charCount);
             documentInfoRepository.updateById(info);
-
-            refreshKbBuildProgress(documentId);
+            KnowledgeBaseBuildService.documentChanged(info);
 
             eventPublisher.publishEvent(new DocumentParsedEvent(
                     documentId, event.getMemberId(), taskId,
@@ -84,19 +108,6 @@ public class ParsingListener {
         } catch (Exception e) {
             log.error("document parsing failed, documentId={}", documentId, e);
             documentProcessService.markFailed(documentId, taskId, "解析失败: " + e.getMessage());
-        } finally {
-            try {
-                fileStorage.delete(event.getStoredName());
-            } catch (Exception ignore) {
-                log.warn("temporary file deletion failed: storedName={}", event.getStoredName());
-            }
-        }
-    }
-
-    private void refreshKbBuildProgress(Long documentId) {
-        DocumentInfo info = documentInfoRepository.findById(documentId);
-        if (info != null && info.getKbId() != null) {
-            KnowledgeBaseBuildService.refreshBuildProgress(info.getKbId());
         }
     }
 }
@@ -21,10 +21,11 @@ public enum ErrorCode {
     KB_NOT_DRAFT("2003", "仅草稿知识库可编辑"),
 
     // 文档
-    DOC_DUPLICATE("3001", "该知识库中已存在同名文档"),
+    DOC_DUPLICATE("3001", "该知识库中的同名文档正在处理，请完成后再上传"),
     DOC_NOT_FOUND("3002", "文档不存在"),
     DOC_NOT_READY("3003", "文档尚未处理完成，请稍后再试"),
     DOC_CONTENT_EMPTY("3004", "未找到可展示的文档内容"),
+    DOC_QUEUE_FULL("3005", "文档处理队列已满，请稍后再上传"),
     ;
 
     private final String code;
@@ -3,6 +3,7 @@ package info.mengnan.dialogerai.server.service;
 import info.mengnan.dialogerai.repository.entity.ChatMessage;
 import info.mengnan.dialogerai.repository.repo.ChatMessageRagSourceRepository;
 import info.mengnan.dialogerai.repository.repo.ChatMessageRepository;
+import info.mengnan.dialogerai.server.core.ChatHistoryCompactor;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -14,6 +15,7 @@ public class ChatMessageService {
 
     private final ChatMessageRepository chatMessageRepository;
     private final ChatMessageRagSourceRepository chatMessageRagSourceRepository;
+    private final ChatHistoryCompactor chatHistoryCompactor;
 
     public List<ChatMessage> findBySessionId(String sessionId) {
         return chatMessageRepository.findChat(sessionId);
@@ -31,6 +33,7 @@ public class ChatMessageService {
     public void truncateMessages(String sessionId, Long messageId) {
         chatMessageRepository.deleteByMessageIdGreaterThanOrEqual(sessionId, messageId);
         chatMessageRagSourceRepository.deleteByMessageIdGreaterThanOrEqual(sessionId, messageId);
+        chatHistoryCompactor.rebuild(sessionId);
     }
 
     public void deleteBySessionId(String sessionId) {
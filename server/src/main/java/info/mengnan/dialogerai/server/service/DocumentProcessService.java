@@ -8,6 +8,8 @@ import info.mengnan.dialogerai.repository.repo.KnowledgeBaseRepository;
 import info.mengnan.dialogerai.server.core.storage.FileUploadStorage;
 import info.mengnan.dialogerai.server.exception.BusinessException;
 import info.mengnan.dialogerai.server.param.ErrorCode;
+import info.mengnan.dialogerai.server.messaging.document.DocumentLeases;
+import info.mengnan.dialogerai.server.messaging.document.IngestionScheduler;
 import info.mengnan.dialogerai.server.messaging.document.event.DocumentUploadedEvent;
 import info.mengnan.dialogerai.server.param.document.CleaningConfig;
 import info.mengnan.dialogerai.server.param.document.DocumentUploadResponse;
@@ -18,9 +20,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * 文档处理过程中的状态管理，供四个阶段 Listener 共享复用。
+ * 上传时按 {@link IngestionScheduler} 的排队深度做准入，队列已满时直接拒绝。
+ * 上传文件保留到文档处理结束（DONE/FAILED），期间文档由本实例持有处理租约，中断后可据此恢复。
  */
 @Slf4j
 @Service
@@ -32,7 +37,16 @@ public class DocumentProcessService {
     private final KnowledgeBaseBuildService knowledgeBaseBuildService;
     private final ApplicationEventPublisher eventPublisher;
     private final FileUploadStorage fileStorage;
+    private final IngestionScheduler ingestionScheduler;
+    private final DocumentLeases leases;
 
+    private static final List<String> SETTLED_STATUSES =
+            List.of(DocumentStatus.DONE.name(), DocumentStatus.FAILED.name());
+
+    /**
+     * 上传文档并发布处理事件。
+     * 知识库中已有同名且已处理结束的文档时视为重新上传：沿用原文档 ID，入库时按分块内容哈希增量更新向量。
+     */
     public DocumentUploadResponse upload(MultipartFile file, Long kbId, String type, String cleaningJson, Long memberId) throws IOException {
         String originalFilename = file.getOriginalFilename();
 
@@ -40,15 +54,31 @@ public class DocumentProcessService {
         if (kb == null)
             throw new BusinessException(ErrorCode.KB_NOT_FOUND);
 
-        if (documentInfoRepository.findByKbIdAndOriginalName(kbId, originalFilename) != null)
+        DocumentInfo existing = documentInfoRepository.findByKbIdAndOriginalName(kbId, originalFilename);
+        if (existing != null && !isSettled(existing))
             throw new BusinessException(ErrorCode.DOC_DUPLICATE);
 
+        if (!ingestionScheduler.hasCapacity(memberId))
+            throw new BusinessException(ErrorCode.DOC_QUEUE_FULL);
+
         FileUploadStorage.StoredFile storedFile = fileStorage.store(file.getInputStream(), originalFilename, memberId);
         String fileType = getFileExtension(originalFilename);
         CleaningConfig cleaningConfig = CleaningConfig.fromJson(cleaningJson);
 
         DocumentInfo docInfo = buildDocumentInfo(memberId, kbId, originalFilename, storedFile, fileType, type, cleaningConfig, file.getSize(), kb.getIndexName());
-        documentInfoRepository.insert(docInfo);
+        docInfo.setLeaseOwner(leases.owner());
+        docInfo.setLeaseExpiresAt(leases.nextExpiry());
+        if (existing != null) {
+            docInfo.setId(existing.getId());
+            // isSettled 之后可能有并发的重新上传已重置该文档，只有条件更新成功的一方继续处理
+            if (!documentInfoRepository.resetForReindex(docInfo, SETTLED_STATUSES)) {
+                deleteQuietly(storedFile.getStoredName());
+                throw new BusinessException(ErrorCode.DOC_DUPLICATE);
+            }
+        } else {
+            documentInfoRepository.insert(docInfo);
+        }
+        leases.hold(docInfo.getId());
 
         String taskId = knowledgeBaseBuildService.ensureBuildTask(kbId, memberId);
         docInfo.setTaskId(taskId);
@@ -61,14 +91,14 @@ public class DocumentProcessService {
                 fileType, type, cleaningConfig
         ));
 
-        log.info("document uploaded to kb: kbId={}, originalName={}, documentId={}, taskId={}",
-                kbId, originalFilename, docInfo.getId(), taskId);
+        log.info("document uploaded to kb: kbId={}, originalName={}, documentId={}, taskId={}, reindex={}",
+                kbId, originalFilename, docInfo.getId(), taskId, existing != null);
 
         return new DocumentUploadResponse(docInfo.getId(), kbId, taskId, originalFilename);
     }
 
     /**
-     * 更新 document_info.status。
+     * 更新 document_info.status，并通知构建进度。
      */
     public void updateStatus(Long documentId, DocumentStatus status) {
         DocumentInfo info = documentInfoRepository.findById(documentId);
@@ -78,6 +108,10 @@ public class DocumentProcessService {
         }
         info.setStatus(status.name());
         documentInfoRepository.updateById(info);
+        knowledgeBaseBuildService.documentChanged(info);
+        if (status == DocumentStatus.DONE) {
+            finish(info);
+        }
     }
 
     /**
@@ -89,13 +123,36 @@ public class DocumentProcessService {
             info.setStatus(DocumentStatus.FAILED.name());
             info.setErrorMessage(errorMessage);
             documentInfoRepository.updateById(info);
+            finish(info);
         }
-        if (info != null && info.getKbId() != null) {
-            knowledgeBaseBuildService.refreshBuildProgress(info.getKbId());
-        }
+        knowledgeBaseBuildService.documentChanged(info);
         log.error("document processing failed: documentId={}, taskId={}, reason={}", documentId, taskId, errorMessage);
     }
 
+    /**
+     * 文档处理结束：释放租约并删除上传文件
+     */
+    private void finish(DocumentInfo info) {
+        leases.release(info.getId());
+        try {
+            fileStorage.delete(info.getStoredName());
+        } catch (Exception e) {
+            log.warn("temporary file deletion failed: storedName={}", info.getStoredName());
+        }
+    }
+
+    private boolean isSettled(DocumentInfo doc) {
+        return SETTLED_STATUSES.contains(doc.getStatus());
+    }
+
+    private void deleteQuietly(String storedName) {
+        try {
+            fileStorage.delete(storedName);
+        } catch (Exception e) {
+            log.warn("Failed to delete stored file {}", storedName, e);
+        }
+    }
+
     private DocumentInfo buildDocumentInfo(Long memberId, Long kbId, String originalFilename,
                                            FileUploadStorage.StoredFile storedFile, String fileType,
                                            String type, CleaningConfig cleaningConfig,
@@ -90,7 +90,7 @@ public class ImageProcessingService {
 
         // 调用 directModelInvoker 进行图片识别
         try {
-            String imageDescription = directModelInvoker.imageToText(imageData, promptTemplate, mimeType);
+            String imageDescription = directModelInvoker.imageToText("imageProcessing.base64", imageData, promptTemplate, mimeType);
             return imageDescription != null ? imageDescription : IMAGE_PLACEHOLDER;
         } catch (Exception e) {
             log.error("Failed to recognize image from base64", e);
@@ -117,7 +117,7 @@ public class ImageProcessingService {
         String mimeType = inferMimeTypeFromUrl(imageUrl);
         try {
             // 调用 directModelInvoker 进行图片识别
-            String imageDescription = directModelInvoker.imageToText(imageData, promptTemplate, mimeType);
+            String imageDescription = directModelInvoker.imageToText("imageProcessing.url", imageData, promptTemplate, mimeType);
             return imageDescription != null ? imageDescription : IMAGE_PLACEHOLDER;
         } catch (Exception e) {
             log.error("Failed to recognize image from HTTP URL: {}", imageUrl, e);
@@ -12,33 +12,64 @@ import info.mengnan.dialogerai.repository.entity.KnowledgeBase;
 import info.mengnan.dialogerai.repository.repo.AsyncTaskRepository;
 import info.mengnan.dialogerai.repository.repo.DocumentInfoRepository;
 import info.mengnan.dialogerai.repository.repo.KnowledgeBaseRepository;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 知识库维度构建任务：按库内文档状态聚合四步流水线进度。
+ * <p>
+ * 构建进行中的知识库在内存中保留文档快照与任务进度，由各阶段的文档状态变化驱动重新计算，
+ * 写回 async_task 的频率不超过每 {@value #FLUSH_INTERVAL_MILLIS} 毫秒一次，任务结束时立即写回并释放。
+ * 构建期间轮询任务进度直接读取内存中的结果。
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class KnowledgeBaseBuildService {
 
     private static final List<String> KB_BUILD_STEP_LABELS = List.of(
             "文档解析", "内容清洗", "文本分块", "文档向量化"
     );
 
+    /**
+     * 进度写回 async_task 的最小间隔
+     */
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
     private final KnowledgeBaseRepository knowledgeBaseRepository;
     private final DocumentInfoRepository documentInfoRepository;
     private final AsyncTaskRepository asyncTaskRepository;
     private final AsyncTaskService asyncTaskService;
+    private final TaskScheduler scheduler;
+
+    private final Map<Long, LiveBuild> liveBuilds = new ConcurrentHashMap<>();
+    private final Map<String, LiveBuild> liveBuildsByTaskId = new ConcurrentHashMap<>();
+
+    public KnowledgeBaseBuildService(KnowledgeBaseRepository knowledgeBaseRepository,
+                                     DocumentInfoRepository documentInfoRepository,
+                                     AsyncTaskRepository asyncTaskRepository,
+                                     AsyncTaskService asyncTaskService,
+                                     @Qualifier("progressFlushScheduler") TaskScheduler scheduler) {
+        this.knowledgeBaseRepository = knowledgeBaseRepository;
+        this.documentInfoRepository = documentInfoRepository;
+        this.asyncTaskRepository = asyncTaskRepository;
+        this.asyncTaskService = asyncTaskService;
+        this.scheduler = scheduler;
+    }
 
     /**
      * 确保知识库存在 {@link AsyncTaskType#KB_BUILD} 任务，并写入 {@code knowledge_base.build_task_id}。
@@ -64,29 +95,196 @@ public class KnowledgeBaseBuildService {
     }
 
     /**
-     * 根据库内文档处理状态刷新四步构建进度。
+     * 从数据库重新加载库内文档，刷新四步构建进度并立即写回。
+     * 文档增删等无法由单个文档变化描述的场景调用；任务结束或库内已无文档时释放内存中的构建。
      */
     public void refreshBuildProgress(Long kbId) {
+        LiveBuild live = liveBuilds.get(kbId);
+        if (live == null) {
+            live = loadLiveBuild(kbId);
+            if (live == null) {
+                return;
+            }
+        } else {
+            synchronized (live) {
+                live.docs.clear();
+                for (DocumentInfo doc : loadDocs(kbId)) {
+                    live.docs.put(doc.getId(), doc);
+                }
+            }
+        }
+        synchronized (live) {
+            if (!recompute(live)) {
+                release(live);
+                return;
+            }
+            flush(live);
+            if (isFinished(live)) {
+                release(live);
+            }
+        }
+    }
+
+    /**
+     * 文档状态或计数发生变化后调用，传入已写入数据库的最新文档。
+     * 只更新内存中的快照并重新计算进度，按间隔节流写回。
+     */
+    public void documentChanged(DocumentInfo doc) {
+        if (doc == null || doc.getKbId() == null) {
+            return;
+        }
+        LiveBuild live = liveBuilds.get(doc.getKbId());
+        if (live == null) {
+            // 首次变化时从数据库加载，已包含本次写入
+            live = loadLiveBuild(doc.getKbId());
+            if (live == null) {
+                return;
+            }
+        }
+        DocumentInfo snapshot = new DocumentInfo();
+        BeanUtils.copyProperties(doc, snapshot);
+        synchronized (live) {
+            if (snapshot.getDeleted() != null && snapshot.getDeleted() != 0) {
+                live.docs.remove(snapshot.getId());
+            } else {
+                live.docs.put(snapshot.getId(), snapshot);
+            }
+            changed(live);
+        }
+    }
+
+    /**
+     * 向量化进度变化，只更新内存中的计数，不读取数据库。
+     */
+    public void embeddingProgress(Long documentId, int processedChunks, int totalChunks, double embeddingRate) {
+        for (LiveBuild live : liveBuilds.values()) {
+            synchronized (live) {
+                DocumentInfo doc = live.docs.get(documentId);
+                if (doc != null) {
+                    doc.setProcessedChunks(processedChunks);
+                    doc.setTotalChunks(totalChunks);
+                    doc.setEmbeddingRate(embeddingRate);
+                    changed(live);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 构建进行中的任务进度，任务不在构建中时返回 null
+     */
+    public AsyncTask liveTask(String taskId) {
+        LiveBuild live = liveBuildsByTaskId.get(taskId);
+        if (live == null) {
+            return null;
+        }
+        synchronized (live) {
+            AsyncTask copy = new AsyncTask();
+            BeanUtils.copyProperties(live.task, copy);
+            return copy;
+        }
+    }
+
+    private LiveBuild loadLiveBuild(Long kbId) {
         KnowledgeBase kb = knowledgeBaseRepository.findById(kbId);
         if (kb == null || !StringUtils.hasText(kb.getBuildTaskId())) {
-            return;
+            return null;
         }
 
         AsyncTask task = asyncTaskRepository.findByTaskId(kb.getBuildTaskId());
         if (task == null) {
-            return;
+            return null;
+        }
+
+        LiveBuild loaded = new LiveBuild(kbId, task, parseSteps(task.getSteps()));
+        for (DocumentInfo doc : loadDocs(kbId)) {
+            loaded.docs.put(doc.getId(), doc);
         }
+        LiveBuild existing = liveBuilds.putIfAbsent(kbId, loaded);
+        if (existing != null) {
+            return existing;
+        }
+        liveBuildsByTaskId.put(task.getTaskId(), loaded);
+        return loaded;
+    }
 
-        List<DocumentInfo> docs = documentInfoRepository.findByKbId(kbId).stream()
+    private List<DocumentInfo> loadDocs(Long kbId) {
+        return documentInfoRepository.findByKbId(kbId).stream()
                 .filter(d -> d.getDeleted() == null || d.getDeleted() == 0)
                 .toList();
+    }
 
-        if (docs.isEmpty()) {
+    /**
+     * 进度变化后的写回策略：任务结束立即写回并释放，否则距上次写回不足间隔时延迟写回
+     */
+    private void changed(LiveBuild live) {
+        if (!recompute(live)) {
+            return;
+        }
+        if (isFinished(live)) {
+            flush(live);
+            release(live);
             return;
         }
+        long sinceFlush = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - live.flushedAt);
+        if (sinceFlush >= FLUSH_INTERVAL_MILLIS) {
+            flush(live);
+        } else if (!live.flushScheduled) {
+            live.flushScheduled = true;
+            try {
+                scheduler.schedule(() -> scheduledFlush(live),
+                        Instant.now().plusMillis(FLUSH_INTERVAL_MILLIS - sinceFlush));
+            } catch (TaskRejectedException e) {
+                live.flushScheduled = false;
+                flush(live);
+            }
+        }
+    }
+
+    private static boolean isFinished(LiveBuild live) {
+        AsyncTaskStatus status = live.task.getStatus();
+        return status == AsyncTaskStatus.COMPLETED || status == AsyncTaskStatus.FAILED;
+    }
 
-        List<AsyncTaskStepDetail> previous = parseSteps(task.getSteps());
-        List<AsyncTaskStepDetail> steps = buildAggregatedSteps(docs, previous);
+    private void scheduledFlush(LiveBuild live) {
+        synchronized (live) {
+            live.flushScheduled = false;
+            if (live.dirty) {
+                flush(live);
+            }
+        }
+    }
+
+    private void flush(LiveBuild live) {
+        try {
+            asyncTaskRepository.updateById(live.task);
+            live.dirty = false;
+        } catch (Exception e) {
+            log.error("Failed to flush KB build progress: kbId={}, taskId={}", live.kbId, live.task.getTaskId(), e);
+        }
+        live.flushedAt = System.nanoTime();
+    }
+
+    private void release(LiveBuild live) {
+        liveBuilds.remove(live.kbId, live);
+        liveBuildsByTaskId.remove(live.task.getTaskId(), live);
+    }
+
+    /**
+     * 按内存中的文档快照重新计算任务进度
+     *
+     * @return 库内没有文档时返回 false，不更新任务
+     */
+    private boolean recompute(LiveBuild live) {
+        List<DocumentInfo> docs = new ArrayList<>(live.docs.values());
+        if (docs.isEmpty()) {
+            return false;
+        }
+        AsyncTask task = live.task;
+
+        List<AsyncTaskStepDetail> steps = buildAggregatedSteps(docs, live.steps);
+        live.steps = steps;
 
         task.setSteps(JSONUtil.toJsonStr(steps));
         task.setTotalSteps(KB_BUILD_STEP_LABELS.size());
@@ -97,12 +295,13 @@ public class KnowledgeBaseBuildService {
         } else if (task.getStatus() == AsyncTaskStatus.COMPLETED) {
             task.setErrorMessage(null);
             task.setResult(JSONUtil.toJsonStr(Map.of(
-                    "kbId", kbId,
+                    "kbId", live.kbId,
                     "documentCount", docs.size(),
                     "message", "知识库构建完成"
             )));
         }
-        asyncTaskRepository.updateById(task);
+        live.dirty = true;
+        return true;
     }
 
     private List<AsyncTaskStepDetail> buildAggregatedSteps(List<DocumentInfo> docs,
@@ -207,8 +406,18 @@ public class KnowledgeBaseBuildService {
                 int total = active.getTotalChunks() != null ? active.getTotalChunks() : 0;
                 summary.put("processedChunks", processed);
                 summary.put("totalChunks", total);
+                if (active.getEmbeddingRate() != null) {
+                    summary.put("chunksPerSecond", roundRate(active.getEmbeddingRate()));
+                }
             }
         }
+        if (step == 4 && status == AsyncTaskStepStatus.COMPLETED) {
+            docs.stream()
+                    .filter(d -> DocumentStatus.DONE.name().equals(d.getStatus()) && d.getEmbeddingRate() != null)
+                    .mapToDouble(DocumentInfo::getEmbeddingRate)
+                    .average()
+                    .ifPresent(rate -> summary.put("chunksPerSecond", roundRate(rate)));
+        }
         long doneCount = docs.stream().filter(d -> DocumentStatus.DONE.name().equals(d.getStatus())).count();
         summary.put("doneDocuments", doneCount);
         summary.put("totalDocuments", docs.size());
@@ -244,12 +453,18 @@ public class KnowledgeBaseBuildService {
             case 4 -> {
                 int processed = active.getProcessedChunks() != null ? active.getProcessedChunks() : 0;
                 int total = active.getTotalChunks() != null ? active.getTotalChunks() : 0;
-                yield name + " 正在向量化（" + processed + "/" + total + "）";
+                String rate = active.getEmbeddingRate() != null
+                        ? "，" + roundRate(active.getEmbeddingRate()) + " 块/秒" : "";
+                yield name + " 正在向量化（" + processed + "/" + total + rate + "）";
             }
             default -> null;
         };
     }
 
+    private static double roundRate(double rate) {
+        return Math.round(rate * 10) / 10D;
+    }
+
     private DocumentInfo findActiveDocForStep(int step, List<DocumentInfo> docs) {
         DocumentStatus target = switch (step) {
             case 1 -> DocumentStatus.PARSING;
@@ -319,4 +534,23 @@ public class KnowledgeBaseBuildService {
         }
         return new ArrayList<>(steps);
     }
+
+    /**
+     * 构建进行中的知识库：文档快照按 ID 保存，所有访问在实例锁内进行
+     */
+    private static final class LiveBuild {
+        private final Long kbId;
+        private final AsyncTask task;
+        private final Map<Long, DocumentInfo> docs = new LinkedHashMap<>();
+        private List<AsyncTaskStepDetail> steps;
+        private boolean dirty;
+        private boolean flushScheduled;
+        private long flushedAt = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS);
+
+        private LiveBuild(Long kbId, AsyncTask task, List<AsyncTaskStepDetail> steps) {
+            this.kbId = kbId;
+            this.task = task;
+            this.steps = steps;
+        }
+    }
 }
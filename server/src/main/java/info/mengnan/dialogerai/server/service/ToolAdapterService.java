@@ -12,14 +12,18 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
  * 工具配置类
  * 负责从数据库加载工具描述并创建动态工具
+ * 所有用户共享同一个 {@link Tools}（GraalVM Engine），每个用户使用独立的 Context 池，
+ * 按用户缓存已创建的工具，工具变更时一并失效
  */
 @Slf4j
 @Service
@@ -28,16 +32,29 @@ public class ToolAdapterService {
 
     private final ToolDescriptionRepository toolDescriptionService;
     private final BizConfigService bizConfigService;
+    private final Tools tools;
+
+    private final Map<Long, Map<ToolSpecification, ToolExecutor>> toolCache = new ConcurrentHashMap<>();
 
     private static final String NODE_MODULES_PATH = System.getProperty("user.dir") + "/tool";
 
 
     public Map<ToolSpecification, ToolExecutor> dynamicTools(Long memberId) {
-        log.info("Creating and initializing dynamic tools...");
+        return toolCache.computeIfAbsent(memberId, this::createDynamicTools);
+    }
+
+    /**
+     * 使指定用户的工具缓存失效（工具新增、修改、删除时调用）
+     */
+    public void invalidate(Long memberId) {
+        tools.invalidate(memberId);
+        if (toolCache.remove(memberId) != null) {
+            log.info("Invalidated dynamic tools for member {}", memberId);
+        }
+    }
 
-        Tools tools = new Tools(
-                key -> bizConfigService.getPlainValue(memberId, key)
-        );
+    private Map<ToolSpecification, ToolExecutor> createDynamicTools(Long memberId) {
+        log.info("Creating dynamic tools for member {}...", memberId);
 
         // 从数据库查询所有工具描述
         List<ChatToolDescription> toolEntities = toolDescriptionService.findByMemberId(memberId);
@@ -45,11 +62,12 @@ public class ToolAdapterService {
                 .map(this::convertToDescription)
                 .collect(Collectors.toList());
 
-        // 创建动态工具
-        Map<ToolSpecification, ToolExecutor> dynamicTools = tools.createDynamicTools(toolDescriptions);
+        // 创建动态工具，config 在执行时实时读取，业务配置变更无需失效缓存
+        Map<ToolSpecification, ToolExecutor> dynamicTools = tools.createDynamicTools(memberId, toolDescriptions,
+                key -> bizConfigService.getPlainValue(memberId, key));
 
         log.info("Dynamic tools initialized successfully with {} tools", dynamicTools.size());
-        return dynamicTools;
+        return Collections.unmodifiableMap(dynamicTools);
     }
 
     /**
@@ -85,12 +103,9 @@ public class ToolAdapterService {
      * @return 执行结果
      */
     public String executeTool(ChatToolDescription tool, String parameters) {
-        Tools tools = new Tools(
-                key -> bizConfigService.getPlainValue(tool.getMemberId(), key)
-        );
-
         ToolDescription toolDescription = convertToDescription(tool);
-        Map<ToolSpecification, ToolExecutor> toolMap = tools.createDynamicTools(List.of(toolDescription));
+        Map<ToolSpecification, ToolExecutor> toolMap = tools.createDynamicTools(tool.getMemberId(), List.of(toolDescription),
+                key -> bizConfigService.getPlainValue(tool.getMemberId(), key));
 
         if (toolMap.isEmpty()) {
             throw new RuntimeException("工具执行器创建失败");
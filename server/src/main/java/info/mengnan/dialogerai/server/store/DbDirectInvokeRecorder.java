@@ -0,0 +1,135 @@
+package info.mengnan.dialogerai.server.store;
+
+import info.mengnan.dialogerai.rag.service.DirectInvokeRecorder;
+import info.mengnan.dialogerai.repository.entity.DirectModelInvokeLog;
+import info.mengnan.dialogerai.repository.repo.DirectModelInvokeLogRepository;
+import info.mengnan.dialogerai.server.core.TokenCounting;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 直接模型调用记录写入 direct_model_invoke_log
+ * 调用线程只入队，队列满时丢弃并计数；后台线程定期取出，按批多行插入。
+ * 模型未返回 token 用量时在写入线程中计算。
+ */
+@Slf4j
+@Component
+public class DbDirectInvokeRecorder implements DirectInvokeRecorder {
+
+    private static final int QUEUE_CAPACITY = 10_000;
+    /**
+     * 每条多行 INSERT 的最大行数；记录带完整的提示词与回复文本，批次过大时单条语句可能超过 max_allowed_packet
+     */
+    private static final int BATCH_SIZE = 100;
+    private static final Duration FLUSH_INTERVAL = Duration.ofSeconds(1);
+
+    private final DirectModelInvokeLogRepository repository;
+    private final TokenCounting tokenCounting;
+    private final TaskScheduler scheduler;
+
+    private final BlockingQueue<Invocation> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private ScheduledFuture<?> flusher;
+
+    public DbDirectInvokeRecorder(DirectModelInvokeLogRepository repository,
+                                  TokenCounting tokenCounting,
+                                  @Qualifier("invokeLogScheduler") TaskScheduler scheduler) {
+        this.repository = repository;
+        this.tokenCounting = tokenCounting;
+        this.scheduler = scheduler;
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = scheduler.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) {
+            flusher.cancel(false);
+        }
+        flush();
+    }
+
+    @Override
+    public void record(Invocation invocation) {
+        if (queue.offer(invocation)) {
+            recorded.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * 写入队列中的全部记录，写入失败的批次丢弃
+     */
+    synchronized void flush() {
+        List<Invocation> batch = new ArrayList<>(BATCH_SIZE);
+        while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+            try {
+                repository.batchInsert(batch.stream().map(this::toEntity).toList());
+                written.add(batch.size());
+            } catch (Exception e) {
+                failed.add(batch.size());
+                log.warn("Failed to write {} direct invoke log(s)", batch.size(), e);
+            }
+            batch.clear();
+        }
+    }
+
+    private DirectModelInvokeLog toEntity(Invocation invocation) {
+        DirectModelInvokeLog entity = new DirectModelInvokeLog();
+        entity.setInvokeSource(invocation.invokeSource());
+        entity.setTemplateName(invocation.templateName());
+        entity.setPromptText(invocation.promptText());
+        entity.setModelProvider(invocation.modelProvider());
+        entity.setModelName(invocation.modelName());
+        entity.setResponseText(invocation.responseText());
+        entity.setSuccess(invocation.outcome() == Outcome.SUCCESS);
+        entity.setOutcome(invocation.outcome().name());
+        entity.setErrorMessage(invocation.errorMessage());
+        entity.setAttempts(invocation.attempts());
+        if (invocation.attempts() > 0) {
+            entity.setPromptTokens(invocation.promptTokens() != null
+                    ? invocation.promptTokens() : tokenCounting.countTokens(invocation.promptText()));
+        }
+        if (invocation.responseText() != null) {
+            entity.setResponseTokens(invocation.responseTokens() != null
+                    ? invocation.responseTokens() : tokenCounting.countTokens(invocation.responseText()));
+        }
+        entity.setDurationMs(invocation.durationMs());
+        entity.setCreatedAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(invocation.finishedAt()), ZoneId.systemDefault()));
+        return entity;
+    }
+
+    public Stats stats() {
+        return new Stats(queue.size(), recorded.sum(), written.sum(), dropped.sum(), failed.sum());
+    }
+
+    public record Stats(int queued,
+                        long recorded,
+                        long written,
+                        long dropped,
+                        long failed) {
+    }
+}
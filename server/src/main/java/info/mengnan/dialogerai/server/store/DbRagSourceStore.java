@@ -8,6 +8,11 @@ import org.springframework.stereotype.Component;
 
 import java.util.List;
 
+/**
+ * RAG 源持久化
+ * pending 记录（message_id 为空）写入数据库，重启后与其他实例均可见；
+ * 一轮检索的命中片段一次多行插入，ASSISTANT 消息保存后由一条 UPDATE 绑定 message_id
+ */
 @Component
 @RequiredArgsConstructor
 public class DbRagSourceStore implements RagSourceStore {
@@ -34,4 +39,16 @@ public class DbRagSourceStore implements RagSourceStore {
     public void linkToMessage(String sessionId, Long messageId) {
         repository.linkToMessage(sessionId, messageId);
     }
+
+    @Override
+    public List<RagSource> findPending(String sessionId) {
+        return repository.findPending(sessionId).stream()
+                .map(e -> new RagSource(e.getKbName(), e.getIndexName(), e.getContent()))
+                .toList();
+    }
+
+    @Override
+    public void discardPending(String sessionId) {
+        repository.deletePending(sessionId);
+    }
 }
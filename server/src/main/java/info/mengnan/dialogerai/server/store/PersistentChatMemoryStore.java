@@ -13,10 +13,12 @@ import dev.langchain4j.store.memory.chat.ChatMemoryStore;
 import info.mengnan.dialogerai.repository.entity.ChatMessage;
 import info.mengnan.dialogerai.repository.entity.ChatMessageExtras;
 import info.mengnan.dialogerai.repository.entity.ChatMessageRagSource;
+import info.mengnan.dialogerai.repository.entity.ChatSession;
 import info.mengnan.dialogerai.repository.repo.ChatMessageRagSourceRepository;
 import info.mengnan.dialogerai.repository.repo.ChatMessageRepository;
+import info.mengnan.dialogerai.repository.repo.ChatSessionRepository;
 import info.mengnan.dialogerai.rag.injector.RagSourceStore;
-import info.mengnan.dialogerai.server.core.ChatHistoryCompressing;
+import info.mengnan.dialogerai.server.core.ChatHistoryCompactor;
 import info.mengnan.dialogerai.server.core.TokenCounting;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
@@ -26,10 +28,18 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import static info.mengnan.dialogerai.common.param.MessageRole.*;
+import static info.mengnan.dialogerai.server.core.ChatHistoryCompactor.COMPRESSIBLE_ROLES;
+import static info.mengnan.dialogerai.server.core.ChatHistoryCompactor.COMPRESS_TOKEN_THRESHOLD;
 import static info.mengnan.dialogerai.rag.config.DefaultModelConfig.DEFAULT_SESSION;
 import static info.mengnan.dialogerai.rag.constant.promptTemplate.PromptTemplateConstant.CONTENT_INJECTION_SEPARATOR;
 import static info.mengnan.dialogerai.rag.constant.promptTemplate.PromptTemplateConstant.CONTENT_INJECTOR_PROMPT_TEMPLATE;
 
+/**
+ * 基于数据库的 ChatMemoryStore
+ * chat_session 记录最后一条压缩摘要的ID与其后的累计 token 数，
+ * 读取时只加载摘要与压缩点之后的消息，写入时只累加当前消息的 token，不随历史长度增长；
+ * 超过阈值时提交给 {@link ChatHistoryCompactor} 在后台压缩
+ */
 @Component
 @RequiredArgsConstructor
 public class PersistentChatMemoryStore implements ChatMemoryStore {
@@ -38,42 +48,28 @@ public class PersistentChatMemoryStore implements ChatMemoryStore {
             new DefaultContentInjector(CONTENT_INJECTOR_PROMPT_TEMPLATE);
 
     private final ChatMessageRepository chatMessageService;
-    private final ChatHistoryCompressing compressing;
+    private final ChatHistoryCompactor compactor;
     private final TokenCounting tokenCounting;
     private final RagSourceStore ragSourceStore;
     private final ChatMessageRagSourceRepository chatMessageRagSourceRepository;
+    private final ChatSessionRepository chatSessionRepository;
 
     @Override
     public List<dev.langchain4j.data.message.ChatMessage> getMessages(Object memoryId) {
         String sessionId = memoryId.toString();
-        // 查询所有消息类型
-        List<ChatMessage> dbMessages = chatMessageService.findChat(sessionId);
-
-        // 找到最后一个 compress 消息的索引
-        int lastCompressIndex = -1;
-        for (int i = dbMessages.size() - 1; i >= 0; i--) {
-            if (COMPRESS.equals(dbMessages.get(i).getRole())) {
-                lastCompressIndex = i;
-                break;
-            }
-        }
+        // 只查询最后一条压缩摘要及其覆盖点之后的消息（发送给 LLM 的部分）
+        List<ChatMessage> filtered = compactor.activeHistory(sessionId, chatSessionRepository.findBySessionId(sessionId), null);
 
-        // 过滤出要发送给 LLM 的消息（从 compress 之后开始收集）
-        List<ChatMessage> filtered = new ArrayList<>();
-        if (lastCompressIndex != -1) {
-            // 从 compress 消息之后开始添加
-            for (int i = lastCompressIndex + 1; i < dbMessages.size(); i++) {
-                filtered.add(dbMessages.get(i));
-            }
-        } else {
-            // 没有 compress 消息，添加所有
-            filtered.addAll(dbMessages);
-        }
-
-        // 已关联消息 ID 的（历史对话的 RAG 内容，关联的是 ASSISTANT 消息 ID）
-        Map<Long, List<ChatMessageRagSource>> ragSourceByAssistantId = chatMessageRagSourceRepository.findGroupedByMessage(sessionId);
-        // message_id 为 null 的 pending 记录（当前最新一轮的 RAG 内容）
-        List<ChatMessageRagSource> pendingRagSources = chatMessageRagSourceRepository.findPending(sessionId);
+        // 已关联消息 ID 的（历史对话的 RAG 内容，关联的是 ASSISTANT 消息 ID），只查询当前窗口内的 ASSISTANT 消息
+        List<Long> assistantIds = filtered.stream()
+                .filter(m -> ASSISTANT.equals(m.getRole()))
+                .map(ChatMessage::getId)
+                .toList();
+        Map<Long, List<ChatMessageRagSource>> ragSourceByAssistantId = chatMessageRagSourceRepository.findGroupedByMessageIds(assistantIds);
+        // 尚未绑定消息的 pending 记录（当前最新一轮的 RAG 内容）
+        List<String> pendingRagSources = ragSourceStore.findPending(sessionId).stream()
+                .map(RagSourceStore.RagSource::text)
+                .toList();
 
         boolean pendingRagUsed = false;
         List<dev.langchain4j.data.message.ChatMessage> result = new ArrayList<>();
@@ -89,13 +85,16 @@ public class PersistentChatMemoryStore implements ChatMemoryStore {
 
             if (USER.equals(role)) {
                 // 获取当前USER消息的RAG来源
-                List<ChatMessageRagSource> ragSources = null;
+                List<String> ragSources = null;
 
                 // 检查下一条消息是否是ASSISTANT
                 if (i + 1 < filtered.size() && ASSISTANT.equals(filtered.get(i + 1).getRole())) {
                     // 如果下一条是ASSISTANT，获取该ASSISTANT对应的RAG来源
                     ChatMessage nextAssistant = filtered.get(i + 1);
-                    ragSources = ragSourceByMessageId.get(nextAssistant.getId());
+                    List<ChatMessageRagSource> linked = ragSourceByMessageId.get(nextAssistant.getId());
+                    if (linked != null) {
+                        ragSources = linked.stream().map(ChatMessageRagSource::getContent).toList();
+                    }
                 }
                 else if (i == filtered.size() - 1 ||
                         (i + 1 < filtered.size() && !ASSISTANT.equals(filtered.get(i + 1).getRole()))) {
@@ -168,15 +167,20 @@ public class PersistentChatMemoryStore implements ChatMemoryStore {
             chatMessageService.insert(dbMessage);
         }
 
-        List<ChatMessage> chats = chatMessageService.findChat(sessionId, List.of(USER.n(), ASSISTANT.n(), COMPRESS.n(), TOOL.n()));
-        if (messages.size() > 1) {
-            int summary = 0;
-            for (ChatMessage chat : chats) {
-                summary += tokenCounting.estimateTokenCount(chat.getContent());
+        // 只累加本条消息的 token，不再重新统计整个会话
+        if (dbMessage.getId() != null && COMPRESSIBLE_ROLES.contains(dbMessage.getRole())) {
+            int tokens = tokenCounting.estimateTokenCount(dbMessage.getContent());
+            if (tokens > 0) {
+                chatSessionRepository.addTokenCount(sessionId, tokens);
             }
-            if (summary > 1500) {
-                String compressRes = compressing.compressHistory(chats);
-                saveCompressedSummary(sessionId, compressRes, chats);
+        }
+
+        if (messages.size() > 1) {
+            ChatSession session = chatSessionRepository.findBySessionId(sessionId);
+            if (session != null && session.getTokenCount() != null
+                    && session.getTokenCount() > COMPRESS_TOKEN_THRESHOLD) {
+                // 压缩需要调用 LLM，放到后台执行，不阻塞本次回复
+                compactor.submit(sessionId);
             }
         }
     }
@@ -232,9 +236,9 @@ public class PersistentChatMemoryStore implements ChatMemoryStore {
         return ex;
     }
 
-    private static ChatMessage withRagContent(ChatMessage original, List<ChatMessageRagSource> sources) {
+    private static ChatMessage withRagContent(ChatMessage original, List<String> sources) {
         List<Content> contents = sources.stream()
-                .map(s -> Content.from(TextSegment.from(s.getContent())))
+                .map(s -> Content.from(TextSegment.from(s)))
                 .toList();
         String text = original.getContent() != null ? original.getContent() : "";
         ChatMessageExtras ex = original.getExtras();
@@ -253,24 +257,11 @@ public class PersistentChatMemoryStore implements ChatMemoryStore {
         return copy;
     }
 
-    private void saveCompressedSummary(String sessionId, String summary, List<ChatMessage> originalMessages) {
-        ChatMessage lastMsg = originalMessages.get(originalMessages.size() - 1);
-
-        ChatMessage summaryMessage = new ChatMessage();
-        summaryMessage.setSessionId(sessionId);
-        summaryMessage.setRole(COMPRESS.n());
-
-        String summaryWithMeta = String.format("[历史对话摘要 - 压缩了 %d 条消息]\n%s", originalMessages.size(), summary);
-        summaryMessage.setContent(summaryWithMeta);
-
-        summaryMessage.setCreatedAt(lastMsg.getCreatedAt());
-        chatMessageService.insert(summaryMessage);
-    }
-
     @Override
     public void deleteMessages(Object memoryId) {
         String sessionId = memoryId.toString();
         chatMessageService.deleteBySessionId(sessionId);
+        ragSourceStore.discardPending(sessionId);
     }
 
     /**
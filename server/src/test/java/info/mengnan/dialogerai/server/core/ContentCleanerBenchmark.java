@@ -0,0 +1,145 @@
+package info.mengnan.dialogerai.server.core;
+
+import info.mengnan.dialogerai.kb.param.ContentElement;
+import info.mengnan.dialogerai.server.param.document.CleaningConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 文档清洗吞吐基准测试
+ * regex：原 CleaningListener.applyRules 的实现，每条规则一次 stream 与若干次 replaceAll，按完整文本去重
+ * scanner：{@link ContentCleaner} 单次扫描
+ * <p>
+ * 文档为模拟 PDF 解析结果：段落内按行断开、夹杂多余空白、页码与重复的页眉。
+ * 运行方式：执行 main 方法，或 mvn -pl server test-compile 后通过 JMH Runner 运行
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ContentCleanerBenchmark {
+
+    /**
+     * default：只开启空白规范化（CleaningConfig 默认值）；all：开启全部规则
+     */
+    @Param({"default", "all"})
+    public String rules;
+
+    @Param({"2000"})
+    public int paragraphs;
+
+    private CleaningConfig config;
+    private List<ContentElement> elements;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        config = new CleaningConfig();
+        if ("all".equals(rules)) {
+            config.setMergeLineBreaks(true);
+            config.setFilterLowValueParagraphs(true);
+            config.setDeduplicateParagraphs(true);
+        }
+
+        Random random = new Random(42);
+        String[] words = {"知识库", "向量", "检索", "文档", "分块", "the", "model", "index", "query", "清洗"};
+        elements = new ArrayList<>(paragraphs);
+        for (int i = 0; i < paragraphs; i++) {
+            String text;
+            if (i % 20 == 0) {
+                text = "  第 " + (i / 20 + 1) + " 页  ";
+            } else if (i % 25 == 0) {
+                text = "公司内部资料\t\t请勿外传";
+            } else {
+                StringBuilder sb = new StringBuilder();
+                int lines = 3 + random.nextInt(6);
+                for (int l = 0; l < lines; l++) {
+                    int count = 8 + random.nextInt(12);
+                    for (int w = 0; w < count; w++) {
+                        sb.append(words[random.nextInt(words.length)]).append(random.nextInt(8) == 0 ? "  " : " ");
+                    }
+                    sb.append(random.nextInt(10) == 0 ? "\n\n\n" : "\n");
+                }
+                text = sb.toString();
+            }
+            elements.add(ContentElement.ofText(text, i));
+        }
+    }
+
+    @Benchmark
+    public List<ContentElement> regex() {
+        return applyRules(elements, config);
+    }
+
+    @Benchmark
+    public List<ContentElement> scanner() {
+        return new ContentCleaner(config).cleanAll(elements);
+    }
+
+    /**
+     * 原实现，作为对照；{@link ContentCleanerTest} 以它校验单次扫描的结果
+     */
+    static List<ContentElement> applyRules(List<ContentElement> elements, CleaningConfig config) {
+        List<ContentElement> result = new ArrayList<>(elements);
+
+        if (config.isNormalizeWhitespace()) {
+            result = result.stream().map(e -> {
+                if (e.getType() != ContentElement.Type.TEXT || e.getText() == null) return e;
+                String normalized = e.getText()
+                        .replaceAll("[ \t]+", " ")
+                        .replaceAll("(\r\n|\r|\n){3,}", "\n\n")
+                        .trim();
+                return ContentElement.ofText(normalized, e.getPosition() != null ? e.getPosition() : 0);
+            }).collect(Collectors.toList());
+        }
+
+        if (config.isMergeLineBreaks()) {
+            result = result.stream().map(e -> {
+                if (e.getType() != ContentElement.Type.TEXT || e.getText() == null) return e;
+                String merged = e.getText()
+                        .replaceAll("(?<!\n)\n(?!\n)", " ")
+                        .trim();
+                return ContentElement.ofText(merged, e.getPosition() != null ? e.getPosition() : 0);
+            }).collect(Collectors.toList());
+        }
+
+        if (config.isFilterLowValueParagraphs()) {
+            int minLen = config.getMinParagraphLength();
+            result = result.stream().filter(e -> {
+                if (e.getType() == ContentElement.Type.IMAGE) return true;
+                String text = e.getText() != null ? e.getText().trim() : "";
+                return text.length() >= minLen && !text.matches("[\\d\\s\\p{Punct}]+");
+            }).collect(Collectors.toList());
+        }
+
+        if (config.isDeduplicateParagraphs()) {
+            Set<String> seen = new LinkedHashSet<>();
+            result = result.stream().filter(e -> {
+                if (e.getType() == ContentElement.Type.IMAGE) return true;
+                String key = e.getText() != null ? e.getText().trim() : "";
+                return seen.add(key);
+            }).collect(Collectors.toList());
+        }
+
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ContentCleanerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,140 @@
+package info.mengnan.dialogerai.server.core;
+
+import info.mengnan.dialogerai.kb.param.ContentElement;
+import info.mengnan.dialogerai.server.param.document.CleaningConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ContentCleaner 测试类
+ * 与 {@link ContentCleanerBenchmark#applyRules} 中的原正则实现对照，结果应逐个元素一致
+ */
+class ContentCleanerTest {
+
+    /**
+     * 随机文本的字符集：空格、Tab、各类换行与控制字符、ASCII 数字与标点、全角标点、中英文字符
+     */
+    private static final char[] ALPHABET = {
+            ' ', ' ', '\t', '\n', '\n', '\n', '\r', '\r', '\u000B', '\f', '\u0001', '\u00A0',
+            'a', 'b', '中', '文', '1', '7', '.', '-', '！', '。'
+    };
+
+    @Test
+    void matchesRegexRulesOnRandomInput() {
+        Random random = new Random(20240601);
+        for (int mask = 0; mask < 16; mask++) {
+            for (int minLength : new int[]{0, 3, 10}) {
+                CleaningConfig config = config(mask, minLength);
+                for (int round = 0; round < 200; round++) {
+                    List<ContentElement> elements = randomElements(random);
+                    assertSameResult(elements, config, "rules=" + Integer.toBinaryString(mask)
+                            + ", minLength=" + minLength + ", round=" + round);
+                }
+            }
+        }
+    }
+
+    /**
+     * 正则 {@code (\r\n|\r|\n){3,}} 回溯时把 \r\n 拆成 \r 与 \n 计数，两组 \r\n 也会被压缩
+     */
+    @Test
+    void lineBreakBacktracking() {
+        CleaningConfig normalize = config(0b0001, 0);
+        CleaningConfig both = config(0b0011, 0);
+        for (String text : List.of("a\r\n\r\nb", "a\r\n\rb", "a\r\nb", "a\n\r\nb", "a\r\r\nb",
+                "a\n\n\n\nb", "a\n\nb", "a\r\n\n\n\rb", "a \r\n \r\n b", "\r\n\r\na\r\n\r\n")) {
+            assertSameResult(List.of(ContentElement.ofText(text, 0)), normalize, escape(text));
+            assertSameResult(List.of(ContentElement.ofText(text, 0)), both, escape(text));
+        }
+        ContentElement cleaned = new ContentCleaner(normalize).clean(ContentElement.ofText("a\r\n\r\nb", 0));
+        assertEquals("a\n\nb", cleaned.getText());
+    }
+
+    /**
+     * 低价值判断只把 ASCII 数字、空白与标点视为无意义；去重按 trim 后的文本，图片不参与
+     */
+    @Test
+    void lowValueAndDeduplicate() {
+        CleaningConfig config = config(0b1100, 4);
+        List<ContentElement> elements = List.of(
+                ContentElement.ofText("12. 34 -- !!", 0),
+                ContentElement.ofText("１２３４", 1),
+                ContentElement.ofText("第 1 页", 2),
+                ContentElement.ofText("abc", 3),
+                ContentElement.ofText("  重复的段落内容  ", 4),
+                ContentElement.builder().type(ContentElement.Type.IMAGE).position(5).build(),
+                ContentElement.ofText("重复的段落内容", 6),
+                ContentElement.builder().type(ContentElement.Type.IMAGE).position(7).build(),
+                ContentElement.ofText("\t重复的段落内容\n", 8));
+        List<ContentElement> cleaned = assertSameResult(elements, config, "low value and dedup");
+        assertEquals(List.of(1, 2, 4, 5, 7), cleaned.stream().map(ContentElement::getPosition).toList());
+    }
+
+    private static List<ContentElement> assertSameResult(List<ContentElement> elements, CleaningConfig config,
+                                                         String message) {
+        List<ContentElement> expected = ContentCleanerBenchmark.applyRules(elements, config);
+        List<ContentElement> actual = new ContentCleaner(config).cleanAll(elements);
+        assertEquals(describe(expected), describe(actual), message);
+        return actual;
+    }
+
+    /**
+     * 低 4 位依次对应空白规范化、断行合并、低价值过滤与去重
+     */
+    private static CleaningConfig config(int mask, int minLength) {
+        CleaningConfig config = new CleaningConfig();
+        config.setNormalizeWhitespace((mask & 1) != 0);
+        config.setMergeLineBreaks((mask & 2) != 0);
+        config.setFilterLowValueParagraphs((mask & 4) != 0);
+        config.setDeduplicateParagraphs((mask & 8) != 0);
+        config.setMinParagraphLength(minLength);
+        return config;
+    }
+
+    private static List<ContentElement> randomElements(Random random) {
+        int count = 1 + random.nextInt(8);
+        List<ContentElement> elements = new ArrayList<>(count);
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                elements.add(ContentElement.builder().type(ContentElement.Type.IMAGE).position(i).build());
+            } else if (kind == 1) {
+                elements.add(ContentElement.ofText(null, i));
+            } else if (kind == 2 && !texts.isEmpty()) {
+                // 重复出现的段落，首尾空白不同
+                String repeated = texts.get(random.nextInt(texts.size()));
+                elements.add(ContentElement.ofText(random.nextBoolean() ? " " + repeated + "\n" : repeated, i));
+            } else {
+                String text = randomText(random);
+                texts.add(text);
+                elements.add(ContentElement.ofText(text, i));
+            }
+        }
+        return elements;
+    }
+
+    private static String randomText(Random random) {
+        int length = random.nextInt(40);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static List<String> describe(List<ContentElement> elements) {
+        return elements.stream()
+                .map(e -> e.getType() + "@" + e.getPosition() + ":" + (e.getText() != null ? escape(e.getText()) : null))
+                .toList();
+    }
+
+    private static String escape(String text) {
+        return text.replace("\r", "\\r").replace("\n", "\\n").replace("\t", "\\t");
+    }
+}
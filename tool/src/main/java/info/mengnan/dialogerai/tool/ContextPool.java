@@ -5,14 +5,36 @@ import org.graalvm.polyglot.Context;
 
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 @Slf4j
 public class ContextPool {
 
+    /**
+     * 池满时每次等待的时长，等待期间池被关闭时最多延迟这么久返回
+     */
+    private static final long WAIT_SLICE_MILLIS = 100;
+
     private final BlockingQueue<Context> pool;
+    private final int poolSize;
+    private final Supplier<Context> factory;
+    private final AtomicInteger created = new AtomicInteger();
+    private volatile boolean closed;
 
     public ContextPool(int poolSize) {
+        this(poolSize, null);
+    }
+
+    /**
+     * @param poolSize 池容量上限
+     * @param factory  Context 工厂，池中无空闲且未达上限时按需创建；为 null 时只能通过 {@link #add} 填充
+     */
+    public ContextPool(int poolSize, Supplier<Context> factory) {
         this.pool = new ArrayBlockingQueue<>(poolSize);
+        this.poolSize = poolSize;
+        this.factory = factory;
     }
 
     /**
@@ -20,36 +42,109 @@ public class ContextPool {
      */
     public void add(Context context) {
         pool.add(context);
+        created.incrementAndGet();
     }
 
     /**
-     * 从池中借出一个 Context（阻塞等待）
+     * 从池中借出一个 Context（池满时阻塞等待）
+     *
+     * @return 借出的 Context；池已关闭（包括等待期间被关闭）时返回 null，调用方应改用新的池
      */
     public Context borrow() throws InterruptedException {
-        return pool.take();
+        while (!closed) {
+            Context context = pool.poll();
+            if (context == null) {
+                context = create();
+            }
+            if (context == null) {
+                context = pool.poll(WAIT_SLICE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            if (context != null) {
+                if (!closed) {
+                    return context;
+                }
+                // 取出后池被关闭，由 shutdown 负责的 Context 改由这里关闭
+                close(context);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 未达上限时创建新的 Context，已达上限或没有工厂时返回 null
+     */
+    private Context create() {
+        if (factory == null) {
+            return null;
+        }
+        int current;
+        while ((current = created.get()) < poolSize) {
+            if (created.compareAndSet(current, current + 1)) {
+                try {
+                    return factory.get();
+                } catch (RuntimeException e) {
+                    created.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+        return null;
     }
 
     /**
-     * 归还 Context 到池中
+     * 归还 Context 到池中，池已关闭时直接关闭 Context
      */
     public void returnContext(Context context) {
+        if (closed) {
+            close(context);
+            return;
+        }
         try {
             pool.put(context);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
+        // 放回时池恰好被关闭，shutdown 可能已清空过队列，由这里补充关闭
+        if (closed) {
+            drain();
+        }
     }
 
     /**
-     * 关闭池中所有 Context
+     * 已创建的 Context 数量
+     */
+    public int size() {
+        return created.get();
+    }
+
+    /**
+     * 当前空闲的 Context 数量
+     */
+    public int idle() {
+        return pool.size();
+    }
+
+    /**
+     * 关闭池中所有空闲 Context，借出中的 Context 在归还时关闭，等待中的 {@link #borrow} 返回 null
      */
     public void shutdown() {
-        for (Context ctx : pool) {
-            try {
-                ctx.close();
-            } catch (Exception e) {
-                log.warn("Failed to close context", e);
-            }
+        closed = true;
+        drain();
+    }
+
+    private void drain() {
+        Context ctx;
+        while ((ctx = pool.poll()) != null) {
+            close(ctx);
+        }
+    }
+
+    private void close(Context context) {
+        created.decrementAndGet();
+        try {
+            context.close();
+        } catch (Exception e) {
+            log.warn("Failed to close context", e);
         }
     }
 }
@@ -11,7 +11,10 @@ import org.graalvm.polyglot.Engine;
 import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 // 需要 graalvm
 // 并且执行 sudo ${JAVA_HOME}/lib/installer/bin/gu install js
@@ -19,30 +22,52 @@ import java.util.*;
 public class Tools {
 
     private final Engine sharedEngine;
-    private final ContextPool contextPool;
     private final Map<String, Object> bindings;
     private final ConfigProvider configProvider;
+    private final int poolSize;
+    private final long scopeIdleNanos;
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
 
+    /**
+     * 每个作用域（用户）独立的 Context 池，Context 不跨作用域复用：
+     * 脚本可以修改全局对象与内置函数，共用 Context 会让一个用户的脚本读到另一个用户的参数与配置。
+     * 超过空闲时间未使用的作用域在之后的访问中关闭并移除
+     */
+    private final Map<Object, Scope> scopes = new ConcurrentHashMap<>();
+
+    private static final Object DEFAULT_SCOPE = new Object();
     private static final int DEFAULT_POOL_SIZE = 4;
+    private static final Duration DEFAULT_SCOPE_IDLE_TIMEOUT = Duration.ofMinutes(30);
+    private static final int MAX_COMPILED_PER_CONTEXT = 128;
+    private static final int MAX_BORROW_ATTEMPTS = 3;
     private static final String BINDINGS_CONFIG = "META-INF/bindings_config";
 
+    // 脚本只求值一次得到函数，参数以 JSON 字符串作为调用参数传入，不再拼接进源码
+    // JSON.parse 在 Context 创建时取得并作为参数传入，脚本改写全局 JSON 不影响参数解析
     private static final String FUNCTION_EXECUTE_SCRIPT =
             """
-                    (function() {
-                      const params = %s;
+                    (function(argumentsJson, parseJson) {
+                      const params = parseJson(argumentsJson);
                       %s
                       return execute(params);
-                    })();
+                    })
                     """;
 
     private static final String DEFAULT_EXECUTE_SCRIPT =
             """
-                    (function() {
-                      const params = %s;
+                    (function(argumentsJson, parseJson) {
+                      const params = parseJson(argumentsJson);
                       return (%s);
-                    })();
+                    })
                     """;
 
+    /**
+     * 创建不带默认配置提供者的 Tools，配置提供者在 {@link #createDynamicTools(Object, List, ConfigProvider)} 时按调用方传入
+     */
+    public Tools() {
+        this(null, DEFAULT_POOL_SIZE);
+    }
+
     /**
      * @param configProvider 配置提供者（需外部传入，因为依赖数据库等外部资源）
      */
@@ -51,20 +76,26 @@ public class Tools {
     }
 
     /**
-     * @param configProvider 配置提供者（需外部传入，因为依赖数据库等外部资源）
-     * @param poolSize Context 对象池大小
+     * @param configProvider 默认配置提供者（需外部传入，因为依赖数据库等外部资源）
+     * @param poolSize 每个作用域的 Context 对象池大小上限，Context 按需创建
      */
     public Tools(ConfigProvider configProvider, int poolSize) {
+        this(configProvider, poolSize, DEFAULT_SCOPE_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param configProvider   默认配置提供者（需外部传入，因为依赖数据库等外部资源）
+     * @param poolSize         每个作用域的 Context 对象池大小上限，Context 按需创建
+     * @param scopeIdleTimeout 作用域空闲多久后关闭其 Context 池
+     */
+    public Tools(ConfigProvider configProvider, int poolSize, Duration scopeIdleTimeout) {
         this.configProvider = configProvider;
+        this.poolSize = poolSize;
+        this.scopeIdleNanos = scopeIdleTimeout.toNanos();
         this.sharedEngine = Engine.create();
-        this.contextPool = new ContextPool(poolSize);
 
         // 从配置文件加载绑定声明，格式：bindingName:全限定类名
         this.bindings = loadBindings();
-
-        for (int i = 0; i < poolSize; i++) {
-            contextPool.add(createContext());
-        }
     }
 
     /**
@@ -77,7 +108,7 @@ public class Tools {
     /**
      * 创建一个绑定好依赖的 Context
      */
-    private Context createContext() {
+    private Context createContext(ConfigProvider configProvider) {
         Context context = Context.newBuilder("js")
                 .engine(sharedEngine)
                 .allowHostAccess(true)
@@ -88,7 +119,7 @@ public class Tools {
             context.getBindings("js").putMember(entry.getKey(), entry.getValue());
         }
 
-        // ConfigProvider 需要外部注入，手动绑定
+        // ConfigProvider 需要外部注入，Context 只属于一个作用域，创建时绑定一次
         if (configProvider != null) {
             context.getBindings("js").putMember("config", configProvider);
         }
@@ -96,20 +127,79 @@ public class Tools {
         return context;
     }
 
+    private Scope scope(Object scopeKey, ConfigProvider configProvider) {
+        long now = System.nanoTime();
+        sweepIfDue(now);
+        Scope scope = scopes.computeIfAbsent(scopeKey, k -> new Scope(configProvider));
+        scope.lastAccess = now;
+        return scope;
+    }
+
+    /**
+     * 关闭空闲超时的作用域，正在执行的 Context 归还时关闭
+     */
+    private void sweepIfDue(long now) {
+        long last = lastSweep.get();
+        if (now - last < Math.max(1, scopeIdleNanos / 4) || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        for (Map.Entry<Object, Scope> entry : scopes.entrySet()) {
+            Scope scope = entry.getValue();
+            if (now - scope.lastAccess > scopeIdleNanos && scopes.remove(entry.getKey(), scope)) {
+                scope.close();
+                log.debug("Closed idle tool scope: {}", entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * 当前持有 Context 池的作用域数量
+     */
+    public int scopeCount() {
+        return scopes.size();
+    }
+
+    /**
+     * 关闭作用域的 Context 池（工具或配置变更时调用），正在执行的 Context 归还时关闭
+     * 之后的调用会创建新的 Context
+     */
+    public void invalidate(Object scopeKey) {
+        Scope scope = scopes.remove(scopeKey);
+        if (scope != null) {
+            scope.close();
+        }
+    }
+
     /**
      * 关闭所有资源
      */
     public void shutdown() {
-        contextPool.shutdown();
+        scopes.values().forEach(Scope::close);
+        scopes.clear();
         sharedEngine.close();
     }
 
     /**
-     * 根据工具描述列表创建动态工具
+     * 根据工具描述列表创建动态工具，使用构造时传入的默认配置提供者
      * @param toolDescriptions 工具描述列表
      * @return 工具规范和执行器的映射
      */
     public Map<ToolSpecification, ToolExecutor> createDynamicTools(List<ToolDescription> toolDescriptions) {
+        return createDynamicTools(DEFAULT_SCOPE, toolDescriptions, configProvider);
+    }
+
+    /**
+     * 根据工具描述列表创建动态工具
+     * 同一个 Tools 实例可服务多个用户，共享 Engine，但每个作用域使用独立的 Context 池
+     * @param scopeKey 作用域标识（如用户 ID），不同作用域的脚本不会在同一 Context 中执行
+     * @param toolDescriptions 工具描述列表
+     * @param configProvider 该作用域的 Context 绑定为 {@code config} 的配置提供者，可为 null；
+     *                       作用域已存在时沿用创建时的配置提供者
+     * @return 工具规范和执行器的映射
+     */
+    public Map<ToolSpecification, ToolExecutor> createDynamicTools(Object scopeKey,
+                                                                   List<ToolDescription> toolDescriptions,
+                                                                   ConfigProvider configProvider) {
         Map<ToolSpecification, ToolExecutor> tools = new HashMap<>();
 
         if (toolDescriptions == null || toolDescriptions.isEmpty()) {
@@ -130,7 +220,7 @@ public class Tools {
                         .build();
 
                 // 创建工具执行器
-                ToolExecutor executor = createExecutor(desc);
+                ToolExecutor executor = createExecutor(desc, scopeKey, configProvider);
 
                 tools.put(toolSpec, executor);
                 log.info("Successfully created dynamic tool: {}", desc.getName());
@@ -163,43 +253,46 @@ public class Tools {
     /**
      * 根据工具描述创建执行器
      */
-    private ToolExecutor createExecutor(ToolDescription desc) {
+    private ToolExecutor createExecutor(ToolDescription desc, Object scopeKey, ConfigProvider configProvider) {
+        // 验证执行脚本是否存在
+        if (desc.getExecute() == null || desc.getExecute().trim().isEmpty()) {
+            log.error("Tool {} has no execute script defined", desc.getName());
+            return (request, memoryId) -> "execution failed: no execute script defined";
+        }
+
+        // 构建包装的 JavaScript 函数，每个工具版本只构建一次 Source
+        String executeScript = desc.getExecute().trim();
+        String wrappedScript;
+        // 检查脚本是否定义了 execute 函数
+        if (executeScript.contains("function execute")) {
+            wrappedScript = String.format(FUNCTION_EXECUTE_SCRIPT, executeScript);
+        } else {
+            // 否则直接执行脚本并期望返回值
+            wrappedScript = String.format(DEFAULT_EXECUTE_SCRIPT, executeScript);
+        }
+        Source source = Source.newBuilder("js", wrappedScript, desc.getName()).buildLiteral();
+
         return (request, memoryId) -> {
+            // 每次执行时取作用域，失效后的执行器使用新建的 Context 池
+            Scope scope = scope(scopeKey, configProvider);
             Context context = null;
             try {
-                // 验证执行脚本是否存在
-                if (desc.getExecute() == null || desc.getExecute().trim().isEmpty()) {
-                    log.error("Tool {} has no execute script defined", desc.getName());
-                    return "execution failed: no execute script defined";
+                // 从作用域的池中借出 Context，池在等待期间被关闭（作用域失效或空闲回收）时改用新的作用域
+                context = scope.pool.borrow();
+                for (int attempt = 1; context == null && attempt < MAX_BORROW_ATTEMPTS; attempt++) {
+                    scope = scope(scopeKey, configProvider);
+                    context = scope.pool.borrow();
+                }
+                if (context == null) {
+                    return "execution failed: tool context pool was closed";
                 }
-
-                // 从池中借出 Context
-                context = contextPool.borrow();
 
                 // 解析参数
                 JSONObject jsonObject = JSONUtil.parseObj(request.arguments());
                 log.info("Executing tool: {} with arguments: {}", desc.getName(), request.arguments());
 
-                // 构建包装的 JavaScript 代码，将参数注入到执行环境中
-                String executeScript = desc.getExecute().trim();
-                String wrappedScript;
-                // 检查脚本是否定义了 execute 函数
-                if (executeScript.contains("function execute")) {
-                    wrappedScript = String.format(FUNCTION_EXECUTE_SCRIPT,
-                            JSONUtil.toJsonStr(jsonObject),
-                            executeScript
-                    );
-                } else {
-                    // 否则直接执行脚本并期望返回值
-                    wrappedScript = String.format(DEFAULT_EXECUTE_SCRIPT,
-                            JSONUtil.toJsonStr(jsonObject),
-                            executeScript
-                    );
-                }
-
-                // 创建并执行脚本
-                Source source = Source.newBuilder("js", wrappedScript, desc.getName()).build();
-                Value result = context.eval(source);
+                // 调用已编译的函数
+                Value result = scope.execute(context, source, JSONUtil.toJsonStr(jsonObject));
 
                 // 处理不同类型的返回值
                 if (result.isNull()) {
@@ -228,9 +321,65 @@ public class Tools {
                 return "execution failed: " + e.getMessage();
             } finally {
                 if (context != null) {
-                    contextPool.returnContext(context);
+                    scope.pool.returnContext(context);
                 }
             }
         };
     }
+
+    /**
+     * 一个作用域的 Context 池，以及每个 Context 上已编译的工具函数和创建时取得的 JSON.parse
+     * Value 只能在所属 Context 中使用；Context 同一时刻只会被一个线程借出，内层 Map 无需同步
+     */
+    private final class Scope {
+
+        private final ContextPool pool;
+        private final Map<Context, ContextState> states = new ConcurrentHashMap<>();
+        private volatile long lastAccess = System.nanoTime();
+
+        private Scope(ConfigProvider configProvider) {
+            this.pool = new ContextPool(poolSize, () -> {
+                Context context = createContext(configProvider);
+                states.put(context, new ContextState(context.eval("js", "JSON.parse")));
+                return context;
+            });
+        }
+
+        /**
+         * 调用 Context 上已编译的工具函数，首次使用时求值 Source 并缓存
+         * 同一 Engine 下的 Context 共享 Source 的解析结果，JIT 编译结果可跨调用复用
+         */
+        private Value execute(Context context, Source source, String argumentsJson) {
+            ContextState state = states.get(context);
+            Value function = state.functions.get(source);
+            if (function == null) {
+                function = context.eval(source);
+                state.functions.put(source, function);
+                log.debug("Compiled tool script: {}", source.getName());
+            }
+            return function.execute(argumentsJson, state.jsonParse);
+        }
+
+        /**
+         * 关闭 Context 池；states 不清空，借出中的 Context 仍可执行完当前调用，作用域移除后随之回收
+         */
+        private void close() {
+            pool.shutdown();
+        }
+    }
+
+    private static final class ContextState {
+
+        private final Value jsonParse;
+        private final Map<Source, Value> functions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Source, Value> eldest) {
+                return size() > MAX_COMPILED_PER_CONTEXT;
+            }
+        };
+
+        private ContextState(Value jsonParse) {
+            this.jsonParse = jsonParse;
+        }
+    }
 }
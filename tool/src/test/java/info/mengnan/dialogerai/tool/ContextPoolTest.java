@@ -0,0 +1,80 @@
+package info.mengnan.dialogerai.tool;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ContextPool 测试类
+ */
+class ContextPoolTest {
+
+    private final Engine engine = Engine.create();
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    private ContextPool newPool(int poolSize) {
+        return new ContextPool(poolSize, () -> Context.newBuilder("js").engine(engine).build());
+    }
+
+    /**
+     * 池满时关闭：等待中的借用方返回 null，借出的 Context 归还时关闭
+     */
+    @Test
+    void shutdownWhileFullReleasesWaiters() throws Exception {
+        ContextPool pool = newPool(1);
+        Context borrowed = pool.borrow();
+        assertNotNull(borrowed);
+
+        CompletableFuture<Context> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.borrow();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(waiter.isDone(), "池满时借用方应等待");
+
+        pool.shutdown();
+        assertNull(waiter.get(5, TimeUnit.SECONDS), "池关闭后等待中的借用方应返回 null");
+        assertNull(pool.borrow(), "池关闭后不再借出 Context");
+
+        pool.returnContext(borrowed);
+        assertEquals(0, pool.size());
+        assertEquals(0, pool.idle());
+        assertThrows(IllegalStateException.class, () -> borrowed.eval("js", "1"));
+    }
+
+    /**
+     * 归还的 Context 交给等待中的借用方
+     */
+    @Test
+    void returnedContextIsHandedToWaiter() throws Exception {
+        ContextPool pool = newPool(1);
+        Context borrowed = pool.borrow();
+
+        CompletableFuture<Context> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.borrow();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        pool.returnContext(borrowed);
+
+        assertSame(borrowed, waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, pool.size());
+        pool.shutdown();
+    }
+}
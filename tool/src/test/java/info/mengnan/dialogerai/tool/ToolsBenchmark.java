@@ -0,0 +1,131 @@
+package info.mengnan.dialogerai.tool;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.service.tool.ToolExecutor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tools 调用延迟基准测试
+ * cold：新建 Tools 后的首次调用（包含 Context 创建与脚本编译）
+ * warm：同一执行器的重复调用（复用已编译的函数）
+ * <p>
+ * 运行方式：执行 main 方法，或 mvn -pl tool test-compile 后通过 JMH Runner 运行
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class ToolsBenchmark {
+
+    /**
+     * 定义 execute 函数的天气查询示例脚本，结果由参数直接计算，不依赖网络
+     */
+    private static final String WEATHER_SCRIPT = """
+            function execute(params) {
+                var celsius = params.city === "北京" ? 15 : 20;
+                if (params.unit === "fahrenheit") {
+                    return params.city + " 天气：晴，" + (celsius * 9 / 5 + 32) + "°F";
+                }
+                return params.city + " 天气：晴，" + celsius + "°C";
+            }
+            """;
+
+    /**
+     * 不定义 execute 函数的表达式脚本
+     */
+    private static final String EXPRESSION_SCRIPT = "params.a * params.b + params.c.length";
+
+    @Param({"function", "expression"})
+    public String scriptType;
+
+    private Tools warmTools;
+    private ToolExecutor warmExecutor;
+    private ToolExecutionRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        request = ToolExecutionRequest.builder()
+                .name(toolName())
+                .arguments(arguments())
+                .build();
+        warmTools = new Tools((key) -> null, 1);
+        warmExecutor = createExecutor(warmTools);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        warmTools.shutdown();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public String warm() {
+        return warmExecutor.execute(request, null);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 20, batchSize = 1)
+    public String cold(ColdState state) {
+        return state.executor.execute(request, null);
+    }
+
+    /**
+     * 每次调用前新建 Tools，保证测得的是首次调用
+     */
+    @State(Scope.Thread)
+    public static class ColdState {
+
+        private Tools tools;
+        private ToolExecutor executor;
+
+        @Setup(Level.Invocation)
+        public void setUp(ToolsBenchmark benchmark) {
+            tools = new Tools((key) -> null, 1);
+            executor = benchmark.createExecutor(tools);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            tools.shutdown();
+        }
+    }
+
+    private ToolExecutor createExecutor(Tools tools) {
+        ToolDescription desc = new ToolDescription();
+        desc.setName(toolName());
+        desc.setDescription("benchmark tool");
+        desc.setProperty(Map.of("city", "城市名称", "unit", "温度单位"));
+        desc.setRequired(List.of());
+        desc.setExecute("function".equals(scriptType) ? WEATHER_SCRIPT : EXPRESSION_SCRIPT);
+        return tools.createDynamicTools(List.of(desc)).values().iterator().next();
+    }
+
+    private String toolName() {
+        return "function".equals(scriptType) ? "get_weather" : "calc";
+    }
+
+    private String arguments() {
+        return "function".equals(scriptType)
+                ? "{\"city\":\"北京\",\"unit\":\"fahrenheit\"}"
+                : "{\"a\":6,\"b\":7,\"c\":\"abc\"}";
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ToolsBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -14,6 +14,11 @@ import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -37,6 +42,63 @@ class ToolsTest {
         }
     }
 
+    /**
+     * 作用域的 Context 池已满时失效：等待中的调用改用新建的作用域执行，不会一直阻塞
+     */
+    @Test
+    void testInvalidateWhileScopeIsFull() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ConfigProvider blockingConfig = key -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "slow";
+        };
+
+        ToolDescription slowTool = new ToolDescription();
+        slowTool.setName("slow");
+        slowTool.setDescription("读取配置时阻塞，占住作用域内的 Context");
+        slowTool.setProperty(Map.of());
+        slowTool.setExecute("function execute(params) { return config.getConfig('key'); }");
+
+        ToolDescription echoTool = new ToolDescription();
+        echoTool.setName("echo");
+        echoTool.setDescription("返回参数");
+        echoTool.setProperty(Map.of("value", "返回值"));
+        echoTool.setExecute("function execute(params) { return params.value; }");
+
+        Tools tools = new Tools(null, 1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Map<String, ToolExecutor> executors = new HashMap<>();
+            tools.createDynamicTools(1L, List.of(slowTool, echoTool), blockingConfig)
+                    .forEach((spec, executor) -> executors.put(spec.name(), executor));
+
+            Future<String> slow = callers.submit(() -> executors.get("slow").execute(
+                    ToolExecutionRequest.builder().name("slow").arguments("{}").build(), null));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            Future<String> echo = callers.submit(() -> executors.get("echo").execute(
+                    ToolExecutionRequest.builder().name("echo").arguments("{\"value\":\"ok\"}").build(), null));
+            Thread.sleep(200);
+            assertFalse(echo.isDone(), "池满时调用应等待");
+
+            tools.invalidate(1L);
+            assertEquals("ok", echo.get(5, TimeUnit.SECONDS));
+
+            release.countDown();
+            assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            callers.shutdownNow();
+            tools.shutdown();
+        }
+    }
+
     /**
      * 测试 Node.js 代码支持 - 使用 require 语法
      * 验证是否支持 Node.js 风格的模块导入，例如 const _ = require("lodash")